@@ -0,0 +1,54 @@
+package org.webbitserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link EventSourceMessage} encoded once, to be sent to many connections with
+ * {@link EventSourceConnection#send(EncodedEventSourceMessage)} without building or encoding it again for each
+ * of them. Every send writes a view of the same bytes. Created with {@link EventSourceMessage#encoded()}.
+ * <p/>
+ * The bytes are kept in a direct {@link ByteBuffer}, so the transport can write them to a socket without copying.
+ * They are not reference counted, so nothing needs to release them: the JVM frees them along with the message.
+ */
+public final class EncodedEventSourceMessage {
+    private final String text;
+    private final ByteBuf bytes;
+
+    EncodedEventSourceMessage(EventSourceMessage message) {
+        this.text = message.build();
+        ByteBuf encoded = message.encode(UnpooledByteBufAllocator.DEFAULT);
+        try {
+            ByteBuffer direct = ByteBuffer.allocateDirect(encoded.readableBytes());
+            encoded.getBytes(encoded.readerIndex(), direct);
+            direct.flip();
+            this.bytes = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(direct));
+        } finally {
+            encoded.release();
+        }
+    }
+
+    /**
+     * Size of the message in bytes.
+     */
+    public int size() {
+        return bytes.readableBytes();
+    }
+
+    /**
+     * The message as it is sent, like {@link EventSourceMessage#build()}.
+     */
+    public String build() {
+        return text;
+    }
+
+    /**
+     * A view of the encoded bytes, whose release has no effect.
+     */
+    public ByteBuf content() {
+        return bytes.duplicate();
+    }
+}
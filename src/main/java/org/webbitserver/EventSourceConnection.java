@@ -3,6 +3,11 @@ package org.webbitserver;
 public interface EventSourceConnection extends HttpConnection {
     EventSourceConnection send(EventSourceMessage message);
 
+    /**
+     * Sends a message encoded once for many connections, without encoding it again.
+     */
+    EventSourceConnection send(EncodedEventSourceMessage message);
+
     // Override methods to provide more specific return type.
 
     @Override
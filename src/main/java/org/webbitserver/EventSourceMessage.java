@@ -1,15 +1,16 @@
 package org.webbitserver;
 
-import java.util.regex.Pattern;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 
 public class EventSourceMessage {
-    private static final Pattern START = Pattern.compile("^", Pattern.MULTILINE);
     private static final String DATA = "data: ";
     private static final String COLON = ": ";
     private static final String ID = "id";
     private static final String EVENT = "event";
     private static final String RETRY = "retry";
-    private static final String LF = "\n";
+    private static final char LF = '\n';
+    private static final char CR = '\r';
     private final StringBuilder payload = new StringBuilder();
 
     public EventSourceMessage() {
@@ -50,7 +51,27 @@ public class EventSourceMessage {
     }
 
     public String build() {
-        return payload.toString() + "\n";
+        return new StringBuilder(payload.length() + 1).append(payload).append(LF).toString();
+    }
+
+    /**
+     * Writes the message as UTF-8 into a buffer from the allocator, without building it as a String first.
+     * The caller owns the buffer.
+     */
+    public ByteBuf encode(ByteBufAllocator allocator) {
+        int length = payload.length();
+        Scratch scratch = Scratch.get(length);
+        payload.getChars(0, length, scratch.chars, 0);
+        int size = writeUtf8(scratch.chars, length, scratch.bytes);
+        scratch.bytes[size++] = LF;
+        return allocator.buffer(size).writeBytes(scratch.bytes, 0, size);
+    }
+
+    /**
+     * An immutable copy of this message, encoded once, that can be sent to any number of connections.
+     */
+    public EncodedEventSourceMessage encoded() {
+        return new EncodedEventSourceMessage(this);
     }
 
     private void appendFieldValue(String field, String value) {
@@ -62,8 +83,92 @@ public class EventSourceMessage {
         payload.append(EventSourceMessage.LF);
     }
 
+    /**
+     * Puts the field before each line of the value, splitting it at CRLF, LF and CR as EventSource clients do.
+     * A line break at the very end of the value starts no new line.
+     */
     private void prependOnAllLines(String field, String value) {
-        String multilineField = EventSourceMessage.START.matcher(value).replaceAll(field);
-        payload.append(multilineField).append(EventSourceMessage.LF);
+        int length = value.length();
+        payload.ensureCapacity(payload.length() + field.length() + length + 1);
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            char c = 0;
+            while (end < length && (c = value.charAt(end)) != LF && c != CR) {
+                end++;
+            }
+            if (end < length) {
+                end += c == CR && end + 1 < length && value.charAt(end + 1) == LF ? 2 : 1;
+            }
+            payload.append(field).append(value, start, end);
+            start = end;
+        }
+        payload.append(EventSourceMessage.LF);
+    }
+
+    /**
+     * Encodes like {@link java.nio.charset.Charset#encode}, replacing unpaired surrogates with '?'.
+     *
+     * @return the number of bytes written
+     */
+    private static int writeUtf8(char[] chars, int length, byte[] bytes) {
+        int j = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                bytes[j++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[j++] = (byte) (0xc0 | c >> 6);
+                bytes[j++] = (byte) (0x80 | c & 0x3f);
+            } else if (!Character.isSurrogate(c)) {
+                bytes[j++] = (byte) (0xe0 | c >> 12);
+                bytes[j++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[j++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                bytes[j++] = (byte) (0xf0 | codePoint >> 18);
+                bytes[j++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                bytes[j++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                bytes[j++] = (byte) (0x80 | codePoint & 0x3f);
+            } else {
+                bytes[j++] = '?';
+            }
+        }
+        return j;
+    }
+
+    /**
+     * Per-thread arrays to encode messages in, so encoding allocates nothing but the buffer it returns. Arrays
+     * grown for unusually large messages are not kept.
+     */
+    private static final class Scratch {
+        private static final int MAX_KEPT_CHARS = 16384;
+        private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch(1024);
+            }
+        };
+
+        final char[] chars;
+        final byte[] bytes;
+
+        private Scratch(int size) {
+            chars = new char[size];
+            // Each char takes at most three bytes, with room for the final line feed.
+            bytes = new byte[size * 3 + 1];
+        }
+
+        static Scratch get(int size) {
+            Scratch scratch = SCRATCH.get();
+            if (scratch.chars.length >= size) {
+                return scratch;
+            }
+            scratch = new Scratch(Math.max(size, Math.min(scratch.chars.length * 2, MAX_KEPT_CHARS)));
+            if (scratch.chars.length <= MAX_KEPT_CHARS) {
+                SCRATCH.set(scratch);
+            }
+            return scratch;
+        }
     }
 }
@@ -0,0 +1,29 @@
+package org.webbitserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives an HTTP request body incrementally, as it arrives from the client.
+ * <p/>
+ * Register one with {@link HttpControl#readBody(HttpBodyHandler)}. Callbacks happen on the handler thread.
+ *
+ * @see org.webbitserver.netty.NettyWebServer#streamRequestBodies(String)
+ */
+public interface HttpBodyHandler {
+    /**
+     * Called for each piece of the body. The buffer is only valid for the duration of the call, so copy out
+     * anything that is needed later.
+     */
+    void onContent(ByteBuffer content) throws Exception;
+
+    /**
+     * Called once the whole body has been received.
+     */
+    void onEnd() throws Exception;
+
+    /**
+     * Called instead of {@link #onEnd()} if the connection closes before the whole body has been received, so
+     * anything kept for it can be let go.
+     */
+    void onAbort() throws Exception;
+}
@@ -8,4 +8,10 @@ public interface HttpConnection extends Executor, DataHolder {
     HttpConnection close();
 
     Executor handlerExecutor();
+
+    /**
+     * Whether the client is keeping up with the messages sent, that is whether the buffer of messages waiting to
+     * be sent to it is below its high water mark.
+     */
+    boolean isWritable();
 }
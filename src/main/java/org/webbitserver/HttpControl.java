@@ -24,4 +24,28 @@ public interface HttpControl extends Executor {
     EventSourceConnection eventSourceConnection();
 
     Executor handlerExecutor();
+
+    /**
+     * Delivers the request body to the given handler.
+     * <p/>
+     * For requests on paths registered with
+     * {@link org.webbitserver.netty.NettyWebServer#streamRequestBodies(String)}, the body is not buffered
+     * in memory but handed over piece by piece as it arrives. Until this is called the server stops reading
+     * from the connection. For all other requests the body has already been received in full, and is delivered
+     * in one go.
+     */
+    void readBody(HttpBodyHandler handler);
+
+    /**
+     * Stops reading the request body from the connection, so the client is slowed down by TCP flow control
+     * while the handler catches up. Has no effect if the body has already been received in full.
+     *
+     * @see #resumeBody()
+     */
+    void pauseBody();
+
+    /**
+     * Resumes reading the request body after {@link #pauseBody()}.
+     */
+    void resumeBody();
 }
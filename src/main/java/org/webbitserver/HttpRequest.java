@@ -2,7 +2,9 @@ package org.webbitserver;
 
 import io.netty.handler.codec.http.Cookie;
 
+import java.io.InputStream;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -129,7 +131,7 @@ public interface HttpRequest extends DataHolder {
     String method();
 
     /**
-     * The body
+     * The body, decoded with the charset of the Content-Type header (UTF-8 if it has none).
      */
     String body();
 
@@ -138,6 +140,17 @@ public interface HttpRequest extends DataHolder {
      */
     byte[] bodyAsBytes();
 
+    /**
+     * A read-only view of the body, not copied where the server holds it in one buffer. Only valid until the
+     * response ends.
+     */
+    ByteBuffer bodyAsByteBuffer();
+
+    /**
+     * A stream reading the body without copying it. Only valid until the response ends.
+     */
+    InputStream bodyAsStream();
+
     @Override
     HttpRequest data(String key, Object value); // Override DataHolder to provide more specific return type.
 
@@ -2,6 +2,7 @@ package org.webbitserver;
 
 import io.netty.handler.codec.http.Cookie;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Date;
@@ -23,14 +24,50 @@ public interface HttpResponse {
     HttpResponse charset(Charset charset);
 
     /**
-     * Turns the response into a chunked response
+     * Turns the response into a chunked response, sending the status and headers straight away.
      * <p/>
-     * after this method is called, {@link #write(java.lang.CharSequence)} should be used to send chunks
-     * <p/>
-     * TODO support just writing something Chunked as the content
+     * after this method is called, {@link #write(java.lang.CharSequence)} should be used to send chunks,
+     * and {@link #end()} to send the terminating chunk. Headers and status can no longer be changed.
      */
     HttpResponse chunked();
 
+    /**
+     * Sends text based content to the client as one chunk of a chunked response. The response is
+     * turned into a chunked response first if {@link #chunked()} has not been called yet.
+     * <p/>
+     * Chunks are sent as they are written rather than buffered until {@link #end()}. When producing a large
+     * response, check {@link #isWritable()} and wait for {@link #onWritable(Runnable)} before writing more.
+     *
+     * @see #charset(Charset)
+     */
+    HttpResponse write(CharSequence content);
+
+    /**
+     * Sends binary content to the client as one chunk of a chunked response.
+     *
+     * @see #write(CharSequence)
+     */
+    HttpResponse write(byte[] content);
+
+    /**
+     * Sends binary content to the client as one chunk of a chunked response.
+     *
+     * @see #write(CharSequence)
+     */
+    HttpResponse write(ByteBuffer buffer);
+
+    /**
+     * Whether the connection can take more data without it piling up in memory. Once this returns false,
+     * stop writing chunks until the callback passed to {@link #onWritable(Runnable)} is run.
+     */
+    boolean isWritable();
+
+    /**
+     * Runs the callback, on the handler thread, as soon as the connection is writable again.
+     * If it is writable already the callback is run immediately.
+     */
+    HttpResponse onWritable(Runnable callback);
+
     /**
      * Current Charset used to encode to response as.
      *
@@ -104,6 +141,15 @@ public interface HttpResponse {
      */
     HttpResponse content(ByteBuffer buffer);
 
+    /**
+     * Sends {@code count} bytes of a file, starting at {@code position}, as the rest of the body and ends the
+     * response. Any content added before is sent ahead of the file.
+     * <p/>
+     * The file is not read onto the heap: plaintext connections use sendfile, TLS connections stream it in chunks.
+     * Errors opening the file are reported with {@link #error(Throwable)}.
+     */
+    HttpResponse sendFile(File file, long position, long count);
+
     /**
      * Marks the response as erroneous. The error shall be displayed to the user (500 SERVER ERROR)
      * and the connection closed.
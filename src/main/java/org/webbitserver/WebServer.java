@@ -58,11 +58,14 @@ public interface WebServer {
     /**
      * Add an HttpHandler that will only respond to a certain path (e.g "/some/page").
      * <p/>
-     * This is shortcut for {@code add(newPathMatchHandler(path, handler))}.
+     * This behaves like {@code add(new PathMatchHandler(path, handler))}, the path being a regular expression.
+     * Handlers added by path one after another are grouped into a {@link org.webbitserver.handler.Router},
+     * so plain paths are looked up rather than each one tried in turn.
      *
      * @see HttpHandler
      * @see #add(HttpHandler)
      * @see org.webbitserver.handler.PathMatchHandler
+     * @see org.webbitserver.handler.Router
      */
     WebServer add(String path, HttpHandler handler);
 
@@ -143,7 +146,9 @@ public interface WebServer {
     WebServer connectionExceptionHandler(Thread.UncaughtExceptionHandler handler);
 
     /**
-     * Get main work executor that all handlers will execute on.
+     * Get main work executor that all handlers will execute on. Work submitted to it runs in order on a single
+     * thread. If the server runs handlers on several threads, only some connections are handled on this one;
+     * use {@link HttpConnection#handlerExecutor()} for work touching a connection.
      */
     Executor getExecutor();
 
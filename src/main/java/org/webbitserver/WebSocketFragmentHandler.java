@@ -0,0 +1,28 @@
+package org.webbitserver;
+
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * A {@link WebSocketHandler} that receives text and binary messages fragment by fragment as they arrive, rather
+ * than whole, so messages of any size can be handled without holding them in memory. Useful for file transfers.
+ * <p/>
+ * Frames from the client larger than {@link org.webbitserver.netty.NettyWebServer#webSocketFragmentSize(int)}
+ * are split into fragments of that size. Reading from the connection is suspended while several fragments are
+ * waiting for the handler, so a client sending faster than the handler can keep up is slowed down by TCP flow
+ * control.
+ * <p/>
+ * The {@code onMessage} methods are not called for connections handled by a fragment handler.
+ */
+public interface WebSocketFragmentHandler extends WebSocketHandler {
+    /**
+     * Called for each fragment of a message. The first fragment of a message is a
+     * {@link io.netty.handler.codec.http.websocketx.TextWebSocketFrame} or
+     * {@link io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame}, and any others are
+     * {@link io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame}s. The last one is the
+     * {@link WebSocketFrame#isFinalFragment() final fragment}.
+     * <p/>
+     * Fragments of a text message may split a character between them, so decode them with a
+     * {@link java.nio.charset.CharsetDecoder} rather than one by one.
+     */
+    void onFragment(WebSocketConnection connection, WebSocketFrame fragment) throws Exception;
+}
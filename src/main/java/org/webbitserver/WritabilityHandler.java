@@ -0,0 +1,18 @@
+package org.webbitserver;
+
+/**
+ * Implemented by a {@link WebSocketHandler} or {@link EventSourceHandler} that wants to know when a client stops
+ * keeping up with the messages sent to it, and when it catches up again, for example to pause and resume a feed.
+ * <p/>
+ * Callbacks happen on the handler thread.
+ *
+ * @see HttpConnection#isWritable()
+ * @see org.webbitserver.netty.OverflowPolicy
+ */
+public interface WritabilityHandler {
+    /**
+     * Called when the buffer of messages waiting to be sent to the client goes above its high water mark
+     * ({@code writable} false), or drains below its low water mark (true).
+     */
+    void onWritabilityChanged(HttpConnection connection, boolean writable) throws Exception;
+}
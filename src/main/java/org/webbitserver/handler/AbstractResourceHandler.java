@@ -5,13 +5,21 @@ import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,6 +52,11 @@ public abstract class AbstractResourceHandler implements HttpHandler {
     }
 
     private static final Pattern SINGLE_BYTE_RANGE = Pattern.compile("bytes=(\\d+)?-(\\d+)?");
+    /**
+     * Content codings resources may have precompressed variants in, in order of preference.
+     */
+    protected static final List<String> PRECOMPRESSED_ENCODINGS =
+            Collections.unmodifiableList(Arrays.asList("br", "gzip"));
     public static final Map<String, String> DEFAULT_MIME_TYPES;
     protected static final String DEFAULT_WELCOME_FILE_NAME = "index.html";
     protected final Executor ioThread;
@@ -51,6 +64,8 @@ public abstract class AbstractResourceHandler implements HttpHandler {
     protected String welcomeFileName;
     protected DirectoryListingFormatter directoryListingFormatter;
     protected final TemplateEngine templateEngine;
+    protected volatile ResourceCache cache;
+    private final AtomicLong invalidations = new AtomicLong();
 
     private boolean isDirectoryListingEnabled = false;
 
@@ -87,14 +102,82 @@ public abstract class AbstractResourceHandler implements HttpHandler {
         return this;
     }
 
+    /**
+     * Keeps resolved resources in the given cache, so they are served from memory on the handler thread.
+     * Cached resources are not checked for changes.
+     */
+    public AbstractResourceHandler cache(ResourceCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Drops the resource cached for the path, if any.
+     */
+    protected void invalidate(String path) {
+        invalidations.incrementAndGet();
+        uncache(path);
+    }
+
+    private void uncache(String path) {
+        ResourceCache cache = this.cache;
+        if (cache != null) {
+            cache.invalidate(path);
+            for (String encoding : PRECOMPRESSED_ENCODINGS) {
+                cache.invalidate(variantKey(path, encoding));
+            }
+        }
+    }
+
+    /**
+     * Drops all cached resources.
+     */
+    protected void invalidateAll() {
+        invalidations.incrementAndGet();
+        ResourceCache cache = this.cache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
     @Override
     public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
     throws Exception
     {
+        ResourceCache cache = this.cache;
+        if (cache != null) {
+            String path = withoutQuery(request.uri());
+            Resource resource = cache.get(path);
+            if (resource != null) {
+                String encoding = preferredEncoding(request, resource.encodings);
+                if (encoding != null) {
+                    resource = cache.get(variantKey(path, encoding));
+                }
+            }
+            if (resource != null) {
+                respond(resource, request, response, path);
+                return;
+            }
+        }
         // Switch from web thead to IO thread, so we don't block web server when we access the filesystem.
         ioThread.execute(createIOWorker(request, response, control));
     }
 
+    protected void serve(final Resource resource,
+                         HttpControl control,
+                         final HttpResponse response,
+                         final HttpRequest request,
+                         final String path)
+    {
+        // Switch back from IO thread to web thread.
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                respond(resource, request, response, path);
+            }
+        });
+    }
+
     protected void serve(final String mimeType,
                          final byte[] staticContents,
                          HttpControl control,
@@ -106,69 +189,242 @@ public abstract class AbstractResourceHandler implements HttpHandler {
         control.execute(new Runnable() {
             @Override
             public void run() {
-                // TODO: Check bytes read match expected encoding of mime-type
-                response.header("Content-Type", mimeType);
+                respond(mimeType, staticContents, request, response, path);
+            }
+        });
+    }
+
+    /**
+     * Sends a resource, answering conditional requests with 304. Runs on the handler thread.
+     */
+    protected void respond(Resource resource, HttpRequest request, HttpResponse response, String path) {
+        if (resource.etag != null) {
+            response.header("ETag", resource.etag);
+        }
+        if (resource.lastModified != 0) {
+            response.header("Last-Modified", toHeader(new Date(resource.lastModified)));
+        }
+        if (resource.contentEncoding != null) {
+            // Already compressed, so the dynamic compressor leaves it alone.
+            response.header("Content-Encoding", resource.contentEncoding);
+        }
+        if (resource.contentEncoding != null || !resource.encodings.isEmpty()) {
+            response.header("Vary", "Accept-Encoding");
+        }
+        expiryHeaders(response);
+        if (isNotModified(resource, request)) {
+            response.status(304).end();
+            return;
+        }
 
-                byte[] dynamicContents =
-                        templateEngine.process(staticContents, path, request.data(TemplateEngine.TEMPLATE_CONTEXT));
-                ByteBuffer contents = ByteBuffer.wrap(dynamicContents);
+        String mimeType = withCharset(resource.mimeType, response);
+        if (resource.content != null) {
+            respond(mimeType, resource.content, request, response, path);
+            return;
+        }
 
-                if (maybeServeRange(request, contents, response)) {
-                    return;
-                }
+        response.header("Content-Type", mimeType);
+        long[] range = requestedRange(request, resource.length);
+        if (range != null) {
+            serveRange(range[0], range[1], resource.file, resource.length, response);
+            return;
+        }
+        response.header("Content-Length", resource.length)
+                .sendFile(resource.file, 0, resource.length);
+    }
+
+    private void respond(String mimeType,
+                         byte[] staticContents,
+                         HttpRequest request,
+                         HttpResponse response,
+                         String path)
+    {
+        // TODO: Check bytes read match expected encoding of mime-type
+        response.header("Content-Type", mimeType);
+
+        byte[] dynamicContents =
+                templateEngine.process(staticContents, path, request.data(TemplateEngine.TEMPLATE_CONTEXT));
+        ByteBuffer contents = ByteBuffer.wrap(dynamicContents);
+
+        if (maybeServeRange(request, contents, response)) {
+            return;
+        }
+
+        response.header("Content-Length", contents.remaining())
+                .content(contents)
+                .end();
+    }
+
+    /**
+     * Adds headers such as Cache-Control to every resource response. Does nothing by default.
+     */
+    protected void expiryHeaders(HttpResponse response) {
+    }
+
+    /**
+     * Whether resources are sent exactly as they are stored, so they can be sent straight from a file.
+     */
+    protected boolean isTemplated() {
+        return templateEngine.getClass() != StaticFile.class;
+    }
+
+    private static boolean isNotModified(Resource resource, HttpRequest request) {
+        String ifNoneMatch = request.header("If-None-Match");
+        if (ifNoneMatch != null) {
+            return resource.etag != null && ifNoneMatch.contains(resource.etag);
+        }
+        String ifModifiedSince = request.header("If-Modified-Since");
+        return ifModifiedSince != null && resource.lastModified != 0
+               && fromHeader(ifModifiedSince).getTime() >= resource.lastModified;
+    }
+
+    protected static String toHeader(Date date) {
+        SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+        httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return httpDateFormat.format(date);
+    }
+
+    private static Date fromHeader(String date) {
+        SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+        httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return httpDateFormat.parse(date);
+        } catch (Exception ignored) {
+            return new Date();
+        }
+    }
 
-                // TODO: Don't read all into memory, instead use zero-copy.
-                response.header("Content-Length", contents.remaining())
-                        .content(contents)
-                        .end();
+    private static String withCharset(String mimeType, HttpResponse response) {
+        if (mimeType != null && mimeType.startsWith("text/") && response.charset() != null) {
+            return mimeType + "; charset=" + response.charset().name();
+        }
+        return mimeType;
+    }
+
+    /**
+     * The most preferred of the available content codings that the request accepts, or null if it accepts
+     * none of them.
+     */
+    protected static String preferredEncoding(HttpRequest request, List<String> available) {
+        if (available.isEmpty()) {
+            return null;
+        }
+        String acceptEncoding = request.header("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String preferred = null;
+        float preferredQuality = 0;
+        for (String encoding : available) {
+            float quality = quality(acceptEncoding, encoding);
+            if (quality > preferredQuality) {
+                preferred = encoding;
+                preferredQuality = quality;
             }
-        });
+        }
+        return preferred;
+    }
+
+    /**
+     * The q-value an Accept-Encoding header gives a content coding, falling back to the one for *.
+     */
+    private static float quality(String acceptEncoding, String encoding) {
+        float wildcard = 0;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parameters = element.split(";");
+            String coding = parameters[0].trim();
+            float quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase(encoding)) {
+                return quality;
+            } else if (coding.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * Cache key for a precompressed variant. Request paths never contain spaces.
+     */
+    private static String variantKey(String path, String encoding) {
+        return path + " " + encoding;
+    }
+
+    /**
+     * Whether the path is the one way of spelling it, so a cache entry for it can be found and invalidated
+     * by the file it came from.
+     */
+    private static boolean isNormalized(String path) {
+        return path.startsWith("/")
+               && !path.contains("//")
+               && !path.contains("/./") && !path.endsWith("/.")
+               && !path.contains("/../") && !path.endsWith("/..")
+               && path.indexOf('\\') == -1;
+    }
+
+    private static String withoutQuery(String path) {
+        int queryStart = path.indexOf('?');
+        if (queryStart > -1) {
+            path = path.substring(0, queryStart);
+        }
+        return path;
     }
 
     private boolean maybeServeRange(HttpRequest request, ByteBuffer contents, HttpResponse response) {
+        long[] range = requestedRange(request, contents.remaining());
+        if (range == null) {
+            return false;
+        }
+        serveRange((int) range[0], (int) range[1], contents, response);
+        return true;
+    }
+
+    /**
+     * The inclusive start and end of the single byte range the request asks for, or null if it doesn't ask
+     * for one we understand.
+     */
+    private long[] requestedRange(HttpRequest request, long length) {
         String range = request.header("Range");
         if (null == range) {
-            return false;
+            return null;
         }
 
         Matcher matcher = SINGLE_BYTE_RANGE.matcher(range);
         if (!matcher.matches()) {
-            return false;
+            return null;
         }
 
         String startString = matcher.group(1);
         String endString = matcher.group(2);
 
         if (null != startString && null != endString) {
-            int start = Integer.parseInt(startString);
-            int end = Integer.parseInt(endString);
+            long start = Long.parseLong(startString);
+            long end = Long.parseLong(endString);
             if (start <= end) {
-                serveRange(start,
-                           Math.min(contents.remaining() - 1, end),
-                           contents,
-                           response);
-                return true;
+                return new long[]{start, Math.min(length - 1, end)};
             }
         } else if (null != startString) {
-            serveRange(Integer.parseInt(startString),
-                       contents.remaining() - 1,
-                       contents,
-                       response);
-            return true;
+            return new long[]{Long.parseLong(startString), length - 1};
         } else if (null != endString) {
-            int end = Integer.parseInt(endString);
-            serveRange(contents.remaining() - end,
-                       contents.remaining() - 1,
-                       contents,
-                       response);
-            return true;
+            // A suffix longer than the resource selects all of it.
+            return new long[]{Math.max(0, length - Long.parseLong(endString)), length - 1};
         }
 
-        return false;
+        return null;
     }
 
     protected void serveRange(int start, int end, ByteBuffer contents, HttpResponse response) {
-        if (start > contents.remaining()) {
+        if (start < 0 || start >= contents.remaining()) {
             response.status(416).header("Content-Range", "bytes */" + contents.remaining()).end();
             return;
         }
@@ -184,6 +440,18 @@ public abstract class AbstractResourceHandler implements HttpHandler {
         response.content(contents).end();
     }
 
+    protected void serveRange(long start, long end, File file, long length, HttpResponse response) {
+        if (start < 0 || start >= length) {
+            response.status(416).header("Content-Range", "bytes */" + length).end();
+            return;
+        }
+
+        response.status(206)
+                .header("Content-Length", end - start + 1) // since its inclusive
+                .header("Content-Range", "bytes " + start + "-" + end + "/" + length)
+                .sendFile(file, start, end - start + 1);
+    }
+
     protected abstract IOWorker createIOWorker(HttpRequest request,
                                                HttpResponse response,
                                                HttpControl control);
@@ -197,6 +465,7 @@ public abstract class AbstractResourceHandler implements HttpHandler {
         private final HttpRequest request;
         protected final HttpResponse response;
         protected final HttpControl control;
+        private final long invalidationsAtStart = invalidations.get();
 
         protected IOWorker(String path, HttpRequest request, HttpResponse response, HttpControl control) {
             this.path = path;
@@ -230,9 +499,9 @@ public abstract class AbstractResourceHandler implements HttpHandler {
             String pathWithQuery = path;
             path = withoutQuery(path);
 
-            // TODO: Cache
             try {
                 byte[] content;
+                Resource resource;
                 if (!exists()) {
                     notFound();
                     return;
@@ -243,19 +512,19 @@ public abstract class AbstractResourceHandler implements HttpHandler {
                     if (!path.endsWith("/")) {
                         response.status(301).header("Location", path + "/" + extractQuery(pathWithQuery)).end();
                         return;
-                    } else if ((content = welcomeBytes()) != null) {
-                        serve(guessMimeType(welcomeFileName), content, control, response, request, path);
+                    } else if ((resource = welcomeResource()) != null) {
+                        serveAndCache(resource);
                         return;
                     } else if (isDirectoryListingEnabled && (content = directoryListingBytes()) != null) {
-                        serve(guessMimeType(".html"), content, control, response, request, path);
+                        serve(withCharset(guessMimeType(".html"), response), content, control, response, request, path);
                         return;
                     }
                     // TODO: Do something other than 404 if directory listing is disabled
-                } else if ((content = fileBytes()) != null) {
-                    serve(guessMimeType(path), content, control, response, request, path);
+                } else if ((resource = fileResource()) != null) {
+                    serveAndCache(resource);
                     return;
-                } else if ((content = welcomeBytes()) != null) {
-                    serve(guessMimeType(welcomeFileName), content, control, response, request, path);
+                } else if ((resource = welcomeResource()) != null) {
+                    serveAndCache(resource);
                     return;
                 }
                 notFound();
@@ -264,6 +533,28 @@ public abstract class AbstractResourceHandler implements HttpHandler {
             }
         }
 
+        private void serveAndCache(Resource resource) throws IOException {
+            String key = path;
+            ResourceCache cache = AbstractResourceHandler.this.cache;
+            if (cache != null && isNormalized(path)) {
+                cache.put(key, resource);
+            }
+            String encoding = preferredEncoding(request, resource.encodings);
+            Resource encoded = encoding == null ? null : encodedResource(resource, encoding);
+            if (encoded != null) {
+                resource = encoded;
+                key = variantKey(path, encoding);
+                if (cache != null && isNormalized(path)) {
+                    cache.put(key, resource);
+                }
+            }
+            if (cache != null && invalidations.get() != invalidationsAtStart) {
+                // Something changed while we were reading, so what we read may already be stale.
+                uncache(path);
+            }
+            serve(resource, control, response, request, path);
+        }
+
         protected abstract boolean exists() throws IOException;
 
         protected abstract boolean isDirectory() throws IOException;
@@ -274,6 +565,31 @@ public abstract class AbstractResourceHandler implements HttpHandler {
 
         protected abstract byte[] directoryListingBytes() throws IOException;
 
+        /**
+         * The resource for the path, or null if there is none. Reads {@link #fileBytes()} by default.
+         */
+        protected Resource fileResource() throws IOException {
+            byte[] content = fileBytes();
+            return content == null ? null : new Resource(content, guessMimeType(path), null, 0);
+        }
+
+        /**
+         * The welcome resource for the directory, or null if there is none. Reads {@link #welcomeBytes()}
+         * by default.
+         */
+        protected Resource welcomeResource() throws IOException {
+            byte[] content = welcomeBytes();
+            return content == null ? null : new Resource(content, guessMimeType(welcomeFileName), null, 0);
+        }
+
+        /**
+         * The variant of a resource precompressed with one of the {@link Resource#encodings} it lists,
+         * or null if it is gone. There are none by default.
+         */
+        protected Resource encodedResource(Resource resource, String encoding) throws IOException {
+            return null;
+        }
+
         protected byte[] read(int length, InputStream in) throws IOException {
             byte[] data = new byte[length];
             try {
@@ -293,28 +609,17 @@ public abstract class AbstractResourceHandler implements HttpHandler {
         }
 
         // TODO: Don't respond with a mime type that violates the request's Accept header
-        private String guessMimeType(String path) {
+        protected String guessMimeType(String path) {
             int lastDot = path.lastIndexOf('.');
             if (lastDot == -1) {
                 return null;
             }
             String extension = path.substring(lastDot + 1).toLowerCase();
-            String mimeType = mimeTypes.get(extension);
-            if (mimeType == null) {
-                return null;
-            }
-            if (mimeType.startsWith("text/") && response.charset() != null) {
-                mimeType += "; charset=" + response.charset().name();
-            }
-            return mimeType;
+            return mimeTypes.get(extension);
         }
 
         protected String withoutQuery(String path) {
-            int queryStart = path.indexOf('?');
-            if (queryStart > -1) {
-                path = path.substring(0, queryStart);
-            }
-            return path;
+            return AbstractResourceHandler.withoutQuery(path);
         }
 
         protected String extractQuery(String path) {
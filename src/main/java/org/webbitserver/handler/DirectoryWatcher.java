@@ -0,0 +1,121 @@
+package org.webbitserver.handler;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a directory tree with a {@link WatchService} on its own daemon thread, reporting changes as
+ * paths relative to the root, such as {@code /css/site.css}.
+ */
+class DirectoryWatcher implements Runnable {
+
+    interface Listener {
+        /**
+         * A file was created, modified or deleted.
+         */
+        void changed(String path);
+
+        /**
+         * A directory was created or deleted, or events were lost: anything may have changed.
+         */
+        void changedAll();
+    }
+
+    private final Path root;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Set<Path> directories = new HashSet<>();
+
+    DirectoryWatcher(Path root, Listener listener) throws IOException {
+        this.root = root;
+        this.listener = listener;
+        this.watchService = root.getFileSystem().newWatchService();
+        registerAll(root);
+        Thread thread = new Thread(this, "StaticFileHandler-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void close() throws IOException {
+        watchService.close();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    listener.changedAll();
+                    continue;
+                }
+                Path changed = directory.resolve((Path) event.context());
+                if (directories.contains(changed) || Files.isDirectory(changed, NOFOLLOW_LINKS)) {
+                    // A directory's own modification time changes with its entries, which are reported anyway.
+                    if (event.kind() != ENTRY_MODIFY) {
+                        directoryCreatedOrDeleted(changed);
+                    }
+                } else {
+                    listener.changed(relativePath(changed));
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(directory);
+            }
+        }
+    }
+
+    private void directoryCreatedOrDeleted(Path changed) {
+        if (Files.isDirectory(changed, NOFOLLOW_LINKS)) {
+            try {
+                registerAll(changed);
+            } catch (IOException | ClosedWatchServiceException ignored) {
+                // Deleted again already, or the watcher is shutting down.
+            }
+        } else {
+            directories.remove(changed);
+        }
+        listener.changedAll();
+    }
+
+    private void registerAll(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private String relativePath(Path path) {
+        StringBuilder result = new StringBuilder();
+        for (Path name : root.relativize(path)) {
+            result.append('/').append(name);
+        }
+        return result.toString();
+    }
+}
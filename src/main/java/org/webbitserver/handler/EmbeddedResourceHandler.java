@@ -9,12 +9,18 @@ import org.webbitserver.helpers.NamingThreadFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.Executor;
 
 import static java.util.concurrent.Executors.newFixedThreadPool;
 
 // Maybe http://www.uofr.net/~greg/java/get-resource-listing.html
 public class EmbeddedResourceHandler extends AbstractResourceHandler {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     // We're using File because it's good at dealing with path concatenation and slashes. Not actually opening the file.
     private final File root;
     private Class<?> clazz;
@@ -63,6 +69,8 @@ public class EmbeddedResourceHandler extends AbstractResourceHandler {
         private File file;
         private final String pathWithoutTrailingSlash;
         private final boolean isDirectory;
+        // Of the resource opened last, or 0 if the class loader does not know.
+        private long lastModified;
 
         protected ResourceWorker(HttpRequest request, HttpResponse response, HttpControl control) {
             super(request.uri(), request, response, control);
@@ -105,6 +113,27 @@ public class EmbeddedResourceHandler extends AbstractResourceHandler {
             return isDirectory() ? directoryListingFormatter.formatFileListAsHtml(files) : null;
         }
 
+        @Override
+        protected Resource fileResource() throws IOException {
+            byte[] content = fileBytes();
+            return content == null ? null : resource(content, guessMimeType(path));
+        }
+
+        @Override
+        protected Resource welcomeResource() throws IOException {
+            byte[] content = welcomeBytes();
+            return content == null ? null : resource(content, guessMimeType(welcomeFileName));
+        }
+
+        /**
+         * A resource whose ETag is a hash of its content, last modified when its class path entry was, or
+         * now if that is unknown. Last-Modified headers only have whole seconds, so neither has more.
+         */
+        private Resource resource(byte[] content, String mimeType) {
+            long modified = lastModified > 0 ? lastModified : System.currentTimeMillis();
+            return new Resource(content, mimeType, etag(content), modified / 1000 * 1000);
+        }
+
         private byte[] read(InputStream content) throws IOException {
             try {
                 return read(content.available(), content);
@@ -118,7 +147,31 @@ public class EmbeddedResourceHandler extends AbstractResourceHandler {
             if ('/' != File.separatorChar) {
                 resourcePath = resourcePath.replace(File.separatorChar, '/');
             }
-            return clazz.getClassLoader().getResourceAsStream(resourcePath);
+            URL url = clazz.getClassLoader().getResource(resourcePath);
+            if (url == null) {
+                return null;
+            }
+            try {
+                URLConnection connection = url.openConnection();
+                lastModified = connection.getLastModified();
+                return connection.getInputStream();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return "\"" + new String(hex) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            return null;
         }
     }
 }
@@ -4,17 +4,32 @@ import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
+import org.webbitserver.WebSocketConnection;
 import org.webbitserver.WebSocketHandler;
+import org.webbitserver.netty.NettyWebSocketConnection;
+import org.webbitserver.netty.WebSocketKeepAlive;
 
 public class HttpToWebSocketHandler implements HttpHandler {
     private final WebSocketHandler handler;
+    private final WebSocketKeepAlive keepAlive;
 
     public HttpToWebSocketHandler(WebSocketHandler handler) {
+        this(handler, null);
+    }
+
+    /**
+     * @param keepAlive pings the connections of this handler in place of the server's keepalive, if not null
+     */
+    public HttpToWebSocketHandler(WebSocketHandler handler, WebSocketKeepAlive keepAlive) {
         this.handler = handler;
+        this.keepAlive = keepAlive;
     }
 
     @Override
     public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
-        control.upgradeToWebSocketConnection(handler);
+        WebSocketConnection connection = control.upgradeToWebSocketConnection(handler);
+        if (keepAlive != null && connection instanceof NettyWebSocketConnection) {
+            ((NettyWebSocketConnection) connection).keepAlive(keepAlive);
+        }
     }
 }
@@ -0,0 +1,175 @@
+package org.webbitserver.handler;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+
+/**
+ * A {@link ResourceCache} holding resources in memory up to a total size, evicting the least recently
+ * or least frequently used ones once it is full.
+ */
+public class MemoryResourceCache implements ResourceCache {
+
+    public enum Eviction {
+        /**
+         * Evicts the resource that has gone longest without being served.
+         */
+        LRU,
+        /**
+         * Evicts the resource that has been served least often, the oldest one first among equals. Counts are
+         * halved every so often, so resources that were popular once do not stay forever.
+         */
+        LFU
+    }
+
+    // Rough cost of an entry beyond its content, so references to large files are bounded too.
+    private static final int ENTRY_OVERHEAD = 256;
+    // Hit counts are halved once there have been this many hits per cached resource since the last time.
+    private static final int HITS_PER_ENTRY_BEFORE_AGING = 16;
+
+    private final long maxSize;
+    private final long maxContentSize;
+    private final Eviction eviction;
+    private final LinkedHashMap<String, Entry> entries;
+    // For LFU, the entries by hit count, oldest first within each count.
+    private final TreeMap<Long, LinkedHashSet<Entry>> entriesByHits = new TreeMap<>();
+    private long hitsSinceAging;
+    private long size;
+
+    public MemoryResourceCache(long maxSize, long maxContentSize, Eviction eviction) {
+        if (maxContentSize > maxSize) {
+            throw new IllegalArgumentException("maxContentSize must not exceed maxSize");
+        }
+        this.maxSize = maxSize;
+        this.maxContentSize = maxContentSize;
+        this.eviction = eviction;
+        this.entries = new LinkedHashMap<>(16, 0.75f, eviction == Eviction.LRU);
+    }
+
+    /**
+     * An LRU cache keeping the content of files up to a sixteenth of its size.
+     */
+    public MemoryResourceCache(long maxSize) {
+        this(maxSize, maxSize / 16, Eviction.LRU);
+    }
+
+    @Override
+    public synchronized Resource get(String path) {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        if (eviction == Eviction.LFU) {
+            unlink(entry);
+            entry.hits++;
+            link(entry);
+            if (++hitsSinceAging >= (long) HITS_PER_ENTRY_BEFORE_AGING * entries.size()) {
+                age();
+            }
+        }
+        return entry.resource;
+    }
+
+    @Override
+    public synchronized void put(String path, Resource resource) {
+        long weight = weight(resource);
+        if (weight > maxSize) {
+            return;
+        }
+        invalidate(path);
+        while (size + weight > maxSize) {
+            evict();
+        }
+        Entry entry = new Entry(path, resource, weight);
+        entries.put(path, entry);
+        if (eviction == Eviction.LFU) {
+            link(entry);
+        }
+        size += weight;
+    }
+
+    @Override
+    public synchronized void invalidate(String path) {
+        Entry entry = entries.remove(path);
+        if (entry != null) {
+            if (eviction == Eviction.LFU) {
+                unlink(entry);
+            }
+            size -= entry.weight;
+        }
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+        entriesByHits.clear();
+        hitsSinceAging = 0;
+        size = 0;
+    }
+
+    @Override
+    public long maxContentSize() {
+        return maxContentSize;
+    }
+
+    /**
+     * Total size of the cached resources, in bytes.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    private void evict() {
+        Entry victim = eviction == Eviction.LFU
+                       ? entriesByHits.firstEntry().getValue().iterator().next()
+                       : entries.values().iterator().next();
+        invalidate(victim.path);
+    }
+
+    private void link(Entry entry) {
+        LinkedHashSet<Entry> sameHits = entriesByHits.get(entry.hits);
+        if (sameHits == null) {
+            sameHits = new LinkedHashSet<>();
+            entriesByHits.put(entry.hits, sameHits);
+        }
+        sameHits.add(entry);
+    }
+
+    private void unlink(Entry entry) {
+        LinkedHashSet<Entry> sameHits = entriesByHits.get(entry.hits);
+        sameHits.remove(entry);
+        if (sameHits.isEmpty()) {
+            entriesByHits.remove(entry.hits);
+        }
+    }
+
+    /**
+     * Halves every hit count. Entries are relinked in the order they were cached, so the oldest still comes
+     * first among equals.
+     */
+    private void age() {
+        entriesByHits.clear();
+        for (Entry entry : entries.values()) {
+            entry.hits /= 2;
+            link(entry);
+        }
+        hitsSinceAging = 0;
+    }
+
+    private static long weight(Resource resource) {
+        return ENTRY_OVERHEAD + (resource.content == null ? 0 : resource.content.length);
+    }
+
+    private static class Entry {
+        final String path;
+        final Resource resource;
+        final long weight;
+        long hits;
+
+        Entry(String path, Resource resource, long weight) {
+            this.path = path;
+            this.resource = resource;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.webbitserver.handler;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.multipart.Attribute;
+import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
+import io.netty.handler.codec.http.multipart.DiskAttribute;
+import io.netty.handler.codec.http.multipart.DiskFileUpload;
+import io.netty.handler.codec.http.multipart.FileUpload;
+import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+import io.netty.handler.codec.http.multipart.InterfaceHttpData;
+import org.webbitserver.HttpBodyHandler;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.wrapper.HttpControlWrapper;
+import org.webbitserver.wrapper.HttpResponseWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses {@code multipart/form-data} request bodies as they arrive, then hands the request to a handler with
+ * the parts in its data map, under {@link #PARTS}. Other requests go to the handler untouched.
+ * <p/>
+ * Fields and files up to the spill threshold are kept in memory; larger ones are written to temporary files,
+ * which are deleted once the response ends, or when the connection closes before the whole body arrived. This
+ * turns off Netty's deletion of upload files on exit, for every decoder in the JVM.
+ * <p/>
+ * To accept uploads bigger than the server's maximum content length, stream the request bodies of the upload
+ * paths with {@link org.webbitserver.netty.NettyWebServer#streamRequestBodies(String)}, so the body is never
+ * held in memory as a whole.
+ * <pre>
+ * webServer.streamRequestBodies("/upload")
+ *          .add("/upload", new MultipartHandler(new HttpHandler() {
+ *              public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+ *                  FileUpload photo = MultipartHandler.file(request, "photo");
+ *                  ...
+ *              }
+ *          }));
+ * </pre>
+ */
+public class MultipartHandler implements HttpHandler {
+
+    /**
+     * Key of the {@code List<InterfaceHttpData>} of parts, in the order they were sent, in the request data.
+     */
+    public static final String PARTS = "MULTIPART_PARTS";
+
+    static {
+        // Temporary files are deleted when the response ends or the upload is cut short. Deleting them on exit
+        // as well would keep the name of every file ever uploaded in memory until the server stops.
+        DiskFileUpload.deleteOnExitTemporaryFile = false;
+        DiskAttribute.deleteOnExitTemporaryFile = false;
+    }
+
+    private final HttpHandler handler;
+    private long spillThreshold = DefaultHttpDataFactory.MINSIZE;
+
+    public MultipartHandler(HttpHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Size past which a part is written to a temporary file rather than kept in memory. Defaults to 16KB.
+     */
+    public MultipartHandler spillThreshold(long bytes) {
+        this.spillThreshold = bytes;
+        return this;
+    }
+
+    /**
+     * The parts of a request that went through a MultipartHandler, or an empty list.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<InterfaceHttpData> parts(HttpRequest request) {
+        List<InterfaceHttpData> parts = (List<InterfaceHttpData>) request.data(PARTS);
+        return parts == null ? Collections.<InterfaceHttpData>emptyList() : parts;
+    }
+
+    /**
+     * Value of the first form field with the given name, or null.
+     */
+    public static String field(HttpRequest request, String name) throws IOException {
+        for (InterfaceHttpData part : parts(request)) {
+            if (part instanceof Attribute && part.getName().equals(name)) {
+                return ((Attribute) part).getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The first file uploaded under the given name, or null. Its content is only available until the
+     * response ends; use {@link FileUpload#renameTo(File)} to keep it.
+     */
+    public static FileUpload file(HttpRequest request, String name) {
+        for (InterfaceHttpData part : parts(request)) {
+            if (part instanceof FileUpload && part.getName().equals(name)) {
+                return (FileUpload) part;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void handleHttpRequest(final HttpRequest request, final HttpResponse response, final HttpControl control)
+            throws Exception {
+        String contentType = request.header(HttpHeaders.Names.CONTENT_TYPE);
+        if (contentType == null || !contentType.regionMatches(true, 0, "multipart/form-data", 0, 19)) {
+            handler.handleHttpRequest(request, response, control);
+            return;
+        }
+
+        final HttpPostRequestDecoder decoder;
+        try {
+            decoder = new HttpPostRequestDecoder(new DefaultHttpDataFactory(spillThreshold), nettyRequest(request));
+        } catch (HttpPostRequestDecoder.ErrorDataDecoderException e) {
+            response.status(400).end();
+            return;
+        }
+        if (!decoder.isMultipart()) {
+            // No boundary, so the decoder would have read it as a URL-encoded form.
+            response.status(400).end();
+            return;
+        }
+        control.readBody(new HttpBodyHandler() {
+            private boolean failed;
+
+            @Override
+            public void onContent(ByteBuffer content) {
+                if (failed) {
+                    return;
+                }
+                try {
+                    // The decoder copies what it is offered, so the buffer can be wrapped.
+                    decoder.offer(new DefaultHttpContent(Unpooled.wrappedBuffer(content)));
+                } catch (HttpPostRequestDecoder.ErrorDataDecoderException e) {
+                    fail();
+                }
+            }
+
+            @Override
+            public void onEnd() throws Exception {
+                if (failed) {
+                    return;
+                }
+                List<InterfaceHttpData> parts;
+                try {
+                    decoder.offer(LastHttpContent.EMPTY_LAST_CONTENT);
+                    parts = decoder.getBodyHttpDatas();
+                } catch (HttpPostRequestDecoder.ErrorDataDecoderException |
+                        HttpPostRequestDecoder.NotEnoughDataDecoderException e) {
+                    fail();
+                    return;
+                }
+                request.data(PARTS, parts);
+                CleanupResponse cleanupResponse = new CleanupResponse(response, decoder);
+                try {
+                    HttpControl cleanupControl = new CleanupControl(control, request, cleanupResponse);
+                    handler.handleHttpRequest(request, cleanupResponse, cleanupControl);
+                } catch (Throwable e) {
+                    cleanupResponse.error(e);
+                }
+            }
+
+            @Override
+            public void onAbort() {
+                decoder.cleanFiles();
+            }
+
+            private void fail() {
+                failed = true;
+                decoder.cleanFiles();
+                response.status(400).end();
+            }
+        });
+    }
+
+    private static io.netty.handler.codec.http.HttpRequest nettyRequest(HttpRequest request) {
+        io.netty.handler.codec.http.HttpRequest nettyRequest =
+                new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(request.method()), request.uri());
+        for (Map.Entry<String, String> header : request.allHeaders()) {
+            nettyRequest.headers().add(header.getKey(), header.getValue());
+        }
+        return nettyRequest;
+    }
+
+    /**
+     * Deletes the temporary files of the parts once the response has ended.
+     */
+    private static class CleanupResponse extends HttpResponseWrapper {
+        private final HttpPostRequestDecoder decoder;
+        private boolean cleaned;
+
+        CleanupResponse(HttpResponse response, HttpPostRequestDecoder decoder) {
+            super(response);
+            this.decoder = decoder;
+        }
+
+        @Override
+        public HttpResponseWrapper sendFile(File file, long position, long count) {
+            super.sendFile(file, position, count);
+            cleanup();
+            return this;
+        }
+
+        @Override
+        public HttpResponseWrapper error(Throwable error) {
+            super.error(error);
+            cleanup();
+            return this;
+        }
+
+        @Override
+        public HttpResponseWrapper end() {
+            super.end();
+            cleanup();
+            return this;
+        }
+
+        private void cleanup() {
+            if (!cleaned) {
+                cleaned = true;
+                // Not destroy(), which deletes each file a second time as it releases the parts. Parts in
+                // memory are on the heap and left to the garbage collector.
+                decoder.cleanFiles();
+            }
+        }
+    }
+
+    /**
+     * Passes the cleaning-up response on to the next handler.
+     */
+    private static class CleanupControl extends HttpControlWrapper {
+        private final HttpRequest request;
+        private final HttpResponse response;
+
+        CleanupControl(HttpControl control, HttpRequest request, HttpResponse response) {
+            super(control);
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public void nextHandler() {
+            nextHandler(request, response);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.webbitserver.handler;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A resolved resource served by an {@link AbstractResourceHandler}, as kept in a {@link ResourceCache}.
+ * <p/>
+ * Holds either the content itself or, for files too large to keep in memory, the file to send it from.
+ */
+public class Resource {
+    public final byte[] content;
+    public final File file;
+    public final String mimeType;
+    public final long length;
+    /**
+     * Entity tag including the quotes, or null if unknown.
+     */
+    public final String etag;
+    /**
+     * Last modification time in milliseconds, or 0 if unknown.
+     */
+    public final long lastModified;
+    /**
+     * Content coding of this variant, such as {@code gzip}, or null if it is not encoded.
+     */
+    public final String contentEncoding;
+    /**
+     * Content codings there are precompressed variants of this resource for.
+     */
+    public final List<String> encodings;
+
+    public Resource(byte[] content, String mimeType, String etag, long lastModified) {
+        this(content, null, mimeType, content.length, etag, lastModified, null, Collections.<String>emptyList());
+    }
+
+    public Resource(File file, String mimeType, String etag, long lastModified) {
+        this(null, file, mimeType, file.length(), etag, lastModified, null, Collections.<String>emptyList());
+    }
+
+    private Resource(byte[] content,
+                     File file,
+                     String mimeType,
+                     long length,
+                     String etag,
+                     long lastModified,
+                     String contentEncoding,
+                     List<String> encodings)
+    {
+        this.content = content;
+        this.file = file;
+        this.mimeType = mimeType;
+        this.length = length;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentEncoding = contentEncoding;
+        this.encodings = encodings;
+    }
+
+    /**
+     * This resource, marked as encoded with the given content coding.
+     */
+    public Resource withContentEncoding(String contentEncoding) {
+        return new Resource(content, file, mimeType, length, etag, lastModified, contentEncoding, encodings);
+    }
+
+    /**
+     * This resource, noting the content codings it has precompressed variants for.
+     */
+    public Resource withEncodings(List<String> encodings) {
+        return new Resource(content, file, mimeType, length, etag, lastModified, contentEncoding,
+                            Collections.unmodifiableList(encodings));
+    }
+}
@@ -0,0 +1,30 @@
+package org.webbitserver.handler;
+
+/**
+ * Caches resolved resources by request path, so an {@link AbstractResourceHandler} can serve them straight
+ * from the handler thread without touching the filesystem or classpath.
+ * <p/>
+ * Implementations must be thread safe: resources are added from the IO executor and looked up from the
+ * handler thread.
+ *
+ * @see AbstractResourceHandler#cache(ResourceCache)
+ * @see MemoryResourceCache
+ */
+public interface ResourceCache {
+    /**
+     * The resource cached for the path, or null.
+     */
+    Resource get(String path);
+
+    void put(String path, Resource resource);
+
+    void invalidate(String path);
+
+    void invalidateAll();
+
+    /**
+     * Files larger than this are cached as a reference to the file, which is sent with sendfile, rather than
+     * with their content.
+     */
+    long maxContentSize();
+}
@@ -0,0 +1,499 @@
+package org.webbitserver.handler;
+
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.wrapper.HttpControlWrapper;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Dispatches requests to handlers by path, like a chain of {@link PathMatchHandler}s but without trying
+ * every route in turn.
+ * <p/>
+ * Routes are templates made of path segments, each one either literal ({@code /users/me}), a parameter
+ * matching one segment ({@code /users/{id}}), or a final {@code *} matching the rest of the path
+ * ({@code /static/*}). They are compiled into a tree of path segments, so finding the routes for a
+ * request costs the same however many there are. Matched parameters are available from
+ * {@link #pathParam(HttpRequest, String)}, the rest of the path matched by {@code *} under the name {@code *}.
+ * <p/>
+ * Templates with parameters inside a segment ({@code /files/{name}.txt}) and routes added as a {@link Pattern}
+ * are matched as regular expressions, and only tried when no compiled route added before them matches.
+ * <p/>
+ * Routes may be restricted to one HTTP method. A request whose path only matches routes for other methods is
+ * answered with 405 Method Not Allowed, and an OPTIONS request nothing handles with the methods allowed, without
+ * reaching a handler. The {@code Allow} headers for these are worked out as routes are added. GET routes also
+ * take HEAD requests, as HTTP requires of general-purpose servers.
+ * <p/>
+ * When several routes match, they are tried in the order they were added: a handler calling
+ * {@link HttpControl#nextHandler()} passes the request on to the next matching route, and after the last one
+ * to the handler after this router.
+ */
+public class Router implements HttpHandler {
+    /**
+     * Key of the request data holding the {@code Map<String, String>} of path parameters.
+     */
+    public static final String PATH_PARAMS = "PATH_PARAMS";
+    private static final String WILDCARD = "*";
+    private static final Pattern SIMPLE_PARAM = Pattern.compile("\\{([A-Za-z][A-Za-z0-9_]*)\\}");
+    private static final String REGEX_METACHARACTERS = "\\[](){}.*+?^$|";
+
+    private final Node root = new Node();
+    private final List<Route> regexRoutes = new ArrayList<>();
+    private final Map<String, Methods> regexMethods = new HashMap<>();
+    private int routes;
+
+    /**
+     * Adds a route for a path template such as {@code /users/{id}} or {@code /static/*}.
+     */
+    public Router add(String template, HttpHandler handler) {
+        return add(null, template, handler);
+    }
+
+    /**
+     * Adds a route for requests with the given method and a path matching the template.
+     */
+    public Router add(String method, String template, HttpHandler handler) {
+        method = normalize(method);
+        String[] segments = template.split("/", -1);
+        List<String> paramNames = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals(WILDCARD) && i == segments.length - 1) {
+                paramNames.add(WILDCARD);
+            } else if (SIMPLE_PARAM.matcher(segment).matches()) {
+                paramNames.add(segment.substring(1, segment.length() - 1));
+            } else if (segment.indexOf('{') != -1 || segment.indexOf('}') != -1 || segment.indexOf('*') != -1) {
+                return addTemplateAsRegex(method, template, handler);
+            }
+        }
+
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals(WILDCARD) && i == segments.length - 1) {
+                if (node.wildcardMethods == null) {
+                    node.wildcardMethods = new Methods();
+                }
+                node.wildcards().add(newRoute(method, node.wildcardMethods, handler, paramNames, null));
+                return this;
+            } else if (segment.startsWith("{")) {
+                if (node.param == null) {
+                    node.param = new Node();
+                }
+                node = node.param;
+            } else {
+                Node child = node.literals().get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.literals.put(segment, child);
+                }
+                node = child;
+            }
+        }
+        if (node.methods == null) {
+            node.methods = new Methods();
+        }
+        node.routes().add(newRoute(method, node.methods, handler, paramNames, null));
+        return this;
+    }
+
+    /**
+     * Adds a route for paths matching a regular expression, as {@link PathMatchHandler} would. Expressions that
+     * are plain literals are compiled like templates.
+     */
+    public Router add(Pattern pattern, HttpHandler handler) {
+        return add(null, pattern, handler);
+    }
+
+    /**
+     * Adds a route for requests with the given method and a path matching a regular expression.
+     */
+    public Router add(String method, Pattern pattern, HttpHandler handler) {
+        if (pattern.flags() == 0 && isLiteral(pattern.pattern())) {
+            return add(method, pattern.pattern(), handler);
+        }
+        return addRegex(normalize(method), pattern, Collections.<String>emptyList(), handler);
+    }
+
+    /**
+     * The value of a path parameter matched by the route handling the request, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public static String pathParam(HttpRequest request, String name) {
+        Map<String, String> params = (Map<String, String>) request.data(PATH_PARAMS);
+        return params == null ? null : params.get(name);
+    }
+
+    @Override
+    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+        List<Methods> otherMethods = new ArrayList<>(1);
+        Match match = find(path(request.uri()), request.method(), -1, otherMethods);
+        if (match == null && !otherMethods.isEmpty()) {
+            String allow = allow(otherMethods);
+            if (request.method().equals("OPTIONS")) {
+                response.header("Allow", allow).status(200).end();
+            } else {
+                response.header("Allow", allow).status(405).end();
+            }
+            return;
+        }
+        RouteControl routeControl = new RouteControl(control);
+        routeControl.dispatch(request, response, routeControl, match);
+    }
+
+    /**
+     * The first route added after the given index that matches the path and method, or null. The methods of
+     * routes only matching the path are added to {@code otherMethods}.
+     */
+    private Match find(String path, String method, int after, List<Methods> otherMethods) {
+        List<Match> matches = new ArrayList<>();
+        root.collect(path, 0, new ArrayList<String>(), matches);
+        Match next = null;
+        for (Match match : matches) {
+            if (match.route.index <= after || (next != null && match.route.index > next.route.index)) {
+                continue;
+            }
+            if (match.route.accepts(method)) {
+                next = match;
+            } else if (otherMethods != null) {
+                otherMethods.add(match.route.methods);
+            }
+        }
+
+        // Regular expressions only need trying if they were added before the compiled route that matched.
+        int before = next == null ? Integer.MAX_VALUE : next.route.index;
+        for (Route route : regexRoutes) {
+            if (route.index <= after) {
+                continue;
+            }
+            if (route.index >= before) {
+                break;
+            }
+            Matcher matcher = route.pattern.matcher(path);
+            if (matcher.matches()) {
+                if (!route.accepts(method)) {
+                    if (otherMethods != null) {
+                        otherMethods.add(route.methods);
+                    }
+                    continue;
+                }
+                List<String> values = new ArrayList<>();
+                for (int i = 1; i <= route.paramNames.size(); i++) {
+                    values.add(matcher.group(i));
+                }
+                return new Match(route, values);
+            }
+        }
+        return next;
+    }
+
+    private Router addTemplateAsRegex(String method, String template, HttpHandler handler) {
+        List<String> paramNames = new ArrayList<>();
+        StringBuilder regex = new StringBuilder();
+        Matcher matcher = SIMPLE_PARAM.matcher(template);
+        int literalStart = 0;
+        while (matcher.find()) {
+            regex.append(quote(template.substring(literalStart, matcher.start()))).append("([^/]+)");
+            paramNames.add(matcher.group(1));
+            literalStart = matcher.end();
+        }
+        String rest = template.substring(literalStart);
+        if (rest.endsWith(WILDCARD)) {
+            regex.append(quote(rest.substring(0, rest.length() - 1))).append("(.*)");
+            paramNames.add(WILDCARD);
+        } else {
+            regex.append(quote(rest));
+        }
+        return addRegex(method, Pattern.compile(regex.toString()), paramNames, handler);
+    }
+
+    private Router addRegex(String method, Pattern pattern, List<String> paramNames, HttpHandler handler) {
+        Methods methods = regexMethods.get(pattern.pattern());
+        if (methods == null) {
+            methods = new Methods();
+            regexMethods.put(pattern.pattern(), methods);
+        }
+        regexRoutes.add(newRoute(method, methods, handler, paramNames, pattern));
+        return this;
+    }
+
+    private Route newRoute(String method, Methods methods, HttpHandler handler, List<String> paramNames,
+                           Pattern pattern)
+    {
+        if (method != null) {
+            methods.add(method);
+        }
+        return new Route(routes++, method, methods, handler, paramNames, pattern);
+    }
+
+    private static String normalize(String method) {
+        return method == null ? null : method.toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * The Allow header for a path, usually the one worked out for the single template that matched.
+     */
+    private static String allow(List<Methods> matched) {
+        Methods first = matched.get(0);
+        Set<String> union = null;
+        for (Methods methods : matched) {
+            if (methods != first) {
+                if (union == null) {
+                    union = new TreeSet<>(first.methods);
+                }
+                union.addAll(methods.methods);
+            }
+        }
+        return union == null ? first.allow : Methods.allow(union);
+    }
+
+    private static String quote(String literal) {
+        return literal.isEmpty() ? "" : Pattern.quote(literal);
+    }
+
+    private static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_METACHARACTERS.indexOf(regex.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The decoded path of a request URI, as {@link PathMatchHandler} matches it, avoiding the URI parser
+     * for the usual plain paths.
+     */
+    static String path(String uri) {
+        if (uri.startsWith("/") && uri.indexOf('%') == -1) {
+            int end = uri.length();
+            int query = uri.indexOf('?');
+            if (query != -1) {
+                end = query;
+            }
+            int fragment = uri.indexOf('#');
+            if (fragment != -1 && fragment < end) {
+                end = fragment;
+            }
+            return uri.substring(0, end);
+        }
+        String path = URI.create(uri).getPath();
+        return path == null ? "" : path;
+    }
+
+    private static class Route {
+        final int index;
+        final String method;
+        final Methods methods;
+        final HttpHandler handler;
+        final List<String> paramNames;
+        final Pattern pattern;
+
+        Route(int index, String method, Methods methods, HttpHandler handler, List<String> paramNames,
+              Pattern pattern)
+        {
+            this.index = index;
+            this.method = method;
+            this.methods = methods;
+            this.handler = handler;
+            this.paramNames = paramNames;
+            this.pattern = pattern;
+        }
+
+        boolean accepts(String requestMethod) {
+            return method == null || method.equals(requestMethod)
+                    || method.equals("GET") && "HEAD".equals(requestMethod);
+        }
+    }
+
+    /**
+     * The methods routed for one path template, with the Allow header listing them.
+     */
+    private static class Methods {
+        final Set<String> methods = new TreeSet<>();
+        String allow;
+
+        void add(String method) {
+            methods.add(method);
+            allow = allow(methods);
+        }
+
+        static String allow(Set<String> methods) {
+            Set<String> allowed = new TreeSet<>(methods);
+            allowed.add("OPTIONS");
+            if (allowed.contains("GET")) {
+                allowed.add("HEAD");
+            }
+            StringBuilder allow = new StringBuilder();
+            for (String method : allowed) {
+                allow.append(allow.length() == 0 ? "" : ", ").append(method);
+            }
+            return allow.toString();
+        }
+    }
+
+    private static class Match {
+        final Route route;
+        final List<String> values;
+
+        Match(Route route, List<String> values) {
+            this.route = route;
+            this.values = values;
+        }
+
+        Map<String, String> params() {
+            if (values.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                params.put(route.paramNames.get(i), values.get(i));
+            }
+            return params;
+        }
+    }
+
+    /**
+     * A node per path segment. Children are created lazily, as most nodes only need one kind.
+     */
+    private static class Node {
+        Map<String, Node> literals;
+        Node param;
+        List<Route> routes;
+        List<Route> wildcards;
+        Methods methods;
+        Methods wildcardMethods;
+
+        Map<String, Node> literals() {
+            if (literals == null) {
+                literals = new HashMap<>();
+            }
+            return literals;
+        }
+
+        List<Route> routes() {
+            if (routes == null) {
+                routes = new ArrayList<>(1);
+            }
+            return routes;
+        }
+
+        List<Route> wildcards() {
+            if (wildcards == null) {
+                wildcards = new ArrayList<>(1);
+            }
+            return wildcards;
+        }
+
+        /**
+         * Collects the routes matching the path from the segment starting at {@code start}, given the
+         * parameter values matched on the way here.
+         */
+        void collect(String path, int start, List<String> values, List<Match> matches) {
+            if (wildcards != null) {
+                List<String> withRest = new ArrayList<>(values);
+                withRest.add(path.substring(start));
+                for (Route route : wildcards) {
+                    matches.add(new Match(route, withRest));
+                }
+            }
+            int end = path.indexOf('/', start);
+            boolean last = end == -1;
+            if (last) {
+                end = path.length();
+            }
+            String segment = path.substring(start, end);
+            if (literals != null) {
+                Node child = literals.get(segment);
+                if (child != null) {
+                    child.collectAt(path, end, last, values, matches);
+                }
+            }
+            if (param != null && !segment.isEmpty()) {
+                values.add(segment);
+                param.collectAt(path, end, last, values, matches);
+                values.remove(values.size() - 1);
+            }
+        }
+
+        private void collectAt(String path, int end, boolean last, List<String> values, List<Match> matches) {
+            if (last) {
+                if (routes != null) {
+                    for (Route route : routes) {
+                        matches.add(new Match(route, new ArrayList<>(values)));
+                    }
+                }
+            } else {
+                collect(path, end + 1, values, matches);
+            }
+        }
+    }
+
+    /**
+     * Hands the request on to the next matching route when the handler calls {@link #nextHandler()}, and past
+     * the router after the last one. Like the server's own control, it remembers how far the request got and
+     * which control it was last given, so a handler may pass on a wrapper of it.
+     */
+    private class RouteControl extends HttpControlWrapper {
+        private int index = -1;
+        private HttpRequest request;
+        private HttpResponse response;
+        private HttpControl control;
+
+        RouteControl(HttpControl control) {
+            super(control);
+        }
+
+        @Override
+        public void nextHandler() {
+            nextHandler(request, response, control);
+        }
+
+        @Override
+        public void nextHandler(HttpRequest request, HttpResponse response) {
+            nextHandler(request, response, control);
+        }
+
+        @Override
+        public void nextHandler(HttpRequest request, HttpResponse response, HttpControl control) {
+            try {
+                // The path may have been changed, as AliasHandler does.
+                Match match = find(path(request.uri()), request.method(), index, null);
+                dispatch(request, response, control, match);
+            } catch (Throwable e) {
+                response.error(e);
+            }
+        }
+
+        void dispatch(HttpRequest request, HttpResponse response, HttpControl control, Match match)
+                throws Exception
+        {
+            this.request = request;
+            this.response = response;
+            this.control = control;
+            if (match == null) {
+                if (control == this) {
+                    underlyingControl().nextHandler(request, response);
+                } else {
+                    underlyingControl().nextHandler(request, response, control);
+                }
+                return;
+            }
+            index = match.route.index;
+            request.data(PATH_PARAMS, match.params());
+            match.route.handler.handleHttpRequest(request, response, control);
+        }
+    }
+}
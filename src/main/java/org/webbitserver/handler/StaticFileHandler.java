@@ -10,11 +10,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.security.MessageDigest;
-import java.util.concurrent.Executor;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.TimeZone;
-import java.util.Locale;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import static java.util.concurrent.Executors.newFixedThreadPool;
 
@@ -24,6 +23,8 @@ public class StaticFileHandler extends AbstractResourceHandler {
 
     private final long maxAge;
 
+    private DirectoryWatcher watcher;
+
     public StaticFileHandler(File dir, Executor ioThread, TemplateEngine templateEngine) {
         super(ioThread, templateEngine);
         this.dir = dir;
@@ -82,25 +83,68 @@ public class StaticFileHandler extends AbstractResourceHandler {
     protected FileWorker createIOWorker(HttpRequest request,
                                         HttpResponse response,
                                         HttpControl control) {
-        return new FileWorker(request, response, control, maxAge);
+        return new FileWorker(request, response, control);
     }
 
-    protected class FileWorker extends IOWorker {
+    /**
+     * Watches the directory tree for changes and drops affected resources from the {@link #cache(ResourceCache)
+     * cache}, so cached files are picked up again once they change without checking the disk on every request.
+     * How quickly changes are noticed depends on the platform's {@link java.nio.file.WatchService}.
+     */
+    public synchronized StaticFileHandler watchForChanges() throws IOException {
+        if (watcher == null) {
+            watcher = new DirectoryWatcher(dir.getCanonicalFile().toPath(), new DirectoryWatcher.Listener() {
+                @Override
+                public void changed(String path) {
+                    for (String encoding : PRECOMPRESSED_ENCODINGS) {
+                        if (path.endsWith(extension(encoding))) {
+                            // A precompressed variant of the file without the extension.
+                            invalidate(path.substring(0, path.length() - extension(encoding).length()));
+                        }
+                    }
+                    invalidate(path);
+                    // The directory itself, in case this is its welcome file.
+                    invalidate(path.substring(0, path.lastIndexOf('/') + 1));
+                }
 
-        private File file;
+                @Override
+                public void changedAll() {
+                    invalidateAll();
+                }
+            });
+        }
+        return this;
+    }
+
+    public synchronized StaticFileHandler stopWatchingForChanges() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        return this;
+    }
 
-        private final HttpResponse response;
+    @Override
+    protected void expiryHeaders(HttpResponse response) {
+        //is setting cache control necessary?
+        if (maxAge != 0) {
+            response.header("Expires", toHeader(new Date(new Date().getTime() + maxAge * 1000)));
+            response.header("Cache-Control", "max-age=" + maxAge + ", public");
+        }
+    }
 
-        private final HttpRequest request;
+    /**
+     * File extension of variants precompressed with the given content coding, such as {@code site.css.gz}.
+     */
+    private static String extension(String encoding) {
+        return "br".equals(encoding) ? ".br" : ".gz";
+    }
 
-        private final long maxAge;
+    protected class FileWorker extends IOWorker {
+
+        private File file;
+        private File resourceFile;
 
-        private String mimeType(String uri) {
-            String ext = uri.lastIndexOf('.') != -1 ? uri.substring(uri.lastIndexOf('.')) : null;
-            String currentMimeType = mimeTypes.get(ext);
-            if (currentMimeType == null) currentMimeType = "text/plain";
-            return currentMimeType;
-        }
         //based on: http://m2tec.be/blog/2010/02/03/java-md5-hex-0093
         private  String MD5(String md5) {
             try {
@@ -116,27 +160,8 @@ public class StaticFileHandler extends AbstractResourceHandler {
             }
         }
 
-        private String toHeader(Date date) {
-            SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-            httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-            return httpDateFormat.format(date);
-        }
-
-        private Date fromHeader(String date) {
-            SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-            httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-            try {
-                return httpDateFormat.parse(date);
-            } catch (Exception ignored) {
-                return new Date();
-            }
-        }
-
-        protected FileWorker(HttpRequest request, HttpResponse response, HttpControl control, long maxAge) {
+        protected FileWorker(HttpRequest request, HttpResponse response, HttpControl control) {
             super(request.uri(), request, response, control);
-            this.maxAge = maxAge;
-            this.response = response;
-            this.request = request;
         }
 
         @Override
@@ -152,27 +177,7 @@ public class StaticFileHandler extends AbstractResourceHandler {
 
         @Override
         protected byte[] fileBytes() throws IOException {
-            byte[] raw = file.isFile() ? read(file) : null;
-            //add cache control headers if needed
-            if (raw != null) {
-                Date lastModified = new Date(file.lastModified());
-                String hashtext = MD5(Long.toString(lastModified.getTime()));
-                if (hashtext != null) response.header("ETag", "\"" + hashtext + "\"");
-
-                response.header("Last-Modified", toHeader(lastModified));
-                //is there an incoming If-Modified-Since?
-                if (request.header("If-Modified-Since") != null) {
-                    if (fromHeader(request.header("If-Modified-Since")).getTime() >= lastModified.getTime() ) {
-                        response.status(304);
-                    }
-                }
-                //is setting cache control necessary?
-                if (maxAge != 0) {
-                    response.header("Expires", toHeader( new Date(new Date().getTime() + maxAge * 1000)));
-                    response.header("Cache-Control", "max-age=" + maxAge+", public");
-                }
-            }
-            return raw;
+            return file.isFile() ? read(file) : null;
         }
 
         @Override
@@ -181,6 +186,55 @@ public class StaticFileHandler extends AbstractResourceHandler {
             return welcome.isFile() ? read(welcome) : null;
         }
 
+        @Override
+        protected Resource fileResource() throws IOException {
+            return file.isFile() ? resource(file, guessMimeType(path)) : null;
+        }
+
+        @Override
+        protected Resource welcomeResource() throws IOException {
+            File welcome = new File(file, welcomeFileName);
+            return welcome.isFile() ? resource(welcome, guessMimeType(welcomeFileName)) : null;
+        }
+
+        @Override
+        protected Resource encodedResource(Resource resource, String encoding) throws IOException {
+            File encoded = new File(resourceFile.getPath() + extension(encoding));
+            if (!encoded.isFile()) {
+                return null;
+            }
+            // Each variant gets its own ETag, so caches never mix them up.
+            return load(encoded, resource.mimeType, "-" + encoding)
+                    .withContentEncoding(encoding)
+                    .withEncodings(resource.encodings);
+        }
+
+        private Resource resource(File file, String mimeType) throws IOException {
+            resourceFile = file;
+            Resource resource = load(file, mimeType, "");
+            if (isTemplated()) {
+                return resource;
+            }
+            List<String> encodings = new ArrayList<>();
+            for (String encoding : PRECOMPRESSED_ENCODINGS) {
+                if (new File(file.getPath() + extension(encoding)).isFile()) {
+                    encodings.add(encoding);
+                }
+            }
+            return resource.withEncodings(encodings);
+        }
+
+        private Resource load(File file, String mimeType, String etagSuffix) throws IOException {
+            long lastModified = file.lastModified();
+            String hashtext = MD5(Long.toString(lastModified));
+            String etag = hashtext == null ? null : "\"" + hashtext + etagSuffix + "\"";
+            // Send files straight from disk unless they need templating or are small enough to cache the content.
+            if (isTemplated() || (cache != null && file.length() <= cache.maxContentSize())) {
+                return new Resource(read(file), mimeType, etag, lastModified);
+            }
+            return new Resource(file, mimeType, etag, lastModified);
+        }
+
         @Override
         protected byte[] directoryListingBytes() throws IOException {
             if (!isDirectory()) {
@@ -17,4 +17,10 @@ class LoggingEventSourceConnection extends EventSourceConnectionWrapper {
         logSink.eventSourceOutboundData(this, message.build());
         return super.send(message);
     }
+
+    @Override
+    public EventSourceConnectionWrapper send(org.webbitserver.EncodedEventSourceMessage message) {
+        logSink.eventSourceOutboundData(this, message.build());
+        return super.send(message);
+    }
 }
@@ -1,5 +1,6 @@
 package org.webbitserver.netty;
 
+import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
@@ -8,24 +9,136 @@ import org.webbitserver.HttpConnection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class AbstractHttpConnection implements HttpConnection {
     private final NettyHttpRequest nettyHttpRequest;
     protected final ChannelHandlerContext ctx;
+    private volatile FlushStrategy.Flusher flusher;
+    private volatile OverflowPolicy.Backlog backlog;
+    private final AtomicLong droppedMessages = new AtomicLong();
 
     public AbstractHttpConnection(ChannelHandlerContext ctx, NettyHttpRequest nettyHttpRequest) {
+        this(ctx, nettyHttpRequest, FlushStrategy.IMMEDIATE);
+    }
+
+    public AbstractHttpConnection(ChannelHandlerContext ctx,
+                                  NettyHttpRequest nettyHttpRequest,
+                                  FlushStrategy flushStrategy)
+    {
         this.ctx = ctx;
         this.nettyHttpRequest = nettyHttpRequest;
+        this.flusher = flushStrategy.flusher(ctx);
+    }
+
+    /**
+     * Changes when messages sent on this connection are flushed, flushing any that are waiting.
+     */
+    public void flushStrategy(FlushStrategy flushStrategy) {
+        FlushStrategy.Flusher previous = flusher;
+        flusher = flushStrategy.flusher(ctx);
+        previous.flush();
+    }
+
+    /**
+     * Changes what happens to messages sent while the client is not keeping up. Messages held back by the
+     * previous policy are sent.
+     *
+     * @see NettyWebServer#overflowPolicy(OverflowPolicy)
+     */
+    public void overflowPolicy(OverflowPolicy overflowPolicy) {
+        OverflowPolicy.Backlog previous = backlog;
+        backlog = overflowPolicy.backlog(this);
+        if (previous != null) {
+            previous.sendAll();
+        }
+    }
+
+    /**
+     * Sets the outbound buffer sizes, in bytes, above which this connection stops being writable and below
+     * which it becomes writable again.
+     *
+     * @see NettyWebServer#writeBufferWaterMarks(int, int)
+     */
+    public void writeBufferWaterMarks(int low, int high) {
+        writeBufferWaterMarks(ctx.channel().config(), low, high);
+    }
+
+    static void writeBufferWaterMarks(ChannelConfig config, int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("Water marks must satisfy 0 <= low <= high, were " + low + " and " + high);
+        }
+        // Netty rejects a low mark above the current high one, and the other way round.
+        if (low > config.getWriteBufferHighWaterMark()) {
+            config.setWriteBufferHighWaterMark(high);
+            config.setWriteBufferLowWaterMark(low);
+        } else {
+            config.setWriteBufferLowWaterMark(low);
+            config.setWriteBufferHighWaterMark(high);
+        }
+    }
+
+    @Override
+    public boolean isWritable() {
+        return ctx.channel().isWritable();
+    }
+
+    /**
+     * Number of messages dropped on this connection by its {@link OverflowPolicy}.
+     */
+    public long droppedMessages() {
+        return droppedMessages.get();
+    }
+
+    boolean hasOverflowPolicy() {
+        return backlog != null;
+    }
+
+    /**
+     * Sends a message subject to the overflow policy.
+     */
+    protected void sendMessage(Object message) {
+        OverflowPolicy.Backlog backlog = this.backlog;
+        if (backlog == null) {
+            writeMessage(message);
+        } else {
+            backlog.send(message);
+        }
+    }
+
+    /**
+     * Called on the handler thread when the channel's writability changes, to send held back messages.
+     */
+    void writabilityChanged() {
+        OverflowPolicy.Backlog backlog = this.backlog;
+        if (backlog != null) {
+            backlog.drain();
+        }
+    }
+
+    /**
+     * Called on the handler thread once the channel has closed.
+     */
+    void closed() {
+        OverflowPolicy.Backlog backlog = this.backlog;
+        if (backlog != null) {
+            backlog.discard();
+        }
+    }
+
+    void dropped() {
+        droppedMessages.incrementAndGet();
     }
 
     protected ChannelFuture writeMessage(Object message) {
         ChannelFuture write = ctx.channel().write(message);
         write.addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        flusher.written();
         return write;
     }
 
     protected void closeChannel() {
-        ctx.channel().write(ctx.alloc().buffer(0, 0)).addListener(ChannelFutureListener.CLOSE);
+        ctx.channel().writeAndFlush(ctx.alloc().buffer(0, 0)).addListener(ChannelFutureListener.CLOSE);
     }
 
     protected void putData(String key, Object value) {
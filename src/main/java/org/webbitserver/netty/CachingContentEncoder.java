@@ -0,0 +1,121 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Encodes a response body of known length through a {@link CompressedResponseCache}: the body is collected,
+ * and either its compressed form is found in the cache or it is compressed whole and cached. Responses with a
+ * strong ETag are looked up by it and the requested URI before their body arrives, so a body found that way is
+ * not collected at all.
+ */
+class CachingContentEncoder extends ChannelHandlerAdapter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final CompressedResponseCache cache;
+    private final ContentCodec codec;
+    private final CompressionPolicy policy;
+    private final ByteArrayOutputStream body;
+    private String key;
+    private byte[] compressed;
+
+    /**
+     * @param uri  the requested URI, with its host, that the ETag belongs to
+     * @param etag the response's strong ETag, or null to key the body by a hash of it
+     */
+    CachingContentEncoder(CompressedResponseCache cache,
+                          ContentCodec codec,
+                          CompressionPolicy policy,
+                          long contentLength,
+                          String uri,
+                          String etag)
+    {
+        this.cache = cache;
+        this.codec = codec;
+        this.policy = policy;
+        if (etag != null && uri != null) {
+            key = uri + " " + etag + " " + contentLength + " " + codec.encoding();
+            compressed = cache.get(key);
+        }
+        this.body = compressed == null ? new ByteArrayOutputStream((int) contentLength) : null;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        try {
+            collect((ByteBuf) msg);
+        } finally {
+            ((ByteBuf) msg).release();
+        }
+        promise.setSuccess();
+    }
+
+    /**
+     * Adds the readable bytes of the buffer to the body, without releasing it.
+     */
+    void collect(ByteBuf content) throws IOException {
+        if (body != null) {
+            content.readBytes(body, content.readableBytes());
+        } else {
+            content.skipBytes(content.readableBytes());
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (compressed == null) {
+            byte[] content = body.toByteArray();
+            if (key == null) {
+                key = hash(content) + " " + codec.encoding();
+                compressed = cache.get(key);
+            }
+            if (compressed == null) {
+                compressed = compress(content);
+                cache.put(key, compressed);
+            } else {
+                policy.sentFromCache();
+            }
+        } else {
+            policy.sentFromCache();
+        }
+        ctx.write(Unpooled.wrappedBuffer(compressed));
+        ctx.flush();
+        ctx.close(promise);
+    }
+
+    private byte[] compress(byte[] content) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        OutputStream encoder = codec.encoder(out);
+        encoder.write(content);
+        encoder.close();
+        byte[] compressed = out.toByteArray();
+        policy.compressing();
+        policy.compressed(content.length, System.nanoTime() - start);
+        policy.written(compressed.length);
+        return compressed;
+    }
+
+    private static String hash(byte[] content) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
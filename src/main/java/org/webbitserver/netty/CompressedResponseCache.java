@@ -0,0 +1,97 @@
+package org.webbitserver.netty;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compressed response bodies kept in memory up to a total size, so that responses sent again, such as
+ * static files and identical template renders, are not compressed again. Entries are keyed by the encoding
+ * and the requested URI with the response's strong ETag and length, or a hash of the uncompressed body if it
+ * has no strong ETag. The least recently used are evicted once the cache is full.
+ * <p/>
+ * A strong ETag only tells versions of one resource apart, and may be derived from something other than the
+ * body, such as StaticFileHandler's modification times, which is why the URI is part of the key.
+ *
+ * @see CompressionPolicy#cache(CompressedResponseCache)
+ */
+public class CompressedResponseCache {
+
+    // Rough cost of an entry beyond its compressed content.
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxSize      total size of the compressed bodies kept
+     * @param maxEntrySize largest response body, before compression, that is cached
+     */
+    public CompressedResponseCache(long maxSize, long maxEntrySize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * A cache of compressed bodies of responses up to a sixteenth of its size.
+     */
+    public CompressedResponseCache(long maxSize) {
+        this(maxSize, maxSize / 16);
+    }
+
+    public long maxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Total weight of the cached entries.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Number of responses sent from the cache.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Number of responses that had to be compressed.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    synchronized byte[] get(String key) {
+        byte[] compressed = entries.get(key);
+        if (compressed == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return compressed;
+    }
+
+    synchronized void put(String key, byte[] compressed) {
+        long weight = ENTRY_OVERHEAD + compressed.length;
+        if (weight > maxSize) {
+            return;
+        }
+        byte[] previous = entries.put(key, compressed);
+        if (previous != null) {
+            size -= ENTRY_OVERHEAD + previous.length;
+        }
+        size += weight;
+        Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+        while (size > maxSize) {
+            size -= ENTRY_OVERHEAD + eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package org.webbitserver.netty;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which responses {@link HttpChunkContentCompressor} compresses, and counts what compression costs
+ * and saves.
+ * <p/>
+ * By default, responses are compressed at level 6 when they are at least {@value #DEFAULT_MINIMUM_SIZE} bytes
+ * (or of unknown length) and of a textual content type, or of no declared type at all. Responses that already
+ * have a Content-Encoding are never compressed again.
+ * <p/>
+ * The encoding is negotiated from the request's {@code Accept-Encoding}, taking the one with the highest
+ * q-value. Ties go to the {@link #codecs(ContentCodec...) codecs}, which default to brotli and zstd when their
+ * libraries are available, then to gzip and deflate.
+ * <p/>
+ * Changes apply from the next response, except for the compression level of gzip and deflate, which each
+ * connection fixes when it opens.
+ *
+ * @see NettyWebServer#compressionPolicy(CompressionPolicy)
+ */
+public class CompressionPolicy {
+    public static final int DEFAULT_MINIMUM_SIZE = 1024;
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    public static final String ANY_MIME_TYPE = "*/*";
+    private static final String[] DEFAULT_MIME_TYPES = {
+            "text/*",
+            "application/json",
+            "application/javascript",
+            "application/x-javascript",
+            "application/xml",
+            "application/xhtml+xml",
+            "application/rss+xml",
+            "application/atom+xml",
+            "image/svg+xml"
+    };
+
+    private volatile int minimumSize = DEFAULT_MINIMUM_SIZE;
+    private volatile int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private volatile Set<String> mimeTypes = mimeTypeSet(DEFAULT_MIME_TYPES);
+    private volatile List<ContentCodec> codecs = Arrays.<ContentCodec>asList(ContentCodecs.values());
+    private volatile CompressedResponseCache cache;
+
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong cachedResponses = new AtomicLong();
+    private final AtomicLong skippedResponses = new AtomicLong();
+    private final AtomicLong skippedBytes = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+
+    /**
+     * Responses with a smaller Content-Length are sent uncompressed, as compressing them costs more than it
+     * saves. Responses of unknown length, such as chunked ones, are compressed.
+     */
+    public CompressionPolicy minimumSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Minimum size must not be negative: " + bytes);
+        }
+        this.minimumSize = bytes;
+        return this;
+    }
+
+    /**
+     * The content types to compress, such as {@code application/json}, or {@code text/*} for a whole family.
+     * {@link #ANY_MIME_TYPE} compresses every type. Responses with no Content-Type are always candidates.
+     */
+    public CompressionPolicy mimeTypes(String... mimeTypes) {
+        this.mimeTypes = mimeTypeSet(mimeTypes);
+        return this;
+    }
+
+    /**
+     * The gzip/deflate level from 1 (fastest) to 9 (smallest). Applies to connections opened after the change.
+     */
+    public CompressionPolicy compressionLevel(int level) {
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9: " + level);
+        }
+        this.compressionLevel = level;
+        return this;
+    }
+
+    /**
+     * Encodings to offer ahead of gzip and deflate, in order of preference. Unavailable ones are ignored.
+     */
+    public CompressionPolicy codecs(ContentCodec... codecs) {
+        this.codecs = Arrays.asList(codecs.clone());
+        return this;
+    }
+
+    /**
+     * Keeps compressed bodies of responses with a Content-Length in the cache, to send again instead of
+     * compressing them again. No cache is used by default.
+     */
+    public CompressionPolicy cache(CompressedResponseCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public CompressedResponseCache cache() {
+        return cache;
+    }
+
+    public int compressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Number of responses compressed, not counting those sent from the {@link #cache(CompressedResponseCache)
+     * cache}.
+     */
+    public long compressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * Number of responses sent compressed from the cache, which cost no compression time.
+     */
+    public long cachedResponses() {
+        return cachedResponses.get();
+    }
+
+    /**
+     * Number of responses this policy left uncompressed, for their size, type or existing encoding.
+     */
+    public long skippedResponses() {
+        return skippedResponses.get();
+    }
+
+    /**
+     * Total length of the responses left uncompressed by this policy, where known.
+     */
+    public long skippedBytes() {
+        return skippedBytes.get();
+    }
+
+    /**
+     * Total length of the response bodies that were compressed.
+     */
+    public long bytesBeforeCompression() {
+        return bytesBeforeCompression.get();
+    }
+
+    /**
+     * Total length of those bodies once compressed, as written to the wire.
+     */
+    public long bytesAfterCompression() {
+        return bytesAfterCompression.get();
+    }
+
+    /**
+     * Time spent compressing response bodies.
+     */
+    public long compressionNanos() {
+        return compressionNanos.get();
+    }
+
+    /**
+     * Bytes written for each byte of compressed bodies, or 1 if nothing was compressed yet.
+     */
+    public double compressionRatio() {
+        long before = bytesBeforeCompression.get();
+        return before == 0 ? 1 : bytesAfterCompression.get() / (double) before;
+    }
+
+    /**
+     * The compression time saved by skipping responses, estimated from the time compressed responses took
+     * per byte.
+     */
+    public long estimatedNanosSaved() {
+        long before = bytesBeforeCompression.get();
+        return before == 0 ? 0 : (long) (skippedBytes.get() * (compressionNanos.get() / (double) before));
+    }
+
+    /**
+     * Whether the response should be compressed, counting it as skipped if not.
+     */
+    boolean shouldCompress(HttpResponse response) {
+        boolean compress = isCandidate(response);
+        if (!compress) {
+            skipped(response);
+        }
+        return compress;
+    }
+
+    /**
+     * Whether the response's headers allow compressing it, without counting anything. Partial content is never
+     * compressed, as its Content-Range refers to the uncompressed body.
+     */
+    boolean isCandidate(HttpResponse response) {
+        HttpHeaders headers = response.headers();
+        String contentEncoding = headers.get(HttpHeaders.Names.CONTENT_ENCODING);
+        long length = HttpHeaders.getContentLength(response, -1);
+        return (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding))
+                && (length == -1 || length >= minimumSize)
+                && response.getStatus().code() != 206
+                && isCompressible(headers.get(HttpHeaders.Names.CONTENT_TYPE));
+    }
+
+    void skipped(HttpResponse response) {
+        skippedResponses.incrementAndGet();
+        long length = HttpHeaders.getContentLength(response, -1);
+        if (length > 0) {
+            skippedBytes.addAndGet(length);
+        }
+    }
+
+    /**
+     * The codec for an encoding negotiated by {@link #negotiate(CharSequence)}, or null for gzip and deflate.
+     */
+    ContentCodec codec(String encoding) {
+        for (ContentCodec codec : codecs) {
+            if (codec.encoding().equals(encoding)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The encoding to compress with given an {@code Accept-Encoding} header, or null if the client accepts none.
+     */
+    String negotiate(CharSequence acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Map<String, Float> qualities = new HashMap<>();
+        for (String accepted : acceptEncoding.toString().split(",")) {
+            String[] parts = accepted.split(";");
+            String encoding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            float quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (encoding.equals("x-gzip")) {
+                encoding = "gzip";
+            }
+            qualities.put(encoding, quality);
+        }
+
+        Float otherwise = qualities.get("*");
+        String best = null;
+        float bestQuality = 0;
+        for (String encoding : offered()) {
+            Float quality = qualities.get(encoding);
+            if (quality == null) {
+                quality = otherwise;
+            }
+            if (quality != null && quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private List<String> offered() {
+        List<String> offered = new ArrayList<>();
+        for (ContentCodec codec : codecs) {
+            if (codec.isAvailable()) {
+                offered.add(codec.encoding());
+            }
+        }
+        offered.add("gzip");
+        offered.add("deflate");
+        return offered;
+    }
+
+    void compressing() {
+        compressedResponses.incrementAndGet();
+    }
+
+    void sentFromCache() {
+        cachedResponses.incrementAndGet();
+    }
+
+    void compressed(int bytes, long nanos) {
+        bytesBeforeCompression.addAndGet(bytes);
+        compressionNanos.addAndGet(nanos);
+    }
+
+    void written(int bytes) {
+        bytesAfterCompression.addAndGet(bytes);
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        Set<String> types = mimeTypes;
+        if (types.contains(ANY_MIME_TYPE)) {
+            return true;
+        }
+        int parameters = contentType.indexOf(';');
+        String mimeType = (parameters == -1 ? contentType : contentType.substring(0, parameters))
+                .trim().toLowerCase(Locale.ENGLISH);
+        int slash = mimeType.indexOf('/');
+        return types.contains(mimeType) || (slash != -1 && types.contains(mimeType.substring(0, slash) + "/*"));
+    }
+
+    private static Set<String> mimeTypeSet(String... mimeTypes) {
+        Set<String> types = new HashSet<>();
+        for (String mimeType : Arrays.asList(mimeTypes)) {
+            types.add(mimeType.trim().toLowerCase(Locale.ENGLISH));
+        }
+        return Collections.unmodifiableSet(types);
+    }
+}
@@ -0,0 +1,32 @@
+package org.webbitserver.netty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response content encoding, such as {@code br}, that {@link HttpChunkContentCompressor} can negotiate
+ * in addition to the gzip and deflate it always supports.
+ * <p/>
+ * Implementations are shared by all connections, so must be thread safe; the streams they create are not.
+ *
+ * @see CompressionPolicy#codecs(ContentCodec...)
+ * @see ContentCodecs
+ */
+public interface ContentCodec {
+
+    /**
+     * The name of the encoding in {@code Accept-Encoding} and {@code Content-Encoding} headers.
+     */
+    String encoding();
+
+    /**
+     * Whether the encoding can be used in the running JVM, for encodings relying on optional libraries.
+     */
+    boolean isAvailable();
+
+    /**
+     * A stream encoding a response body into {@code out}. It is flushed after each chunk of the body, which
+     * should write out everything encoded so far, and closed at the end of the body.
+     */
+    OutputStream encoder(OutputStream out) throws IOException;
+}
@@ -0,0 +1,106 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Runs a {@link ContentCodec} in the {@link io.netty.channel.embedded.EmbeddedChannel} that
+ * {@link io.netty.handler.codec.http.HttpContentEncoder} feeds response content through, like Netty's own
+ * zlib encoder does for gzip.
+ */
+class ContentCodecEncoder extends ChannelHandlerAdapter {
+    private final ContentCodec codec;
+    private Sink sink;
+    private OutputStream encoder;
+
+    ContentCodecEncoder(ContentCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        sink = new Sink(ctx.alloc());
+        encoder = codec.encoder(sink);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        ByteBuf in = (ByteBuf) msg;
+        try {
+            in.readBytes(encoder, in.readableBytes());
+            encoder.flush();
+        } finally {
+            in.release();
+        }
+        ByteBuf out = sink.take();
+        if (out == null) {
+            promise.setSuccess();
+        } else {
+            ctx.write(out, promise);
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        encoder.close();
+        ByteBuf out = sink.take();
+        if (out != null) {
+            ctx.write(out);
+            ctx.flush();
+        }
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        ByteBuf out = sink.take();
+        if (out != null) {
+            out.release();
+        }
+    }
+
+    /**
+     * Collects what the encoder writes into buffers to pass on.
+     */
+    private static class Sink extends OutputStream {
+        private final ByteBufAllocator allocator;
+        private ByteBuf buffer;
+
+        Sink(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer(1).writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            buffer(length).writeBytes(bytes, offset, length);
+        }
+
+        private ByteBuf buffer(int length) {
+            if (buffer == null) {
+                buffer = allocator.buffer(Math.max(length, 256));
+            }
+            return buffer;
+        }
+
+        ByteBuf take() {
+            ByteBuf taken = buffer;
+            buffer = null;
+            return taken;
+        }
+    }
+}
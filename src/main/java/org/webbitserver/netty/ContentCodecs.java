@@ -0,0 +1,101 @@
+package org.webbitserver.netty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Content encodings backed by native libraries, which are looked up reflectively so webbit does not depend on
+ * them. When a library is missing, clients asking for its encoding get gzip or deflate instead.
+ */
+public enum ContentCodecs implements ContentCodec {
+
+    /**
+     * Brotli at quality 4, which compresses JSON and HTML better than gzip at a similar speed. Requires
+     * {@code com.aayushatharva.brotli4j:brotli4j} and its native library for the platform.
+     */
+    BROTLI("br") {
+        private static final String PACKAGE = "com.aayushatharva.brotli4j.";
+        private static final int QUALITY = 4;
+
+        @Override
+        boolean load() throws Exception {
+            return (Boolean) Class.forName(PACKAGE + "Brotli4jLoader").getMethod("isAvailable").invoke(null);
+        }
+
+        @Override
+        OutputStream newEncoder(OutputStream out) throws Exception {
+            Class<?> parametersClass = Class.forName(PACKAGE + "encoder.Encoder$Parameters");
+            Object parameters = parametersClass.getConstructor().newInstance();
+            parametersClass.getMethod("setQuality", int.class).invoke(parameters, QUALITY);
+            Constructor<?> constructor = Class.forName(PACKAGE + "encoder.BrotliOutputStream")
+                    .getConstructor(OutputStream.class, parametersClass);
+            return (OutputStream) constructor.newInstance(out, parameters);
+        }
+    },
+
+    /**
+     * Zstandard at level 3, its default. Requires {@code com.github.luben:zstd-jni}.
+     */
+    ZSTD("zstd") {
+        private static final int LEVEL = 3;
+
+        @Override
+        boolean load() throws Exception {
+            newEncoder(new ByteArrayOutputStream()).close();
+            return true;
+        }
+
+        @Override
+        OutputStream newEncoder(OutputStream out) throws Exception {
+            return (OutputStream) Class.forName("com.github.luben.zstd.ZstdOutputStream")
+                    .getConstructor(OutputStream.class, int.class)
+                    .newInstance(out, LEVEL);
+        }
+    };
+
+    private final String encoding;
+    private volatile Boolean available;
+
+    ContentCodecs(String encoding) {
+        this.encoding = encoding;
+    }
+
+    @Override
+    public String encoding() {
+        return encoding;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        if (available == null) {
+            try {
+                available = load();
+            } catch (Throwable e) {
+                // Not on the classpath, or the native library failed to load.
+                available = false;
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public OutputStream encoder(OutputStream out) throws IOException {
+        try {
+            return newEncoder(out);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (Exception e) {
+            throw new IOException("Could not create " + encoding + " encoder", e);
+        }
+    }
+
+    /**
+     * Loads the library, returning whether it works on this platform.
+     */
+    abstract boolean load() throws Exception;
+
+    abstract OutputStream newEncoder(OutputStream out) throws Exception;
+}
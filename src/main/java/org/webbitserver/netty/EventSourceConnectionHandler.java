@@ -4,6 +4,7 @@ import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import org.webbitserver.EventSourceHandler;
 import org.webbitserver.WebbitException;
+import org.webbitserver.WritabilityHandler;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.nio.channels.ClosedChannelException;
@@ -25,9 +26,19 @@ public class EventSourceConnectionHandler extends ChannelHandlerAdapter {
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        eventSourceConnection.closed();
         eventSourceHandler.onClose(eventSourceConnection);
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        eventSourceConnection.writabilityChanged();
+        if (eventSourceHandler instanceof WritabilityHandler) {
+            ((WritabilityHandler) eventSourceHandler).onWritabilityChanged(eventSourceConnection,
+                                                                           eventSourceConnection.isWritable());
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         if (cause.getCause() instanceof ClosedChannelException) {
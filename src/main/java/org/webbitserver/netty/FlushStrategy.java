@@ -0,0 +1,125 @@
+package org.webbitserver.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When messages sent on WebSocket and EventSource connections are flushed to the client.
+ * <p/>
+ * Flushing each message costs a system call per message. Delaying the flush lets several messages go out in one
+ * write, at the cost of the first of them waiting a little.
+ *
+ * @see NettyWebServer#flushStrategy(FlushStrategy)
+ * @see AbstractHttpConnection#flushStrategy(FlushStrategy)
+ */
+public final class FlushStrategy {
+
+    /**
+     * Flushes every message as it is sent. The default.
+     */
+    public static final FlushStrategy IMMEDIATE = new FlushStrategy(1, 0, "IMMEDIATE");
+
+    /**
+     * Flushes once the handler thread has finished its current task, so all messages sent from one callback
+     * go out together.
+     */
+    public static final FlushStrategy END_OF_TICK = new FlushStrategy(Integer.MAX_VALUE, 0, "END_OF_TICK");
+
+    private final int maxMessages;
+    private final long maxDelayNanos;
+    private final String description;
+
+    private FlushStrategy(int maxMessages, long maxDelayNanos, String description) {
+        this.maxMessages = maxMessages;
+        this.maxDelayNanos = maxDelayNanos;
+        this.description = description;
+    }
+
+    /**
+     * Flushes once {@code maxMessages} messages are waiting, or once the first of them has waited
+     * {@code maxDelay}, whichever comes first.
+     */
+    public static FlushStrategy batch(int maxMessages, long maxDelay, TimeUnit unit) {
+        if (maxMessages < 1) {
+            throw new IllegalArgumentException("maxMessages must be at least 1, was " + maxMessages);
+        }
+        if (maxDelay <= 0) {
+            throw new IllegalArgumentException("maxDelay must be positive, was " + maxDelay);
+        }
+        return new FlushStrategy(maxMessages, unit.toNanos(maxDelay),
+                                 "batch(" + maxMessages + ", " + maxDelay + " " + unit + ")");
+    }
+
+    Flusher flusher(ChannelHandlerContext ctx) {
+        return new Flusher(ctx, maxMessages, maxDelayNanos);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * The flushing state of one connection, kept on its handler thread.
+     */
+    static class Flusher {
+        private final ChannelHandlerContext ctx;
+        private final int maxMessages;
+        private final long maxDelayNanos;
+        private final Runnable counter = new Runnable() {
+            @Override
+            public void run() {
+                count();
+            }
+        };
+        private final Runnable flusher = new Runnable() {
+            @Override
+            public void run() {
+                scheduled = false;
+                if (pending > 0) {
+                    flush();
+                }
+            }
+        };
+        private int pending;
+        private boolean scheduled;
+
+        Flusher(ChannelHandlerContext ctx, int maxMessages, long maxDelayNanos) {
+            this.ctx = ctx;
+            this.maxMessages = maxMessages;
+            this.maxDelayNanos = maxDelayNanos;
+        }
+
+        /**
+         * Called after each message is written to the channel, on any thread.
+         */
+        void written() {
+            if (maxMessages == 1) {
+                ctx.channel().flush();
+            } else if (ctx.executor().inEventLoop()) {
+                count();
+            } else {
+                ctx.executor().execute(counter);
+            }
+        }
+
+        private void count() {
+            if (++pending >= maxMessages) {
+                flush();
+            } else if (!scheduled) {
+                scheduled = true;
+                if (maxDelayNanos == 0) {
+                    ctx.executor().execute(flusher);
+                } else {
+                    ctx.executor().schedule(flusher, maxDelayNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        void flush() {
+            pending = 0;
+            ctx.channel().flush();
+        }
+    }
+}
@@ -1,19 +1,221 @@
 package org.webbitserver.netty;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the responses its {@link CompressionPolicy} selects, with the encoding it negotiates.
+ */
 public class HttpChunkContentCompressor extends HttpContentCompressor {
 
+    private final CompressionPolicy policy;
+    private final Queue<String> requestedUris = new ArrayDeque<>();
+    private String requestedUri;
+    private boolean compressing;
+    private CachingContentEncoder caching;
+
+    public HttpChunkContentCompressor() {
+        this(new CompressionPolicy());
+    }
+
+    public HttpChunkContentCompressor(CompressionPolicy policy) {
+        super(policy.compressionLevel());
+        this.policy = policy;
+    }
+
+    /**
+     * A copy of the response that this compressor passes through untouched, for bodies such as a
+     * {@link io.netty.channel.FileRegion} that are not {@link io.netty.handler.codec.http.HttpContent}
+     * and so cannot be compressed.
+     */
+    static HttpResponse uncompressed(HttpResponse response) {
+        Uncompressed uncompressed = new Uncompressed(response);
+        uncompressed.headers().set(response.headers());
+        return uncompressed;
+    }
+
+    /**
+     * Whether this compressor will compress the response to a request with the given {@code Accept-Encoding}.
+     * If not, the response is counted as skipped, so it can be sent {@link #uncompressed(HttpResponse)}.
+     */
+    boolean willCompress(HttpResponse response, CharSequence acceptEncoding) {
+        if (policy.isCandidate(response) && policy.negotiate(acceptEncoding) != null) {
+            return true;
+        }
+        policy.skipped(response);
+        return false;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, HttpRequest msg, List<Object> out) throws Exception {
+        String host = msg.headers().get(HttpHeaders.Names.HOST);
+        requestedUris.add(host == null ? msg.getUri() : host + msg.getUri());
+        super.decode(ctx, msg, out);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+        // Matches the requests up with their responses as HttpContentEncoder does with their Accept-Encoding.
+        if (msg instanceof HttpResponse && ((HttpResponse) msg).getStatus().code() != 100) {
+            requestedUri = requestedUris.poll();
+        }
+        super.encode(ctx, msg, out);
+    }
+
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
-        if (msg instanceof ByteBuf) {
-            super.write(ctx, new DefaultHttpContent((ByteBuf) msg), promise);
+        Object message = msg instanceof ByteBuf ? new DefaultHttpContent((ByteBuf) msg) : msg;
+        if (caching != null && message instanceof HttpContent) {
+            // HttpContentEncoder insists on output for every chunk, so collect the body before it sees it.
+            // The caching encoder counts what it compresses itself.
+            caching.collect(((HttpContent) message).content());
+            if (!(message instanceof LastHttpContent)) {
+                ((HttpContent) message).release();
+                promise.setSuccess();
+                return;
+            }
+        }
+        int bytes = message instanceof HttpContent ? ((HttpContent) message).content().readableBytes() : 0;
+        long start = message instanceof HttpContent ? System.nanoTime() : 0;
+        super.write(ctx, message, promise);
+        // A full response only starts compressing within the write, so check afterwards.
+        if (compressing) {
+            if (caching == null && message instanceof HttpContent) {
+                policy.compressed(bytes, System.nanoTime() - start);
+            }
+            if (message instanceof LastHttpContent) {
+                compressing = false;
+                caching = null;
+            }
+        }
+    }
+
+    @Override
+    protected Result beginEncode(HttpResponse headers, CharSequence acceptEncoding) throws Exception {
+        if (headers instanceof Uncompressed || !policy.shouldCompress(headers)) {
+            return null;
+        }
+        String encoding = policy.negotiate(acceptEncoding);
+        if (encoding == null) {
+            return null;
+        }
+        ContentCodec codec = policy.codec(encoding);
+        CompressedResponseCache cache = policy.cache();
+        long length = HttpHeaders.getContentLength(headers, -1);
+        Result result;
+        if (cache != null && length != -1 && length <= cache.maxEntrySize()) {
+            ContentCodec cacheCodec = codec == null ? new ZlibCodec(encoding, policy.compressionLevel()) : codec;
+            caching = new CachingContentEncoder(
+                    cache, cacheCodec, policy, length, requestedUri, strongETag(headers));
+            result = new Result(encoding, new EmbeddedChannel(caching));
+        } else if (codec == null) {
+            result = super.beginEncode(headers, encoding);
         } else {
-            super.write(ctx, msg, promise);
+            result = new Result(encoding, new EmbeddedChannel(new ContentCodecEncoder(codec)));
+        }
+        if (result != null) {
+            compressing = true;
+            if (caching == null) {
+                policy.compressing();
+                result.contentEncoder().pipeline().addFirst(new WrittenBytesCounter(policy));
+            }
+        }
+        return result;
+    }
+
+    private static String strongETag(HttpResponse headers) {
+        String etag = headers.headers().get(HttpHeaders.Names.ETAG);
+        return etag == null || etag.startsWith("W/") ? null : etag;
+    }
+
+    /**
+     * The JDK's gzip and deflate, for compressing a whole body to cache.
+     */
+    private static class ZlibCodec implements ContentCodec {
+        private final String encoding;
+        private final int level;
+
+        ZlibCodec(String encoding, int level) {
+            this.encoding = encoding;
+            this.level = level;
+        }
+
+        @Override
+        public String encoding() {
+            return encoding;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public OutputStream encoder(OutputStream out) throws IOException {
+            if (encoding.equals("gzip")) {
+                return new GZIPOutputStream(out) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            }
+            final Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+    }
+
+    private static class Uncompressed extends DefaultHttpResponse {
+        Uncompressed(HttpResponse response) {
+            super(response.getProtocolVersion(), response.getStatus());
+        }
+    }
+
+    /**
+     * Sits after the zlib encoder to count the compressed bytes it produces.
+     */
+    private static class WrittenBytesCounter extends ChannelHandlerAdapter {
+        private final CompressionPolicy policy;
+
+        WrittenBytesCounter(CompressionPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof ByteBuf) {
+                policy.written(((ByteBuf) msg).readableBytes());
+            }
+            ctx.write(msg, promise);
         }
     }
 }
@@ -0,0 +1,68 @@
+package org.webbitserver.netty;
+
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a connection may go without reading anything, without writing anything, or without either, before
+ * the server closes it. A timeout of 0 disables that check.
+ *
+ * @see NettyWebServer#staleConnectionTimeouts(IdleTimeouts)
+ * @see NettyWebServer#webSocketIdleTimeouts(IdleTimeouts)
+ * @see NettyWebServer#eventSourceIdleTimeouts(IdleTimeouts)
+ */
+public final class IdleTimeouts {
+    /**
+     * Never closes idle connections.
+     */
+    public static final IdleTimeouts NONE = new IdleTimeouts(0, 0, 0);
+
+    private final long readMillis;
+    private final long writeMillis;
+    private final long allMillis;
+
+    public IdleTimeouts(long readMillis, long writeMillis, long allMillis) {
+        if (readMillis < 0 || writeMillis < 0 || allMillis < 0) {
+            throw new IllegalArgumentException("Idle timeouts must not be negative, were "
+                    + readMillis + ", " + writeMillis + " and " + allMillis);
+        }
+        this.readMillis = readMillis;
+        this.writeMillis = writeMillis;
+        this.allMillis = allMillis;
+    }
+
+    /**
+     * Closes connections that have neither read nor written anything for the given time.
+     */
+    public static IdleTimeouts all(long millis) {
+        return new IdleTimeouts(0, 0, millis);
+    }
+
+    public long read() {
+        return readMillis;
+    }
+
+    public long write() {
+        return writeMillis;
+    }
+
+    public long all() {
+        return allMillis;
+    }
+
+    /**
+     * A handler raising the idle events, or null if every timeout is disabled.
+     */
+    IdleStateHandler newIdleStateHandler() {
+        if (readMillis == 0 && writeMillis == 0 && allMillis == 0) {
+            return null;
+        }
+        return new IdleStateHandler(readMillis, writeMillis, allMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "IdleTimeouts{read=" + readMillis + "ms, write=" + writeMillis + "ms, all=" + allMillis + "ms}";
+    }
+}
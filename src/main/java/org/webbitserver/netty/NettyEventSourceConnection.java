@@ -1,20 +1,32 @@
 package org.webbitserver.netty;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.util.CharsetUtil;
+import org.webbitserver.EncodedEventSourceMessage;
 import org.webbitserver.EventSourceConnection;
 import org.webbitserver.EventSourceMessage;
 
 
 public class NettyEventSourceConnection extends AbstractHttpConnection implements EventSourceConnection {
     public NettyEventSourceConnection(NettyHttpRequest nettyHttpRequest, ChannelHandlerContext ctx) {
-        super(ctx, nettyHttpRequest);
+        this(nettyHttpRequest, ctx, FlushStrategy.IMMEDIATE);
+    }
+
+    public NettyEventSourceConnection(NettyHttpRequest nettyHttpRequest,
+                                      ChannelHandlerContext ctx,
+                                      FlushStrategy flushStrategy)
+    {
+        super(ctx, nettyHttpRequest, flushStrategy);
     }
 
     @Override
     public NettyEventSourceConnection send(EventSourceMessage message) {
-        writeMessage(Unpooled.copiedBuffer(message.build(), CharsetUtil.UTF_8));
+        sendMessage(message.encode(ctx.alloc()));
+        return this;
+    }
+
+    @Override
+    public NettyEventSourceConnection send(EncodedEventSourceMessage message) {
+        sendMessage(message.content());
         return this;
     }
 
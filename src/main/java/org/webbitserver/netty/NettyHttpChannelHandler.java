@@ -8,11 +8,15 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.util.CharsetUtil;
 import org.webbitserver.HttpControl;
@@ -28,29 +32,77 @@ import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
-public class NettyHttpChannelHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+public class NettyHttpChannelHandler extends SimpleChannelInboundHandler<HttpObject> {
 
     private final List<HttpHandler> httpHandlers;
     private final long timestamp;
     private final Thread.UncaughtExceptionHandler exceptionHandler;
     private final Thread.UncaughtExceptionHandler ioExceptionHandler;
     private final int maxWebSocketFrameSize;
+    private final FlushStrategy flushStrategy;
+    private final PerMessageDeflate perMessageDeflate;
+    private final int webSocketFragmentSize;
+    private final OverflowPolicy overflowPolicy;
+    private final WebSocketKeepAlive webSocketKeepAlive;
+    private NettyHttpResponse currentResponse;
+    private NettyHttpRequestBody currentBody;
 
     public NettyHttpChannelHandler(List<HttpHandler> httpHandlers,
                                    long timestamp,
                                    Thread.UncaughtExceptionHandler exceptionHandler,
                                    Thread.UncaughtExceptionHandler ioExceptionHandler,
                                    int maxWebSocketFrameSize)
+    {
+        this(httpHandlers, timestamp, exceptionHandler, ioExceptionHandler, maxWebSocketFrameSize,
+             FlushStrategy.IMMEDIATE, null, NettyWebServer.DEFAULT_WEB_SOCKET_FRAGMENT_SIZE, OverflowPolicy.UNBOUNDED,
+             null);
+    }
+
+    public NettyHttpChannelHandler(List<HttpHandler> httpHandlers,
+                                   long timestamp,
+                                   Thread.UncaughtExceptionHandler exceptionHandler,
+                                   Thread.UncaughtExceptionHandler ioExceptionHandler,
+                                   int maxWebSocketFrameSize,
+                                   FlushStrategy flushStrategy,
+                                   PerMessageDeflate perMessageDeflate,
+                                   int webSocketFragmentSize,
+                                   OverflowPolicy overflowPolicy,
+                                   WebSocketKeepAlive webSocketKeepAlive)
     {
         this.httpHandlers = httpHandlers;
         this.timestamp = timestamp;
         this.exceptionHandler = exceptionHandler;
         this.ioExceptionHandler = ioExceptionHandler;
         this.maxWebSocketFrameSize = maxWebSocketFrameSize;
+        this.flushStrategy = flushStrategy;
+        this.perMessageDeflate = perMessageDeflate;
+        this.webSocketFragmentSize = webSocketFragmentSize;
+        this.overflowPolicy = overflowPolicy;
+        this.webSocketKeepAlive = webSocketKeepAlive;
     }
 
     @Override
-    protected void messageReceived(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+    protected void messageReceived(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+        if (msg instanceof FullHttpRequest) {
+            currentBody = null;
+            handleRequest(ctx, (FullHttpRequest) msg, null);
+        } else if (msg instanceof HttpRequest) {
+            // Streamed request: the body follows as HttpContent, so hand the handlers a request without one.
+            HttpRequest streamed = (HttpRequest) msg;
+            FullHttpRequest request = new DefaultFullHttpRequest(streamed.getProtocolVersion(),
+                                                                 streamed.getMethod(),
+                                                                 streamed.getUri(),
+                                                                 Unpooled.EMPTY_BUFFER);
+            request.headers().set(streamed.headers());
+            request.setDecoderResult(streamed.getDecoderResult());
+            currentBody = new NettyHttpRequestBody(ctx);
+            handleRequest(ctx, request, currentBody);
+        } else if (msg instanceof HttpContent && currentBody != null) {
+            currentBody.content((HttpContent) msg);
+        }
+    }
+
+    private void handleRequest(ChannelHandlerContext ctx, FullHttpRequest request, NettyHttpRequestBody body) {
         //  && ctx.getAttachment() != IGNORE_REQUEST
 
         // TODO does this belong here?
@@ -63,7 +115,8 @@ public class NettyHttpChannelHandler extends SimpleChannelInboundHandler<FullHtt
                 new NettyHttpRequest(request, ctx.channel().remoteAddress(), ctx.channel().id(), timestamp);
         DefaultHttpResponse ok_200 = new DefaultHttpResponse(HTTP_1_1, OK);
         NettyHttpResponse nettyHttpResponse =
-                new NettyHttpResponse(ctx, request, ok_200, isKeepAlive(request), exceptionHandler);
+                new NettyHttpResponse(ctx, request, ok_200, isKeepAlive(request), exceptionHandler, body);
+        currentResponse = nettyHttpResponse;
         HttpControl control =
                 new NettyHttpControl(httpHandlers.iterator(),
                                      ctx,
@@ -71,11 +124,36 @@ public class NettyHttpChannelHandler extends SimpleChannelInboundHandler<FullHtt
                                      nettyHttpResponse,
                                      ok_200,
                                      ioExceptionHandler,
-                                     maxWebSocketFrameSize);
+                                     maxWebSocketFrameSize,
+                                     body,
+                                     flushStrategy,
+                                     perMessageDeflate,
+                                     webSocketFragmentSize,
+                                     overflowPolicy,
+                                     webSocketKeepAlive);
 
         control.nextHandler(nettyHttpRequest, nettyHttpResponse);
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        try {
+            if (currentBody != null) {
+                currentBody.closed();
+            }
+        } finally {
+            ctx.fireChannelInactive();
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (currentResponse != null) {
+            currentResponse.writabilityChanged();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
     private static void sendHttpResponse(ChannelHandlerContext ctx, FullHttpRequest req, FullHttpResponse res) {
         // Generate an error page if response getStatus code is not OK (200).
         if (res.getStatus().code() != 200) {
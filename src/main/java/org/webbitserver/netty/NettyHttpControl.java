@@ -1,23 +1,29 @@
 package org.webbitserver.netty;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponseEncoder;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
 import org.webbitserver.EventSourceHandler;
+import org.webbitserver.HttpBodyHandler;
 import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
 import org.webbitserver.WebSocketConnection;
+import org.webbitserver.WebSocketFragmentHandler;
 import org.webbitserver.WebSocketHandler;
 
 import java.util.Iterator;
@@ -33,6 +39,12 @@ public class NettyHttpControl implements HttpControl {
     private final io.netty.handler.codec.http.HttpResponse nettyHttpResponse;
     private final Thread.UncaughtExceptionHandler ioExceptionHandler;
     private final int maxWebSocketFrameSize;
+    private final NettyHttpRequestBody body;
+    private final FlushStrategy flushStrategy;
+    private final PerMessageDeflate perMessageDeflate;
+    private final int webSocketFragmentSize;
+    private final OverflowPolicy overflowPolicy;
+    private final WebSocketKeepAlive webSocketKeepAlive;
 
     private HttpRequest defaultRequest;
     private HttpResponse webbitHttpResponse;
@@ -47,6 +59,65 @@ public class NettyHttpControl implements HttpControl {
                             io.netty.handler.codec.http.HttpResponse nettyHttpResponse,
                             Thread.UncaughtExceptionHandler ioExceptionHandler,
                             int maxWebSocketFrameSize)
+    {
+        this(handlerIterator,
+             ctx,
+             webbitHttpRequest,
+             webbitHttpResponse,
+             nettyHttpResponse,
+             ioExceptionHandler,
+             maxWebSocketFrameSize,
+             null);
+    }
+
+    /**
+     * @param body the streamed request body, or null if the request was aggregated
+     */
+    public NettyHttpControl(Iterator<HttpHandler> handlerIterator,
+                            ChannelHandlerContext ctx,
+                            NettyHttpRequest webbitHttpRequest,
+                            NettyHttpResponse webbitHttpResponse,
+                            io.netty.handler.codec.http.HttpResponse nettyHttpResponse,
+                            Thread.UncaughtExceptionHandler ioExceptionHandler,
+                            int maxWebSocketFrameSize,
+                            NettyHttpRequestBody body)
+    {
+        this(handlerIterator,
+             ctx,
+             webbitHttpRequest,
+             webbitHttpResponse,
+             nettyHttpResponse,
+             ioExceptionHandler,
+             maxWebSocketFrameSize,
+             body,
+             FlushStrategy.IMMEDIATE,
+             null,
+             NettyWebServer.DEFAULT_WEB_SOCKET_FRAGMENT_SIZE,
+             OverflowPolicy.UNBOUNDED,
+             null);
+    }
+
+    /**
+     * @param body              the streamed request body, or null if the request was aggregated
+     * @param flushStrategy     when messages sent on WebSocket and EventSource connections are flushed
+     * @param perMessageDeflate WebSocket compression settings, or null to not offer compression
+     * @param webSocketFragmentSize largest fragment handed to a {@link WebSocketFragmentHandler}
+     * @param overflowPolicy    what happens to messages sent to WebSocket and EventSource clients not keeping up
+     * @param webSocketKeepAlive how WebSocket clients are pinged, or null to not ping them
+     */
+    public NettyHttpControl(Iterator<HttpHandler> handlerIterator,
+                            ChannelHandlerContext ctx,
+                            NettyHttpRequest webbitHttpRequest,
+                            NettyHttpResponse webbitHttpResponse,
+                            io.netty.handler.codec.http.HttpResponse nettyHttpResponse,
+                            Thread.UncaughtExceptionHandler ioExceptionHandler,
+                            int maxWebSocketFrameSize,
+                            NettyHttpRequestBody body,
+                            FlushStrategy flushStrategy,
+                            PerMessageDeflate perMessageDeflate,
+                            int webSocketFragmentSize,
+                            OverflowPolicy overflowPolicy,
+                            WebSocketKeepAlive webSocketKeepAlive)
     {
         this.handlerIterator = handlerIterator;
         this.ctx = ctx;
@@ -55,6 +126,12 @@ public class NettyHttpControl implements HttpControl {
         this.nettyHttpResponse = nettyHttpResponse;
         this.ioExceptionHandler = ioExceptionHandler;
         this.maxWebSocketFrameSize = maxWebSocketFrameSize;
+        this.body = body;
+        this.flushStrategy = flushStrategy;
+        this.perMessageDeflate = perMessageDeflate;
+        this.webSocketFragmentSize = webSocketFragmentSize;
+        this.overflowPolicy = overflowPolicy;
+        this.webSocketKeepAlive = webSocketKeepAlive;
 
         defaultRequest = webbitHttpRequest;
         defaultControl = this;
@@ -93,8 +170,10 @@ public class NettyHttpControl implements HttpControl {
             throw new IllegalStateException("already upgraded?");
         }
 
+        PerMessageDeflate.Agreement deflate = perMessageDeflate == null ? null
+                : perMessageDeflate.negotiate(webbitHttpRequest.header(PerMessageDeflate.EXTENSIONS_HEADER));
         WebSocketServerHandshakerFactory wsFactory =
-                new WebSocketServerHandshakerFactory(getWebSocketLocation(), null, false);
+                new WebSocketServerHandshakerFactory(getWebSocketLocation(), null, deflate != null);
         WebSocketServerHandshaker handshaker = wsFactory.newHandshaker(webbitHttpRequest.netty());
 
         Channel channel = ctx.channel();
@@ -103,23 +182,63 @@ public class NettyHttpControl implements HttpControl {
             // TODO this is bad..
             return webSocketConnection;
         }
+        if (handshaker.version() == WebSocketVersion.V00) {
+            deflate = null;
+        }
 
         webSocketConnection =
                 new NettyWebSocketConnection(
                         webbitHttpRequest,
                         ctx,
-                        "Sec-WebSocket-Version-" + handshaker.version().toHttpHeaderValue());
+                        "Sec-WebSocket-Version-" + handshaker.version().toHttpHeaderValue(),
+                        flushStrategy);
+        webSocketConnection.overflowPolicy(overflowPolicy);
+        if (webSocketKeepAlive != null) {
+            webSocketConnection.keepAlive(webSocketKeepAlive);
+        }
 
-        ChannelFuture handshakeComplete = handshaker.handshake(channel, webbitHttpRequest.netty());
+        // The handshake puts the frame decoder and encoder in place of the HTTP ones, and the client may send
+        // frames as soon as it reads the response, so anything around them is added first.
+        String httpDecoder = channel.pipeline().context(HttpRequestDecoder.class).name();
+        String httpEncoder = channel.pipeline().context(HttpResponseEncoder.class).name();
+
+        // Fragment handlers get large messages piece by piece rather than aggregated.
+        WebSocketFragmentSplitter splitter = null;
+        if (webSocketHandler instanceof WebSocketFragmentHandler) {
+            splitter = new WebSocketFragmentSplitter(channel, webSocketFragmentSize);
+            channel.pipeline().addBefore(httpDecoder, "wssplitter", splitter);
+        }
+        if (deflate != null) {
+            PerMessageDeflateCodec deflateCodec = splitter == null
+                    ? new PerMessageDeflateCodec(perMessageDeflate, deflate, maxWebSocketFrameSize)
+                    : new PerMessageDeflateCodec(perMessageDeflate, deflate,
+                                                 webSocketFragmentSize * PerMessageDeflateCodec.MAX_FRAGMENT_EXPANSION,
+                                                 true);
+            channel.pipeline().addBefore(httpDecoder, "wsdeflaterewriter", deflateCodec.opcodeRewriter());
+            channel.pipeline().addAfter(httpEncoder, "wsdeflate", deflateCodec);
+        }
 
         WebSocketConnectionHandler webSocketConnectionHandler = new WebSocketConnectionHandler(
                 ioExceptionHandler,
                 webSocketConnection,
                 webSocketHandler,
-                handshaker);
+                handshaker,
+                splitter);
         channel.pipeline().replace("handler", "wshandler", webSocketConnectionHandler);
-        channel.pipeline().addBefore("wshandler", "wsaggregator", new WebSocketFrameAggregator(maxWebSocketFrameSize));
+        if (splitter == null) {
+            channel.pipeline().addBefore("wshandler", "wsaggregator", new WebSocketFrameAggregator(maxWebSocketFrameSize));
+        }
+        StaleConnectionHandler staleConnectionHandler = channel.pipeline().get(StaleConnectionHandler.class);
+        if (staleConnectionHandler != null) {
+            staleConnectionHandler.upgradedToWebSocket(channel.pipeline());
+        }
 
+        HttpHeaders responseHeaders = new DefaultHttpHeaders();
+        if (deflate != null) {
+            responseHeaders.set(PerMessageDeflate.EXTENSIONS_HEADER, deflate.responseHeader());
+        }
+        ChannelFuture handshakeComplete =
+                handshaker.handshake(channel, webbitHttpRequest.netty(), responseHeaders, channel.newPromise());
         handshakeComplete.addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
@@ -174,7 +293,8 @@ public class NettyHttpControl implements HttpControl {
     @Override
     public NettyEventSourceConnection eventSourceConnection() {
         if (eventSourceConnection == null) {
-            eventSourceConnection = new NettyEventSourceConnection(webbitHttpRequest, ctx);
+            eventSourceConnection = new NettyEventSourceConnection(webbitHttpRequest, ctx, flushStrategy);
+            eventSourceConnection.overflowPolicy(overflowPolicy);
         }
         return eventSourceConnection;
     }
@@ -189,14 +309,46 @@ public class NettyHttpControl implements HttpControl {
         ExecutorHelper.safeExecute(ctx, command);
     }
 
+    @Override
+    public void readBody(HttpBodyHandler handler) {
+        try {
+            if (body != null) {
+                body.read(handler);
+            } else {
+                ByteBuf content = webbitHttpRequest.netty().content();
+                if (content.isReadable()) {
+                    handler.onContent(content.nioBuffer().asReadOnlyBuffer());
+                }
+                handler.onEnd();
+            }
+        } catch (Exception e) {
+            ctx.fireExceptionCaught(e);
+        }
+    }
+
+    @Override
+    public void pauseBody() {
+        if (body != null) {
+            body.pause();
+        }
+    }
+
+    @Override
+    public void resumeBody() {
+        if (body != null) {
+            body.resume();
+        }
+    }
+
     private void performEventSourceHandshake(ChannelHandler eventSourceConnectionHandler) {
         nettyHttpResponse.setStatus(HttpResponseStatus.OK);
         HttpHeaders.setHeader(nettyHttpResponse, HttpHeaders.Names.CONTENT_TYPE, "text/event-stream");
         HttpHeaders.setHeader(nettyHttpResponse, HttpHeaders.Names.TRANSFER_ENCODING, "identity");
         HttpHeaders.setHeader(nettyHttpResponse, HttpHeaders.Names.CONNECTION, "keep-alive");
         HttpHeaders.setHeader(nettyHttpResponse, HttpHeaders.Names.CACHE_CONTROL, "no-cache");
-        ctx.channel().write(nettyHttpResponse);
-        ctx.channel().write(LastHttpContent.EMPTY_LAST_CONTENT);
+        // The messages that follow are the body, so the response is never ended, and never compressed as
+        // that would hold messages back.
+        ctx.channel().writeAndFlush(HttpChunkContentCompressor.uncompressed(nettyHttpResponse));
         getReadyToSendEventSourceMessages(eventSourceConnectionHandler);
     }
 
@@ -205,5 +357,9 @@ public class NettyHttpControl implements HttpControl {
         ChannelPipeline p = channel.pipeline();
         p.remove("aggregator");
         p.replace("handler", "ssehandler", eventSourceConnectionHandler);
+        StaleConnectionHandler staleConnectionHandler = p.get(StaleConnectionHandler.class);
+        if (staleConnectionHandler != null) {
+            staleConnectionHandler.upgradedToEventSource(p);
+        }
     }
 }
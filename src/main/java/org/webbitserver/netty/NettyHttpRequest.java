@@ -1,6 +1,7 @@
 package org.webbitserver.netty;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.Cookie;
 import io.netty.handler.codec.http.CookieDecoder;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -9,7 +10,11 @@ import io.netty.util.CharsetUtil;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.helpers.QueryParameters;
 
+import java.io.InputStream;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -18,6 +23,9 @@ import java.util.Set;
 
 public class NettyHttpRequest implements HttpRequest {
 
+    // Compared by identity, so no cookie value can be mistaken for it.
+    private static final String NO_COOKIE = new String("");
+
     private final FullHttpRequest httpRequest;
     private final Map<String, Object> data = new HashMap<>();
     private final SocketAddress remoteAddress;
@@ -26,6 +34,10 @@ public class NettyHttpRequest implements HttpRequest {
 
     private QueryParameters queryParameters;
     private QueryParameters postParameters;
+    private String body;
+    private Set<Cookie> cookies;
+    private Map<String, Cookie> cookiesByName;
+    private boolean cookieLookedUp;
 
     public NettyHttpRequest(FullHttpRequest httpRequest, SocketAddress remoteAddress, Object id, long timestamp) {
         this.httpRequest = httpRequest;
@@ -64,24 +76,88 @@ public class NettyHttpRequest implements HttpRequest {
         return httpRequest.headers().contains(name);
     }
 
+    /**
+     * The cookies, decoded on first use. The set cannot be changed.
+     */
     @Override
     public Set<Cookie> cookies() {
-        List<String> headers = headers(HttpHeaders.Names.COOKIE.toString());
-        Set<Cookie> cookies = new HashSet<>();
-        for (String header : headers) {
-            cookies.addAll(CookieDecoder.decode(header));
-        }
+        decodeCookies();
         return cookies;
     }
 
     @Override
     public Cookie cookie(String name) {
-        for (Cookie cookie : cookies()) {
-            if (cookie.getName().equals(name)) {
-                return cookie;
+        decodeCookies();
+        return cookiesByName.get(name);
+    }
+
+    private void decodeCookies() {
+        if (cookiesByName != null) {
+            return;
+        }
+        Set<Cookie> decoded = new HashSet<>();
+        cookiesByName = new HashMap<>();
+        for (String header : httpRequest.headers().getAll(HttpHeaders.Names.COOKIE)) {
+            for (Cookie cookie : CookieDecoder.decode(header)) {
+                decoded.add(cookie);
+                if (!cookiesByName.containsKey(cookie.getName())) {
+                    cookiesByName.put(cookie.getName(), cookie);
+                }
             }
         }
-        return null;
+        // Shared by every call, so callers must not be able to change it behind cookiesByName's back.
+        cookies = Collections.unmodifiableSet(decoded);
+    }
+
+    /**
+     * Looks for a cookie in Cookie headers made of plain {@code name=value} pairs, without decoding the others.
+     *
+     * @return the value, {@link #NO_COOKIE} if there is no such cookie, or null if the headers need the full
+     *         decoder
+     */
+    private String simpleCookieValue(String name) {
+        if (cookiesByName != null) {
+            return null;
+        }
+        for (String header : httpRequest.headers().getAll(HttpHeaders.Names.COOKIE)) {
+            int start = 0;
+            while (start < header.length()) {
+                int end = header.indexOf(';', start);
+                if (end == -1) {
+                    end = header.length();
+                }
+                int equals = header.indexOf('=', start);
+                if (equals == -1 || equals > end) {
+                    return null;
+                }
+                for (int i = start; i < end; i++) {
+                    char c = header.charAt(i);
+                    if (c == '"' || c == '$' || c == ',') {
+                        return null;
+                    }
+                }
+                int nameStart = skipWhitespace(header, start, equals);
+                if (trimmedLength(header, nameStart, equals) == name.length() && header.startsWith(name, nameStart)) {
+                    return header.substring(equals + 1, end);
+                }
+                start = end + 1;
+            }
+        }
+        return NO_COOKIE;
+    }
+
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimmedLength(String s, int start, int end) {
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        return end - start;
     }
 
     @Override
@@ -128,8 +204,19 @@ public class NettyHttpRequest implements HttpRequest {
         return postParameters;
     }
 
+    /**
+     * The first value looked up is found without decoding the other cookies, as most requests only look up one.
+     * Any further lookup decodes them all, once.
+     */
     @Override
     public String cookieValue(String name) {
+        if (!cookieLookedUp) {
+            cookieLookedUp = true;
+            String value = simpleCookieValue(name);
+            if (value != null) {
+                return value == NO_COOKIE ? null : value;
+            }
+        }
         Cookie cookie = cookie(name);
         return cookie == null ? null : cookie.getValue();
     }
@@ -146,7 +233,10 @@ public class NettyHttpRequest implements HttpRequest {
 
     @Override
     public String body() {
-        return httpRequest.content().toString(CharsetUtil.UTF_8); // TODO get charset from request
+        if (body == null) {
+            body = httpRequest.content().toString(charset(header(HttpHeaders.Names.CONTENT_TYPE)));
+        }
+        return body;
     }
 
     @Override
@@ -157,6 +247,39 @@ public class NettyHttpRequest implements HttpRequest {
         return body;
     }
 
+    @Override
+    public ByteBuffer bodyAsByteBuffer() {
+        return httpRequest.content().nioBuffer().asReadOnlyBuffer();
+    }
+
+    @Override
+    public InputStream bodyAsStream() {
+        return new ByteBufInputStream(httpRequest.content().duplicate());
+    }
+
+    /**
+     * The charset named by a Content-Type header, or UTF-8 if it names none or one the JVM does not support.
+     */
+    static Charset charset(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] nameAndValue = parameter.split("=", 2);
+                if (nameAndValue.length == 2 && nameAndValue[0].trim().equalsIgnoreCase("charset")) {
+                    String name = nameAndValue[1].trim();
+                    if (name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+                        name = name.substring(1, name.length() - 1);
+                    }
+                    try {
+                        return Charset.forName(name);
+                    } catch (IllegalArgumentException e) {
+                        return CharsetUtil.UTF_8;
+                    }
+                }
+            }
+        }
+        return CharsetUtil.UTF_8;
+    }
+
     @Override
     public Map<String, Object> data() {
         return data;
@@ -0,0 +1,138 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.webbitserver.HttpBodyHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The body of a request that is being streamed rather than aggregated, handed to the {@link HttpBodyHandler}
+ * as it arrives.
+ * <p/>
+ * Reading from the channel is suspended (autoRead off) while there is no body handler to take the content,
+ * or while the handler has paused the body. All methods must be called on the handler thread.
+ */
+public class NettyHttpRequestBody {
+    private final ChannelHandlerContext ctx;
+    private final List<ByteBuf> pending = new ArrayList<>();
+    private HttpBodyHandler handler;
+    private boolean received;
+    private boolean finished;
+    private boolean discarding;
+    private boolean paused;
+
+    public NettyHttpRequestBody(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    void content(HttpContent content) throws Exception {
+        ByteBuf buffer = content.content();
+        if (content instanceof LastHttpContent) {
+            received = true;
+        }
+        if (discarding) {
+            if (received) {
+                finished = true;
+            }
+            return;
+        }
+        if (handler == null) {
+            if (buffer.isReadable()) {
+                pending.add(buffer.retain());
+            }
+            autoRead(false);
+            return;
+        }
+        deliver(buffer);
+        if (received) {
+            end();
+        }
+    }
+
+    void read(HttpBodyHandler handler) throws Exception {
+        if (this.handler != null) {
+            throw new IllegalStateException("Request body is already being read");
+        }
+        this.handler = handler;
+        try {
+            for (ByteBuf buffer : pending) {
+                deliver(buffer);
+            }
+        } finally {
+            releasePending();
+        }
+        if (received) {
+            end();
+        } else {
+            autoRead(!paused);
+        }
+    }
+
+    void pause() {
+        paused = true;
+        autoRead(false);
+    }
+
+    void resume() {
+        paused = false;
+        if (handler != null && !finished) {
+            autoRead(true);
+        }
+    }
+
+    /**
+     * Drops the rest of the body if the response has been sent without anyone reading it, so the connection
+     * can move on to the next request.
+     */
+    void discard() {
+        if (handler != null || finished) {
+            return;
+        }
+        releasePending();
+        if (received) {
+            finished = true;
+        } else {
+            discarding = true;
+        }
+        autoRead(true);
+    }
+
+    /**
+     * Releases anything still buffered once the connection has gone away, and tells the body handler if the
+     * body was cut short.
+     */
+    void closed() throws Exception {
+        releasePending();
+        if (handler != null && !finished) {
+            finished = true;
+            handler.onAbort();
+        }
+    }
+
+    private void deliver(ByteBuf buffer) throws Exception {
+        if (buffer.isReadable()) {
+            handler.onContent(buffer.nioBuffer().asReadOnlyBuffer());
+        }
+    }
+
+    private void end() throws Exception {
+        finished = true;
+        autoRead(true);
+        handler.onEnd();
+    }
+
+    private void releasePending() {
+        for (ByteBuf buffer : pending) {
+            buffer.release();
+        }
+        pending.clear();
+    }
+
+    private void autoRead(boolean autoRead) {
+        ctx.channel().config().setAutoRead(autoRead);
+    }
+}
@@ -7,46 +7,74 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.codec.http.Cookie;
 import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.ServerCookieEncoder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedFile;
 import io.netty.util.ReferenceCounted;
 import org.webbitserver.WebbitException;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class NettyHttpResponse implements org.webbitserver.HttpResponse {
 
     private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+    private static final int FILE_CHUNK_SIZE = 8192;
     private final ChannelHandlerContext ctx;
     private final ReferenceCounted request;
     private final HttpResponse response;
     private final boolean isKeepAlive;
     private final Thread.UncaughtExceptionHandler exceptionHandler;
+    private final NettyHttpRequestBody body;
     private final CompositeByteBuf responseBuffer;
+    private final List<Runnable> writableCallbacks = new ArrayList<>();
     private Charset charset;
+    private boolean chunked;
+    private boolean requestReleased;
 
     public NettyHttpResponse(ChannelHandlerContext ctx,
                              ReferenceCounted request,
                              HttpResponse response,
                              boolean isKeepAlive,
                              Thread.UncaughtExceptionHandler exceptionHandler)
+    {
+        this(ctx, request, response, isKeepAlive, exceptionHandler, null);
+    }
+
+    /**
+     * @param body the streamed request body, or null if the request was aggregated
+     */
+    public NettyHttpResponse(ChannelHandlerContext ctx,
+                             ReferenceCounted request,
+                             HttpResponse response,
+                             boolean isKeepAlive,
+                             Thread.UncaughtExceptionHandler exceptionHandler,
+                             NettyHttpRequestBody body)
     {
         this.ctx = ctx;
         this.request = request.retain();
         this.response = response;
         this.isKeepAlive = isKeepAlive;
         this.exceptionHandler = exceptionHandler;
+        this.body = body;
         this.charset = DEFAULT_CHARSET;
         responseBuffer = ctx.alloc().compositeBuffer();
     }
@@ -70,12 +98,66 @@ public class NettyHttpResponse implements org.webbitserver.HttpResponse {
 
     @Override
     public NettyHttpResponse chunked() {
-        throw new UnsupportedOperationException();
-        // TODO chunked
-//        response.setHeader(Names.TRANSFER_ENCODING, Values.CHUNKED);
-//        response.setChunked(true);
-//        ctx.getChannel().write(response);
-//        return this;
+        if (chunked) {
+            return this;
+        }
+        chunked = true;
+        response.headers().remove(HttpHeaders.Names.CONTENT_LENGTH);
+        HttpHeaders.setTransferEncodingChunked(response);
+        ctx.write(response);
+        if (responseBuffer.isReadable()) {
+            // content() called before switching to chunked goes out as the first chunk
+            ctx.write(new DefaultHttpContent(responseBuffer));
+        } else {
+            responseBuffer.release();
+        }
+        ctx.flush();
+        return this;
+    }
+
+    @Override
+    public NettyHttpResponse write(CharSequence content) {
+        return write(ByteBufUtil.encodeString(ctx.alloc(), CharBuffer.wrap(content), charset()));
+    }
+
+    @Override
+    public NettyHttpResponse write(byte[] content) {
+        return write(Unpooled.wrappedBuffer(content));
+    }
+
+    @Override
+    public NettyHttpResponse write(ByteBuffer buffer) {
+        return write(Unpooled.wrappedBuffer(buffer));
+    }
+
+    private NettyHttpResponse write(ByteBuf content) {
+        chunked();
+        ctx.writeAndFlush(new DefaultHttpContent(content)).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        return this;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return ctx.channel().isWritable();
+    }
+
+    @Override
+    public NettyHttpResponse onWritable(Runnable callback) {
+        if (isWritable()) {
+            callback.run();
+        } else {
+            writableCallbacks.add(callback);
+        }
+        return this;
+    }
+
+    /**
+     * Called by {@link NettyHttpChannelHandler} on the handler thread when the channel's writability changes.
+     */
+    void writabilityChanged() {
+        while (isWritable() && !writableCallbacks.isEmpty()) {
+            writableCallbacks.remove(0).run();
+        }
     }
 
     @Override
@@ -131,17 +213,71 @@ public class NettyHttpResponse implements org.webbitserver.HttpResponse {
     }
 
     private NettyHttpResponse content(ByteBuf content) {
-// TODO chunked-and-this
-//        if (response.isChunked()) {
-//            throw new UnsupportedOperationException();
-//        }
+        if (chunked) {
+            return write(content);
+        }
         responseBuffer.addComponent(content);
         responseBuffer.writerIndex(responseBuffer.writerIndex() + content.readableBytes());
         return this;
     }
 
+    @Override
+    public NettyHttpResponse sendFile(File file, long position, long count) {
+        if (chunked) {
+            throw new IllegalStateException("Cannot send a file as part of a chunked response");
+        }
+        HttpHeaders.setContentLength(response, responseBuffer.readableBytes() + count);
+        // sendfile bypasses the SSLEngine and the compressor, so it is only used when neither has work to do.
+        HttpChunkContentCompressor compressor = ctx.pipeline().get(HttpChunkContentCompressor.class);
+        boolean zeroCopy = ctx.pipeline().get(SslHandler.class) == null
+                && (compressor == null || !compressor.willCompress(response, acceptEncoding()));
+        RandomAccessFile raf = null;
+        Object body;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            body = zeroCopy ? new DefaultFileRegion(raf.getChannel(), position, count)
+                            : new ChunkedFile(raf, position, count, FILE_CHUNK_SIZE);
+        } catch (IOException e) {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return error(e);
+        }
+        releaseRequest();
+
+        ctx.write(zeroCopy ? HttpChunkContentCompressor.uncompressed(response) : response);
+        if (responseBuffer.isReadable()) {
+            ctx.write(new DefaultHttpContent(responseBuffer));
+        } else {
+            responseBuffer.release();
+        }
+        ctx.write(body).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        ChannelFuture lastContentFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        if (!isKeepAlive) {
+            lastContentFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+        return this;
+    }
+
+    private String acceptEncoding() {
+        return request instanceof HttpRequest
+               ? ((HttpRequest) request).headers().get(HttpHeaders.Names.ACCEPT_ENCODING)
+               : null;
+    }
+
     @Override
     public NettyHttpResponse error(Throwable error) {
+        if (chunked) {
+            // Status and headers are already on the wire, so all we can do is cut the response short.
+            releaseRequest();
+            ctx.close();
+            exceptionHandler.uncaughtException(Thread.currentThread(),
+                                               WebbitException.fromException(error, ctx.channel()));
+            return this;
+        }
         if (error instanceof TooLongFrameException) {
             response.setStatus(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
         } else {
@@ -172,24 +308,26 @@ public class NettyHttpResponse implements org.webbitserver.HttpResponse {
         return this;
     }
 
-    private void flushResponse() {
-        if (!request.release()) {
-            // TODO potential leak!
+    private void releaseRequest() {
+        if (!requestReleased) {
+            requestReleased = true;
+            request.release();
+            if (body != null) {
+                body.discard();
+            }
         }
+    }
 
-        try {
-            // TODO support explicit content length in case of chunked?
-            HttpHeaders.setContentLength(response, responseBuffer.readableBytes());
-
-            ctx.write(response); // start of the HTTP message
+    private void flushResponse() {
+        releaseRequest();
 
+        try {
+            if (!chunked) {
+                HttpHeaders.setContentLength(response, responseBuffer.readableBytes());
 
-//            if (response.isChunked()) {
-//                ctx.getChannel()
-//                        .write(new DefaultHttpChunk(ChannelBuffers.EMPTY_BUFFER));
-//            } else {
-            ctx.write(new DefaultHttpContent(responseBuffer));
-//            }
+                ctx.write(response); // start of the HTTP message
+                ctx.write(new DefaultHttpContent(responseBuffer));
+            }
 
             ChannelFuture lastContentFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
 
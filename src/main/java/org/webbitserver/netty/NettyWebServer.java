@@ -3,18 +3,18 @@ package org.webbitserver.netty;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.Future;
@@ -26,7 +26,7 @@ import org.webbitserver.WebbitException;
 import org.webbitserver.handler.DateHeaderHandler;
 import org.webbitserver.handler.HttpToEventSourceHandler;
 import org.webbitserver.handler.HttpToWebSocketHandler;
-import org.webbitserver.handler.PathMatchHandler;
+import org.webbitserver.handler.Router;
 import org.webbitserver.handler.ServerHeaderHandler;
 import org.webbitserver.handler.exceptions.PrintStackTraceExceptionHandler;
 import org.webbitserver.helpers.SslFactory;
@@ -42,9 +42,13 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 public class NettyWebServer implements WebServer {
 
+    static final int DEFAULT_WEB_SOCKET_FRAGMENT_SIZE = 16384;
+
     static {
         System.setProperty("io.netty.noJdkZlibDecoder", "false");
     }
@@ -52,13 +56,15 @@ public class NettyWebServer implements WebServer {
     private final SocketAddress socketAddress;
     private final URI publicUri;
     private final List<HttpHandler> handlers = new ArrayList<>();
+    private Router pathRouter;
 
-    private Channel channel;
+    private final List<Channel> channels = new ArrayList<>();
     private SSLContext sslContext;
 
     private EventLoopGroup ioBossGroup;
     private EventLoopGroup ioWorkerGroup;
     private EventExecutorGroup httpHandlerGroup;
+    private Executor mainExecutor;
 
     private Thread.UncaughtExceptionHandler exceptionHandler;
     private Thread.UncaughtExceptionHandler ioExceptionHandler;
@@ -67,6 +73,27 @@ public class NettyWebServer implements WebServer {
     private int maxChunkSize = 8192;
     private int maxContentLength = 65536;
     private int maxWebSocketFrameSize = 8192;
+    private int acceptorThreads = 1;
+    private int ioWorkerThreads = Runtime.getRuntime().availableProcessors();
+    private int handlerThreads = 1;
+    private Transport transport = Transport.NIO;
+    private Transport activeTransport;
+    private int tcpFastOpen;
+    private int tcpDeferAccept;
+    private int listeners = 1;
+    private IdleTimeouts staleConnectionTimeouts = IdleTimeouts.all(30000);
+    private IdleTimeouts webSocketIdleTimeouts = IdleTimeouts.NONE;
+    private IdleTimeouts eventSourceIdleTimeouts = IdleTimeouts.NONE;
+    private final AtomicLong reapedConnections = new AtomicLong();
+    private CompressionPolicy compressionPolicy = new CompressionPolicy();
+    private FlushStrategy flushStrategy = FlushStrategy.IMMEDIATE;
+    private PerMessageDeflate perMessageDeflate;
+    private int webSocketFragmentSize = DEFAULT_WEB_SOCKET_FRAGMENT_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.UNBOUNDED;
+    private int writeBufferLowWaterMark = -1;
+    private int writeBufferHighWaterMark = -1;
+    private WebSocketKeepAlive webSocketKeepAlive;
+    private final List<Pattern> streamingPaths = new ArrayList<>();
 
     public NettyWebServer(int port) {
         this(new InetSocketAddress(port), localUri(port));
@@ -117,15 +144,103 @@ public class NettyWebServer implements WebServer {
         return publicUri.getPort();
     }
 
+    /**
+     * One of the handler threads, the same one for the life of the server, so work submitted to it runs in
+     * order. With more than one {@link #handlerThreads(int) handler thread}, connections may be handled on
+     * others, so use {@link org.webbitserver.HttpConnection#handlerExecutor()} for work on a connection.
+     */
     @Override
     public Executor getExecutor() {
-        return httpHandlerGroup;
+        return mainExecutor;
     }
 
+    /**
+     * Defaults to 30 seconds. A timeout of 0 disables it. Connections are only closed between requests,
+     * never while a handler is still working on a response.
+     *
+     * @see #staleConnectionTimeouts(IdleTimeouts)
+     * @see #webSocketIdleTimeout(long)
+     * @see #eventSourceIdleTimeout(long)
+     */
     @Override
     public NettyWebServer staleConnectionTimeout(long millis) {
-        // TODO
-        throw new UnsupportedOperationException();
+        return staleConnectionTimeouts(IdleTimeouts.all(Math.max(0, millis)));
+    }
+
+    /**
+     * Read, write and all-idle timeouts of HTTP keep-alive connections. Defaults to 30 seconds all-idle.
+     */
+    public NettyWebServer staleConnectionTimeouts(IdleTimeouts idleTimeouts) {
+        this.staleConnectionTimeouts = idleTimeouts;
+        return this;
+    }
+
+    public IdleTimeouts staleConnectionTimeouts() {
+        return staleConnectionTimeouts;
+    }
+
+    /**
+     * Number of milliseconds a WebSocket connection may go without sending or receiving anything before it is
+     * closed by the server. Defaults to 0 (never), as many WebSocket clients legitimately sit quiet for long periods.
+     */
+    public NettyWebServer webSocketIdleTimeout(long millis) {
+        return webSocketIdleTimeouts(IdleTimeouts.all(Math.max(0, millis)));
+    }
+
+    /**
+     * Read, write and all-idle timeouts of WebSocket connections. None by default.
+     */
+    public NettyWebServer webSocketIdleTimeouts(IdleTimeouts idleTimeouts) {
+        this.webSocketIdleTimeouts = idleTimeouts;
+        return this;
+    }
+
+    public IdleTimeouts webSocketIdleTimeouts() {
+        return webSocketIdleTimeouts;
+    }
+
+    /**
+     * Number of milliseconds an EventSource connection may go without any message being sent before it is closed
+     * by the server. Defaults to 0 (never).
+     */
+    public NettyWebServer eventSourceIdleTimeout(long millis) {
+        return eventSourceIdleTimeouts(new IdleTimeouts(0, Math.max(0, millis), 0));
+    }
+
+    /**
+     * Read, write and all-idle timeouts of EventSource connections. None by default. Clients send nothing once
+     * connected, so only the write timeout is of much use.
+     */
+    public NettyWebServer eventSourceIdleTimeouts(IdleTimeouts idleTimeouts) {
+        this.eventSourceIdleTimeouts = idleTimeouts;
+        return this;
+    }
+
+    public IdleTimeouts eventSourceIdleTimeouts() {
+        return eventSourceIdleTimeouts;
+    }
+
+    /**
+     * Total number of connections closed by this server for being idle.
+     *
+     * @see #staleConnectionTimeout(long)
+     * @see #webSocketIdleTimeout(long)
+     * @see #eventSourceIdleTimeout(long)
+     */
+    public long reapedConnections() {
+        return reapedConnections.get();
+    }
+
+    /**
+     * Which responses to compress, and at what level. The policy also counts the bytes compression saves.
+     */
+    public NettyWebServer compressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
+    public CompressionPolicy compressionPolicy() {
+        return compressionPolicy;
     }
 
     @Override
@@ -136,7 +251,47 @@ public class NettyWebServer implements WebServer {
 
     @Override
     public NettyWebServer add(String path, HttpHandler handler) {
-        return add(new PathMatchHandler(path, handler));
+        pathRouter().add(Pattern.compile(path), handler);
+        return this;
+    }
+
+    /**
+     * Add an HttpHandler for requests with the given method and a path matching a {@link Router} template,
+     * such as {@code /users/{id}}.
+     * <p/>
+     * Requests for a routed path with a method no handler was added for get a 405 response, and OPTIONS
+     * requests for it get the allowed methods.
+     *
+     * @see Router#pathParam(org.webbitserver.HttpRequest, String)
+     */
+    public NettyWebServer route(String method, String template, HttpHandler handler) {
+        pathRouter().add(method, template, handler);
+        return this;
+    }
+
+    public NettyWebServer get(String template, HttpHandler handler) {
+        return route("GET", template, handler);
+    }
+
+    public NettyWebServer post(String template, HttpHandler handler) {
+        return route("POST", template, handler);
+    }
+
+    public NettyWebServer put(String template, HttpHandler handler) {
+        return route("PUT", template, handler);
+    }
+
+    public NettyWebServer delete(String template, HttpHandler handler) {
+        return route("DELETE", template, handler);
+    }
+
+    private Router pathRouter() {
+        // Consecutive path handlers share a Router rather than each testing the path in turn.
+        if (handlers.isEmpty() || handlers.get(handlers.size() - 1) != pathRouter) {
+            pathRouter = new Router();
+            handlers.add(pathRouter);
+        }
+        return pathRouter;
     }
 
     @Override
@@ -144,6 +299,13 @@ public class NettyWebServer implements WebServer {
         return add(path, new HttpToWebSocketHandler(handler));
     }
 
+    /**
+     * Adds a WebSocket route whose clients are kept alive with the given keepalive rather than the server's.
+     */
+    public NettyWebServer add(String path, WebSocketHandler handler, WebSocketKeepAlive keepAlive) {
+        return add(path, new HttpToWebSocketHandler(handler, keepAlive));
+    }
+
     @Override
     public NettyWebServer add(String path, EventSourceHandler handler) {
         return add(path, new HttpToEventSourceHandler(handler));
@@ -155,32 +317,67 @@ public class NettyWebServer implements WebServer {
             throw new IllegalStateException("Server already started.");
         }
 
-        ioBossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory(getClass().getSimpleName() + ".acceptor"));
-        ioWorkerGroup = new NioEventLoopGroup(1, new DefaultThreadFactory(getClass().getSimpleName() + ".worker"));
-        httpHandlerGroup = new DefaultEventLoop(new DefaultThreadFactory(getClass().getSimpleName() + ".httpHandler"));
+        activeTransport = transport.orFallback();
+        ChannelOption<Boolean> reusePort = listeners > 1 ? activeTransport.<Boolean>option("SO_REUSEPORT") : null;
+        int boundListeners = reusePort != null ? listeners : 1;
+
+        // Each listening socket is registered with the next acceptor event loop, so give every one its own.
+        ioBossGroup = activeTransport.newEventLoopGroup(Math.max(acceptorThreads, boundListeners),
+                                                        new DefaultThreadFactory(getClass().getSimpleName() + ".acceptor"));
+        ioWorkerGroup = activeTransport.newEventLoopGroup(ioWorkerThreads,
+                                                          new DefaultThreadFactory(getClass().getSimpleName() + ".worker"));
+        httpHandlerGroup = new DefaultEventLoopGroup(handlerThreads,
+                                                     new DefaultThreadFactory(getClass().getSimpleName() + ".httpHandler"));
+        mainExecutor = httpHandlerGroup.next();
 
         // Configure the server.
-        channel = new ServerBootstrap()
+        ServerBootstrap bootstrap = new ServerBootstrap()
                 .group(ioBossGroup, ioWorkerGroup)
-                .channel(NioServerSocketChannel.class)
-                .childHandler(new NettyWebServerInitializer())
-                .bind(socketAddress)
-                .sync()
-                .channel();
+                .channel(activeTransport.serverChannelClass())
+                .childHandler(new NettyWebServerInitializer());
+        transportOption(bootstrap, "TCP_FASTOPEN", tcpFastOpen);
+        transportOption(bootstrap, "TCP_DEFER_ACCEPT", tcpDeferAccept);
+        if (reusePort != null) {
+            bootstrap.option(reusePort, true);
+        }
+
+        try {
+            for (int i = 0; i < boundListeners; i++) {
+                channels.add(bootstrap.bind(socketAddress).sync().channel());
+            }
+        } catch (Exception e) {
+            stop();
+            throw e;
+        }
+    }
+
+    private void transportOption(ServerBootstrap bootstrap, String name, int value) {
+        if (value <= 0) {
+            return;
+        }
+        ChannelOption<Integer> option = activeTransport.option(name);
+        if (option != null) {
+            bootstrap.option(option, value);
+        }
     }
 
     public boolean isRunning() {
-        return channel != null && channel.isActive();
+        for (Channel channel : channels) {
+            if (channel.isActive()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public void stop() throws Exception {
         try {
-            if (null != channel) {
+            for (Channel channel : channels) {
                 channel.close().sync();
-                channel = null;
             }
         } finally {
+            channels.clear();
             List<Future<?>> futures = new ArrayList<>(3);
 
             if (null != ioBossGroup) {
@@ -227,6 +424,16 @@ public class NettyWebServer implements WebServer {
         return this;
     }
 
+    /**
+     * Requests whose path matches the given regular expression are not aggregated: handlers get the request
+     * without its body and read the body as it arrives with {@link org.webbitserver.HttpControl#readBody}.
+     * Such bodies are not limited by {@link #maxContentLength(int)}.
+     */
+    public NettyWebServer streamRequestBodies(String pathPattern) {
+        streamingPaths.add(Pattern.compile(pathPattern));
+        return this;
+    }
+
     /**
      * @see HttpRequestDecoder
      */
@@ -248,6 +455,186 @@ public class NettyWebServer implements WebServer {
         return this;
     }
 
+    /**
+     * Largest fragment, in bytes, handed to a {@link org.webbitserver.WebSocketFragmentHandler}. Larger frames
+     * from the client are split. Defaults to 16KB, and may be at most 64KB.
+     */
+    public NettyWebServer webSocketFragmentSize(int webSocketFragmentSize) {
+        if (webSocketFragmentSize < 4 || webSocketFragmentSize > 65536) {
+            throw new IllegalArgumentException("webSocketFragmentSize must be from 4 to 65536, was "
+                                               + webSocketFragmentSize);
+        }
+        this.webSocketFragmentSize = webSocketFragmentSize;
+        return this;
+    }
+
+    public int webSocketFragmentSize() {
+        return webSocketFragmentSize;
+    }
+
+    /**
+     * What happens to messages sent on WebSocket and EventSource connections whose client is not keeping up.
+     * Defaults to {@link OverflowPolicy#UNBOUNDED}. Individual connections can be changed with
+     * {@link AbstractHttpConnection#overflowPolicy}.
+     */
+    public NettyWebServer overflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Outbound buffer sizes, in bytes, above which a connection stops being writable and below which it becomes
+     * writable again. Defaults to Netty's 32KB and 64KB. Individual connections can be changed with
+     * {@link AbstractHttpConnection#writeBufferWaterMarks}.
+     */
+    public NettyWebServer writeBufferWaterMarks(int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("Water marks must satisfy 0 <= low <= high, were " + low + " and " + high);
+        }
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+        return this;
+    }
+
+    /**
+     * When messages sent on WebSocket and EventSource connections are flushed to the client. Defaults to
+     * {@link FlushStrategy#IMMEDIATE}; batching trades a little latency for fewer system calls on busy
+     * connections. Individual connections can be changed with {@link AbstractHttpConnection#flushStrategy}.
+     */
+    public NettyWebServer flushStrategy(FlushStrategy flushStrategy) {
+        this.flushStrategy = flushStrategy;
+        return this;
+    }
+
+    public FlushStrategy flushStrategy() {
+        return flushStrategy;
+    }
+
+    /**
+     * Compresses WebSocket messages for clients offering the permessage-deflate extension, as browsers do.
+     * Off (null) by default.
+     */
+    public NettyWebServer perMessageDeflate(PerMessageDeflate perMessageDeflate) {
+        this.perMessageDeflate = perMessageDeflate;
+        return this;
+    }
+
+    public PerMessageDeflate perMessageDeflate() {
+        return perMessageDeflate;
+    }
+
+    /**
+     * Pings WebSocket clients and closes the connections of those that stop answering. Off (null) by default.
+     * Routes can be given their own with {@link #add(String, WebSocketHandler, WebSocketKeepAlive)}.
+     */
+    public NettyWebServer webSocketKeepAlive(WebSocketKeepAlive webSocketKeepAlive) {
+        this.webSocketKeepAlive = webSocketKeepAlive;
+        return this;
+    }
+
+    public WebSocketKeepAlive webSocketKeepAlive() {
+        return webSocketKeepAlive;
+    }
+
+    /**
+     * Number of threads accepting new connections. Defaults to 1, which is plenty unless
+     * the server is bound to several addresses.
+     */
+    public NettyWebServer acceptorThreads(int acceptorThreads) {
+        this.acceptorThreads = positive("acceptorThreads", acceptorThreads);
+        return this;
+    }
+
+    /**
+     * Number of threads reading from and writing to connections. Defaults to the number of available processors.
+     */
+    public NettyWebServer ioWorkerThreads(int ioWorkerThreads) {
+        this.ioWorkerThreads = positive("ioWorkerThreads", ioWorkerThreads);
+        return this;
+    }
+
+    /**
+     * Number of threads that {@link HttpHandler}s (and WebSocket/EventSource handlers) are invoked on.
+     * <p/>
+     * Defaults to 1, so handlers that share state between connections need no synchronization. When raised,
+     * each connection is pinned to one handler thread for its whole lifetime, so all events for a given
+     * connection are still delivered in order and on the same thread. Handlers that share state between
+     * connections must then be thread safe, and {@link #getExecutor()} is only one of the handler threads.
+     */
+    public NettyWebServer handlerThreads(int handlerThreads) {
+        this.handlerThreads = positive("handlerThreads", handlerThreads);
+        return this;
+    }
+
+    /**
+     * Transport to accept and serve connections with. Defaults to {@link Transport#NIO}.
+     * <p/>
+     * If the requested transport is not available when the server starts (e.g. {@link Transport#EPOLL} on a
+     * non-Linux machine, or without the native library), the server falls back to {@link Transport#NIO}.
+     *
+     * @see #activeTransport()
+     */
+    public NettyWebServer transport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * The transport the server is running with, taking fallback into account. Before the server has been
+     * started this is the transport it would start with.
+     */
+    public Transport activeTransport() {
+        return activeTransport != null ? activeTransport : transport.orFallback();
+    }
+
+    /**
+     * Enables TCP_FASTOPEN on the listening socket with the given pending request queue length.
+     * Only applied when running on {@link Transport#EPOLL}. Defaults to 0 (disabled).
+     */
+    public NettyWebServer tcpFastOpen(int queueLength) {
+        this.tcpFastOpen = queueLength;
+        return this;
+    }
+
+    /**
+     * Enables TCP_DEFER_ACCEPT on the listening socket, so connections are only accepted once data has arrived,
+     * waiting at most the given number of seconds. Only applied when running on {@link Transport#EPOLL}.
+     * Defaults to 0 (disabled).
+     */
+    public NettyWebServer tcpDeferAccept(int seconds) {
+        this.tcpDeferAccept = seconds;
+        return this;
+    }
+
+    /**
+     * Number of listening sockets to bind to the server address using SO_REUSEPORT, each accepting on its own
+     * event loop, so the kernel spreads new connections across them. Defaults to 1.
+     * <p/>
+     * SO_REUSEPORT needs {@link Transport#EPOLL}. With any other transport a single socket is bound.
+     */
+    public NettyWebServer listeners(int listeners) {
+        this.listeners = positive("listeners", listeners);
+        return this;
+    }
+
+    /**
+     * Number of listening sockets actually bound. 0 if the server is not running.
+     */
+    public int boundListeners() {
+        return channels.size();
+    }
+
+    private static int positive(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1, was " + value);
+        }
+        return value;
+    }
+
     private static URI localUri(int port) {
         try {
             return URI.create("http://" + InetAddress.getLocalHost()
@@ -267,20 +654,29 @@ public class NettyWebServer implements WebServer {
         @Override
         protected void initChannel(SocketChannel channel) throws Exception {
             ChannelPipeline pipeline = channel.pipeline();
+            if (writeBufferHighWaterMark >= 0) {
+                AbstractHttpConnection.writeBufferWaterMarks(channel.config(),
+                                                             writeBufferLowWaterMark,
+                                                             writeBufferHighWaterMark);
+            }
 
             long timestamp = timestamp();
+            IdleStateHandler idleStateHandler = staleConnectionTimeouts.newIdleStateHandler();
+            if (idleStateHandler != null) {
+                pipeline.addLast(StaleConnectionHandler.IDLE, idleStateHandler);
+            }
             if (sslContext != null) {
                 SSLEngine engine = sslContext.createSSLEngine();
                 engine.setUseClientMode(false);
                 pipeline.addLast("ssl", new SslHandler(engine));
             }
-            // TODO for stale, look at the netty idle stuff
-//  TODO          pipeline.addLast("connectiontracker", connectionTrackingHandler);
 
             pipeline.addLast("codec-http", new HttpServerCodec(maxInitialLineLength, maxHeaderSize, maxChunkSize));
+            pipeline.addLast("staleConnection",
+                             new StaleConnectionHandler(webSocketIdleTimeouts, eventSourceIdleTimeouts, reapedConnections));
             pipeline.addLast("decompressor", new HttpContentDecompressor());
-            pipeline.addLast("aggregator", new HttpObjectAggregator(maxContentLength));
-            pipeline.addLast("compressor", new HttpChunkContentCompressor());
+            pipeline.addLast("aggregator", new StreamingHttpObjectAggregator(maxContentLength, streamingPaths));
+            pipeline.addLast("compressor", new HttpChunkContentCompressor(compressionPolicy));
             pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
 
             pipeline.addLast(httpHandlerGroup,
@@ -290,7 +686,12 @@ public class NettyWebServer implements WebServer {
                                      timestamp,
                                      exceptionHandler,
                                      ioExceptionHandler,
-                                     maxWebSocketFrameSize));
+                                     maxWebSocketFrameSize,
+                                     flushStrategy,
+                                     perMessageDeflate,
+                                     webSocketFragmentSize,
+                                     overflowPolicy,
+                                     webSocketKeepAlive));
         }
     }
 }
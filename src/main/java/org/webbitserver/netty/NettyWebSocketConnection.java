@@ -1,6 +1,8 @@
 package org.webbitserver.netty;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
@@ -10,24 +12,35 @@ import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.webbitserver.WebSocketConnection;
 
+import java.util.concurrent.TimeUnit;
+
 public class NettyWebSocketConnection extends AbstractHttpConnection implements WebSocketConnection {
 
     private final String version;
+    private volatile WebSocketKeepAlive.Pinger pinger;
 
     public NettyWebSocketConnection(NettyHttpRequest nettyHttpRequest, ChannelHandlerContext ctx, String version) {
-        super(ctx, nettyHttpRequest);
+        this(nettyHttpRequest, ctx, version, FlushStrategy.IMMEDIATE);
+    }
+
+    public NettyWebSocketConnection(NettyHttpRequest nettyHttpRequest,
+                                    ChannelHandlerContext ctx,
+                                    String version,
+                                    FlushStrategy flushStrategy)
+    {
+        super(ctx, nettyHttpRequest, flushStrategy);
         this.version = version;
     }
 
     @Override
     public NettyWebSocketConnection send(TextWebSocketFrame frame) {
-        writeMessage(frame);
+        sendMessage(frame);
         return this;
     }
 
     @Override
     public NettyWebSocketConnection send(BinaryWebSocketFrame frame) {
-        writeMessage(frame);
+        sendMessage(frame);
         return this;
     }
 
@@ -45,19 +58,19 @@ public class NettyWebSocketConnection extends AbstractHttpConnection implements
 
     @Override
     public NettyWebSocketConnection send(String message) {
-        writeMessage(new TextWebSocketFrame(message));
+        sendMessage(new TextWebSocketFrame(message));
         return this;
     }
 
     @Override
     public NettyWebSocketConnection send(byte[] message) {
-        writeMessage(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(message)));
+        sendMessage(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(message)));
         return this;
     }
 
     @Override
     public NettyWebSocketConnection send(byte[] message, int offset, int length) {
-        writeMessage(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(message, offset, length)));
+        sendMessage(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(message, offset, length)));
         return this;
     }
 
@@ -73,6 +86,62 @@ public class NettyWebSocketConnection extends AbstractHttpConnection implements
         return this;
     }
 
+    /**
+     * Sends a frame around a retained duplicate of a payload shared with other connections, subject to the
+     * overflow policy. Without one, the frame is not sent while the outbound buffer is above its high water mark.
+     *
+     * @return whether the frame was sent or handed to the overflow policy
+     */
+    boolean sendShared(ByteBuf payload, boolean text) {
+        if (!hasOverflowPolicy() && !ctx.channel().isWritable()) {
+            return false;
+        }
+        ByteBuf content = payload.duplicate().retain();
+        sendMessage(text ? new TextWebSocketFrame(content) : new BinaryWebSocketFrame(content));
+        return true;
+    }
+
+    /**
+     * Pings the client with the given keepalive, in place of any it was already kept alive with, or stops
+     * pinging it if null.
+     */
+    public void keepAlive(WebSocketKeepAlive keepAlive) {
+        WebSocketKeepAlive.Pinger previous = pinger;
+        pinger = keepAlive == null ? null : keepAlive.start(this);
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+
+    /**
+     * Round trip time in microseconds of the latest ping answered by the client, or -1 if none has been.
+     */
+    public long roundTripMicros() {
+        WebSocketKeepAlive.Pinger pinger = this.pinger;
+        long nanos = pinger == null ? -1 : pinger.roundTripNanos();
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    void pongReceived(PongWebSocketFrame frame) {
+        WebSocketKeepAlive.Pinger pinger = this.pinger;
+        if (pinger != null) {
+            pinger.pong(frame.content());
+        }
+    }
+
+    @Override
+    void closed() {
+        super.closed();
+        WebSocketKeepAlive.Pinger pinger = this.pinger;
+        if (pinger != null) {
+            pinger.stop();
+        }
+    }
+
+    ChannelFuture closeFuture() {
+        return ctx.channel().closeFuture();
+    }
+
     @Override
     public NettyWebSocketConnection close() {
         return close(1000, "");
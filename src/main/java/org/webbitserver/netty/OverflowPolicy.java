@@ -0,0 +1,180 @@
+package org.webbitserver.netty;
+
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What happens to messages sent on a WebSocket or EventSource connection whose outbound buffer is above its
+ * high water mark, because the client is reading slower than messages are sent. Without a limit, one slow client
+ * on a busy feed grows its buffer until the server runs out of memory.
+ * <p/>
+ * Messages held back by {@link #dropOldest(int)} and {@link #coalesceLatest()} are sent once the buffer has
+ * drained below its low water mark. Each policy, other than {@link #UNBOUNDED}, counts the messages it has
+ * dropped on all the connections using it.
+ *
+ * @see NettyWebServer#overflowPolicy(OverflowPolicy)
+ * @see NettyWebServer#writeBufferWaterMarks(int, int)
+ * @see AbstractHttpConnection#overflowPolicy(OverflowPolicy)
+ */
+public final class OverflowPolicy {
+
+    /**
+     * Buffers every message however slow the client. The default.
+     */
+    public static final OverflowPolicy UNBOUNDED = new OverflowPolicy(Kind.UNBOUNDED, 0);
+
+    private enum Kind {
+        UNBOUNDED, DROP_NEWEST, DROP_OLDEST, COALESCE_LATEST, DISCONNECT
+    }
+
+    private final Kind kind;
+    private final int maxHeld;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong disconnections = new AtomicLong();
+
+    private OverflowPolicy(Kind kind, int maxHeld) {
+        this.kind = kind;
+        this.maxHeld = maxHeld;
+    }
+
+    /**
+     * Drops messages sent while the buffer is full.
+     */
+    public static OverflowPolicy dropNewest() {
+        return new OverflowPolicy(Kind.DROP_NEWEST, 0);
+    }
+
+    /**
+     * Holds up to {@code maxHeld} messages sent while the buffer is full, dropping the oldest of them to make
+     * room for newer ones.
+     */
+    public static OverflowPolicy dropOldest(int maxHeld) {
+        if (maxHeld < 1) {
+            throw new IllegalArgumentException("maxHeld must be at least 1, was " + maxHeld);
+        }
+        return new OverflowPolicy(Kind.DROP_OLDEST, maxHeld);
+    }
+
+    /**
+     * Holds only the latest message sent while the buffer is full, for feeds where each message supersedes the
+     * previous ones, such as a price.
+     */
+    public static OverflowPolicy coalesceLatest() {
+        return new OverflowPolicy(Kind.COALESCE_LATEST, 1);
+    }
+
+    /**
+     * Closes connections whose buffer is full, dropping the message, so clients that cannot keep up reconnect
+     * and catch up afresh.
+     */
+    public static OverflowPolicy disconnect() {
+        return new OverflowPolicy(Kind.DISCONNECT, 0);
+    }
+
+    /**
+     * Number of messages dropped on all connections using this policy.
+     */
+    public long droppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * Number of connections closed by {@link #disconnect()}.
+     */
+    public long disconnections() {
+        return disconnections.get();
+    }
+
+    Backlog backlog(AbstractHttpConnection connection) {
+        return kind == Kind.UNBOUNDED ? null : new Backlog(connection);
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.DROP_OLDEST ? "DROP_OLDEST(" + maxHeld + ")" : kind.toString();
+    }
+
+    /**
+     * The messages one connection is holding back while its buffer is full.
+     */
+    class Backlog {
+        private final AbstractHttpConnection connection;
+        private final ArrayDeque<Object> held = new ArrayDeque<>();
+        private boolean disconnected;
+        private boolean closed;
+
+        Backlog(AbstractHttpConnection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Writes the message if the connection is writable and nothing is held back, and otherwise applies the
+         * policy to it.
+         */
+        synchronized void send(Object message) {
+            if (closed) {
+                ReferenceCountUtil.release(message);
+                return;
+            }
+            if (held.isEmpty() && connection.isWritable()) {
+                connection.writeMessage(message);
+                return;
+            }
+            switch (kind) {
+                case DROP_NEWEST:
+                    drop(message);
+                    break;
+                case DISCONNECT:
+                    drop(message);
+                    if (!disconnected) {
+                        disconnected = true;
+                        disconnections.incrementAndGet();
+                        connection.ctx.channel().close();
+                    }
+                    break;
+                default:
+                    if (held.size() == maxHeld) {
+                        drop(held.poll());
+                    }
+                    held.add(message);
+                    break;
+            }
+        }
+
+        /**
+         * Sends held messages for as long as the connection stays writable.
+         */
+        synchronized void drain() {
+            while (!held.isEmpty() && connection.isWritable()) {
+                connection.writeMessage(held.poll());
+            }
+        }
+
+        /**
+         * Sends all held messages, whether or not the connection is writable, when the policy is replaced.
+         */
+        synchronized void sendAll() {
+            while (!held.isEmpty()) {
+                connection.writeMessage(held.poll());
+            }
+        }
+
+        /**
+         * Releases held messages once the connection has closed.
+         */
+        synchronized void discard() {
+            closed = true;
+            while (!held.isEmpty()) {
+                ReferenceCountUtil.release(held.poll());
+            }
+        }
+
+        private void drop(Object message) {
+            ReferenceCountUtil.release(message);
+            droppedMessages.incrementAndGet();
+            connection.dropped();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.webbitserver.netty;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings for the permessage-deflate WebSocket extension (RFC 7692), which compresses each message. Clients
+ * that offer the extension get it, and all others are unaffected.
+ * <p/>
+ * Compressing with context takeover, the default, keeps the compression window of each connection between
+ * messages. Similar messages, such as a feed of JSON updates, then compress far better. The price is a
+ * deflater of a few hundred KB kept for every connection.
+ * <p/>
+ * The JDK's deflater always uses a 32KB window, so offers limiting {@code server_max_window_bits} below 15
+ * are declined.
+ * <p/>
+ * Context takeover, window size and compression level are fixed for a connection when its handshake agrees
+ * them; a changed minimum size applies to the next message on every connection.
+ *
+ * @see NettyWebServer#perMessageDeflate(PerMessageDeflate)
+ */
+public class PerMessageDeflate {
+    static final String EXTENSION = "permessage-deflate";
+    static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+    private volatile boolean serverNoContextTakeover;
+    private volatile int clientMaxWindowBits = 15;
+    private volatile int minimumSize = 128;
+    private volatile int compressionLevel = 6;
+
+    private final AtomicLong compressedMessages = new AtomicLong();
+    private final AtomicLong uncompressedMessages = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+
+    /**
+     * Whether to start each message with an empty compression window, trading compression for memory between
+     * messages. Defaults to false. Clients can also ask for this.
+     */
+    public PerMessageDeflate serverNoContextTakeover(boolean serverNoContextTakeover) {
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        return this;
+    }
+
+    public boolean serverNoContextTakeover() {
+        return serverNoContextTakeover;
+    }
+
+    /**
+     * Largest compression window, as a power of two from 8 to 15, that clients offering to limit theirs may
+     * use. A client offering a smaller limit gets that. Defaults to 15, the deflate maximum of 32KB.
+     */
+    public PerMessageDeflate clientMaxWindowBits(int clientMaxWindowBits) {
+        if (clientMaxWindowBits < 8 || clientMaxWindowBits > 15) {
+            throw new IllegalArgumentException("clientMaxWindowBits must be from 8 to 15, was " + clientMaxWindowBits);
+        }
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        return this;
+    }
+
+    public int clientMaxWindowBits() {
+        return clientMaxWindowBits;
+    }
+
+    /**
+     * Messages shorter than this many bytes are sent uncompressed, as compressing them gains little. Defaults to
+     * 128.
+     */
+    public PerMessageDeflate minimumSize(int minimumSize) {
+        if (minimumSize < 0) {
+            throw new IllegalArgumentException("minimumSize must not be negative, was " + minimumSize);
+        }
+        this.minimumSize = minimumSize;
+        return this;
+    }
+
+    public int minimumSize() {
+        return minimumSize;
+    }
+
+    /**
+     * Deflate level, from 1 (fastest) to 9 (smallest). Defaults to 6, as zlib does.
+     */
+    public PerMessageDeflate compressionLevel(int compressionLevel) {
+        if (compressionLevel < 1 || compressionLevel > 9) {
+            throw new IllegalArgumentException("compressionLevel must be from 1 to 9, was " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public int compressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Number of messages sent compressed.
+     */
+    public long compressedMessages() {
+        return compressedMessages.get();
+    }
+
+    /**
+     * Number of messages sent uncompressed on connections using the extension, because they were too short.
+     */
+    public long uncompressedMessages() {
+        return uncompressedMessages.get();
+    }
+
+    public long bytesBeforeCompression() {
+        return bytesBeforeCompression.get();
+    }
+
+    public long bytesAfterCompression() {
+        return bytesAfterCompression.get();
+    }
+
+    /**
+     * Compressed size as a fraction of the original size, over all compressed messages.
+     */
+    public double compressionRatio() {
+        long before = bytesBeforeCompression.get();
+        return before == 0 ? 1 : bytesAfterCompression.get() / (double) before;
+    }
+
+    void compressed(long before, long after) {
+        compressedMessages.incrementAndGet();
+        bytesBeforeCompression.addAndGet(before);
+        bytesAfterCompression.addAndGet(after);
+    }
+
+    void skipped() {
+        uncompressedMessages.incrementAndGet();
+    }
+
+    /**
+     * Picks the first acceptable permessage-deflate offer in a {@code Sec-WebSocket-Extensions} request header.
+     *
+     * @return the parameters agreed with the client, or null if there was no acceptable offer
+     */
+    Agreement negotiate(String extensionsHeader) {
+        if (extensionsHeader == null) {
+            return null;
+        }
+        for (String offer : extensionsHeader.split(",")) {
+            Agreement agreement = accept(offer.split(";"));
+            if (agreement != null) {
+                return agreement;
+            }
+        }
+        return null;
+    }
+
+    private Agreement accept(String[] offer) {
+        if (!offer[0].trim().equalsIgnoreCase(EXTENSION)) {
+            return null;
+        }
+        boolean serverNoContextTakeover = this.serverNoContextTakeover;
+        boolean clientNoContextTakeover = false;
+        boolean clientMaxWindowBitsOffered = false;
+        int clientWindowBits = 15;
+        boolean serverMaxWindowBitsOffered = false;
+        for (int i = 1; i < offer.length; i++) {
+            String parameter = offer[i].trim();
+            String value = null;
+            int equals = parameter.indexOf('=');
+            if (equals != -1) {
+                value = unquote(parameter.substring(equals + 1).trim());
+                parameter = parameter.substring(0, equals).trim();
+            }
+            if (parameter.equalsIgnoreCase("server_no_context_takeover") && value == null) {
+                serverNoContextTakeover = true;
+            } else if (parameter.equalsIgnoreCase("client_no_context_takeover") && value == null) {
+                clientNoContextTakeover = true;
+            } else if (parameter.equalsIgnoreCase("client_max_window_bits") && !clientMaxWindowBitsOffered) {
+                if (value != null) {
+                    clientWindowBits = windowBits(value);
+                    if (clientWindowBits == -1) {
+                        return null;
+                    }
+                }
+                clientMaxWindowBitsOffered = true;
+            } else if (parameter.equalsIgnoreCase("server_max_window_bits") && !serverMaxWindowBitsOffered) {
+                // The JDK deflater cannot use a smaller window than 15 bits.
+                if (windowBits(value) != 15) {
+                    return null;
+                }
+                serverMaxWindowBitsOffered = true;
+            } else {
+                return null;
+            }
+        }
+        // The client may not be told to use a larger window than it offered.
+        if (clientMaxWindowBitsOffered) {
+            clientWindowBits = Math.min(clientWindowBits, clientMaxWindowBits);
+        }
+        return new Agreement(serverNoContextTakeover, clientNoContextTakeover, clientWindowBits);
+    }
+
+    private static int windowBits(String value) {
+        if (value == null || value.length() == 0 || value.length() > 2) {
+            return -1;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        int bits = Integer.parseInt(value);
+        return bits >= 8 && bits <= 15 ? bits : -1;
+    }
+
+    private static String unquote(String value) {
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1) : value;
+    }
+
+    /**
+     * The extension parameters agreed with one client.
+     */
+    static class Agreement {
+        final boolean serverNoContextTakeover;
+        final boolean clientNoContextTakeover;
+        final int clientMaxWindowBits;
+
+        Agreement(boolean serverNoContextTakeover, boolean clientNoContextTakeover, int clientMaxWindowBits) {
+            this.serverNoContextTakeover = serverNoContextTakeover;
+            this.clientNoContextTakeover = clientNoContextTakeover;
+            this.clientMaxWindowBits = clientMaxWindowBits;
+        }
+
+        /**
+         * The {@code Sec-WebSocket-Extensions} response header accepting the offer.
+         */
+        String responseHeader() {
+            StringBuilder header = new StringBuilder(EXTENSION);
+            if (serverNoContextTakeover) {
+                header.append("; server_no_context_takeover");
+            }
+            if (clientNoContextTakeover) {
+                header.append("; client_no_context_takeover");
+            }
+            if (clientMaxWindowBits < 15) {
+                header.append("; client_max_window_bits=").append(clientMaxWindowBits);
+            }
+            return header.toString();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses outgoing and decompresses incoming WebSocket messages of a connection that negotiated
+ * permessage-deflate. It sits just after the frame encoder and decoder.
+ * <p/>
+ * Each message is deflated with a sync flush, and its trailing {@code 00 00 ff ff} is removed as RFC 7692
+ * requires. Compressed messages are marked by the RSV1 bit on their first frame. Control frames are never
+ * compressed.
+ * <p/>
+ * Netty's frame decoder checks that text frames are valid UTF-8 before they can be decompressed, so the
+ * {@link #opcodeRewriter()} placed before it turns compressed text frames into binary ones, and this codec
+ * turns them back.
+ */
+class PerMessageDeflateCodec extends MessageToMessageCodec<WebSocketFrame, WebSocketFrame> {
+    /**
+     * How many times its own size a compressed fragment may grow to for a fragment handler.
+     */
+    static final int MAX_FRAGMENT_EXPANSION = 64;
+
+    private static final int RSV1 = 0x4;
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+    private final PerMessageDeflate policy;
+    private final boolean serverNoContextTakeover;
+    private final int maxMessageSize;
+    private final boolean fragmented;
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    // Whether each compressed message the rewriter has seen began as text, oldest first.
+    private final Queue<Boolean> compressedTexts = new ArrayDeque<>();
+    private boolean ended;
+    private boolean deflating;
+    private boolean inflating;
+    private int inflatedSize;
+
+    PerMessageDeflateCodec(PerMessageDeflate policy, PerMessageDeflate.Agreement agreement, int maxMessageSize) {
+        this(policy, agreement, maxMessageSize, false);
+    }
+
+    /**
+     * @param maxMessageSize largest decompressed message accepted from the client, or largest decompressed
+     *                       fragment if fragmented
+     * @param fragmented     whether messages are handed on fragment by fragment rather than whole
+     */
+    PerMessageDeflateCodec(PerMessageDeflate policy,
+                           PerMessageDeflate.Agreement agreement,
+                           int maxMessageSize,
+                           boolean fragmented)
+    {
+        this.policy = policy;
+        this.serverNoContextTakeover = agreement.serverNoContextTakeover;
+        this.maxMessageSize = maxMessageSize;
+        this.fragmented = fragmented;
+        this.deflater = new Deflater(policy.compressionLevel(), true);
+    }
+
+    /**
+     * The handler to place before the frame decoder, hiding compressed text frames from its UTF-8 checks.
+     */
+    ChannelHandler opcodeRewriter() {
+        return new OpcodeRewriter();
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
+        boolean data = frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame;
+        if (ended) {
+            out.add(frame.retain());
+        } else if (data && (frame.rsv() & RSV1) == 0
+                && (!frame.isFinalFragment() || frame.content().readableBytes() >= policy.minimumSize())) {
+            deflating = true;
+            out.add(compressed(frame, frame.rsv() | RSV1));
+        } else if (frame instanceof ContinuationWebSocketFrame && deflating) {
+            out.add(compressed(frame, frame.rsv()));
+        } else {
+            if (data) {
+                policy.skipped();
+            }
+            out.add(frame.retain());
+        }
+    }
+
+    private WebSocketFrame compressed(WebSocketFrame frame, int rsv) {
+        ByteBuf content = frame.content();
+        int before = content.readableBytes();
+        ByteBuf compressed = Unpooled.buffer(before / 2 + 16);
+        deflater.setInput(bytes(content));
+        do {
+            compressed.ensureWritable(Math.max(64, before / 4));
+            int written = deflater.deflate(compressed.array(),
+                                           compressed.arrayOffset() + compressed.writerIndex(),
+                                           compressed.writableBytes(),
+                                           Deflater.SYNC_FLUSH);
+            compressed.writerIndex(compressed.writerIndex() + written);
+        } while (!compressed.isWritable());
+
+        boolean finalFragment = frame.isFinalFragment();
+        if (finalFragment) {
+            deflating = false;
+            if (endsWithTail(compressed)) {
+                compressed.writerIndex(compressed.writerIndex() - TAIL.length);
+            }
+            if (serverNoContextTakeover) {
+                deflater.reset();
+            }
+        }
+        policy.compressed(before, compressed.readableBytes());
+        return frame(frame, finalFragment, rsv, compressed);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
+        boolean data = frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame;
+        if (data && (frame.rsv() & RSV1) != 0) {
+            Boolean text = compressedTexts.poll();
+            if (text == null) {
+                text = frame instanceof TextWebSocketFrame;
+            }
+            inflating = true;
+            inflatedSize = 0;
+            ByteBuf content = decompressed(frame);
+            int rsv = frame.rsv() & ~RSV1;
+            out.add(text
+                    ? new TextWebSocketFrame(frame.isFinalFragment(), rsv, content)
+                    : new BinaryWebSocketFrame(frame.isFinalFragment(), rsv, content));
+        } else if (frame instanceof ContinuationWebSocketFrame && inflating) {
+            out.add(new ContinuationWebSocketFrame(frame.isFinalFragment(), frame.rsv(), decompressed(frame)));
+        } else {
+            out.add(frame.retain());
+        }
+    }
+
+    private ByteBuf decompressed(WebSocketFrame frame) throws Exception {
+        if (fragmented) {
+            inflatedSize = 0;
+        }
+        ByteBuf decompressed = Unpooled.buffer(frame.content().readableBytes() * 3 + 16);
+        inflate(bytes(frame.content()), decompressed);
+        if (frame.isFinalFragment()) {
+            inflating = false;
+            inflate(TAIL, decompressed);
+        }
+        return decompressed;
+    }
+
+    private void inflate(byte[] input, ByteBuf decompressed) throws Exception {
+        inflater.setInput(input);
+        try {
+            for (;;) {
+                decompressed.ensureWritable(Math.max(256, input.length * 2));
+                int writable = decompressed.writableBytes();
+                int written = inflater.inflate(decompressed.array(),
+                                               decompressed.arrayOffset() + decompressed.writerIndex(),
+                                               writable);
+                decompressed.writerIndex(decompressed.writerIndex() + written);
+                inflatedSize += written;
+                if (inflatedSize > maxMessageSize) {
+                    throw new TooLongFrameException("WebSocket " + (fragmented ? "fragment" : "message")
+                                                    + " decompresses to over " + maxMessageSize + " bytes");
+                }
+                if (written < writable) {
+                    // All the input has been used, or the stream is over.
+                    return;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new CorruptedFrameException("Invalid compressed WebSocket message", e);
+        }
+    }
+
+    private static WebSocketFrame frame(WebSocketFrame frame, boolean finalFragment, int rsv, ByteBuf content) {
+        if (frame instanceof TextWebSocketFrame) {
+            return new TextWebSocketFrame(finalFragment, rsv, content);
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            return new BinaryWebSocketFrame(finalFragment, rsv, content);
+        } else {
+            return new ContinuationWebSocketFrame(finalFragment, rsv, content);
+        }
+    }
+
+    private static byte[] bytes(ByteBuf content) {
+        if (content.hasArray() && content.arrayOffset() == 0 && content.readerIndex() == 0
+                && content.readableBytes() == content.array().length) {
+            return content.array();
+        }
+        byte[] bytes = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), bytes);
+        return bytes;
+    }
+
+    private static boolean endsWithTail(ByteBuf compressed) {
+        int end = compressed.writerIndex();
+        if (compressed.readableBytes() < TAIL.length) {
+            return false;
+        }
+        for (int i = 0; i < TAIL.length; i++) {
+            if (compressed.getByte(end - TAIL.length + i) != TAIL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        end();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        end();
+    }
+
+    private void end() {
+        // Frames written after the connection has gone can still pass through, and are sent uncompressed.
+        ended = true;
+        deflater.end();
+        inflater.end();
+    }
+
+    /**
+     * Follows the frames in the bytes from the client, changing the opcode of each compressed text frame to
+     * binary and noting that it was text.
+     */
+    private class OpcodeRewriter extends ChannelHandlerAdapter {
+        private static final int OPCODE = 0;
+        private static final int LENGTH = 1;
+        private static final int EXTENDED_LENGTH = 2;
+        private static final int MASKING_KEY = 3;
+        private static final int PAYLOAD = 4;
+
+        private int state = OPCODE;
+        private int remainingHeaderBytes;
+        private boolean masked;
+        private long payloadLength;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof ByteBuf) {
+                rewrite((ByteBuf) msg);
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        private void rewrite(ByteBuf buffer) {
+            int index = buffer.readerIndex();
+            int end = buffer.writerIndex();
+            while (index < end) {
+                if (state == PAYLOAD) {
+                    int skipped = (int) Math.min(payloadLength, end - index);
+                    index += skipped;
+                    payloadLength -= skipped;
+                    if (payloadLength == 0) {
+                        state = OPCODE;
+                    }
+                    continue;
+                }
+                int b = buffer.getByte(index) & 0xff;
+                switch (state) {
+                    case OPCODE:
+                        int opcode = b & 0x0f;
+                        if ((b & (RSV1 << 4)) != 0 && (opcode == 1 || opcode == 2)) {
+                            compressedTexts.add(opcode == 1);
+                            if (opcode == 1) {
+                                buffer.setByte(index, (b & 0xf0) | 2);
+                            }
+                        }
+                        state = LENGTH;
+                        break;
+                    case LENGTH:
+                        masked = (b & 0x80) != 0;
+                        payloadLength = b & 0x7f;
+                        if (payloadLength == 126 || payloadLength == 127) {
+                            remainingHeaderBytes = payloadLength == 126 ? 2 : 8;
+                            payloadLength = 0;
+                            state = EXTENDED_LENGTH;
+                        } else {
+                            afterLength();
+                        }
+                        break;
+                    case EXTENDED_LENGTH:
+                        payloadLength = (payloadLength << 8) | b;
+                        if (--remainingHeaderBytes == 0) {
+                            afterLength();
+                        }
+                        break;
+                    case MASKING_KEY:
+                        if (--remainingHeaderBytes == 0) {
+                            afterHeader();
+                        }
+                        break;
+                }
+                index++;
+            }
+        }
+
+        private void afterLength() {
+            if (masked) {
+                remainingHeaderBytes = 4;
+                state = MASKING_KEY;
+            } else {
+                afterHeader();
+            }
+        }
+
+        private void afterHeader() {
+            state = payloadLength == 0 ? OPCODE : PAYLOAD;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.webbitserver.netty;
+
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closes connections once the {@link IdleStateHandler} named {@link #IDLE} reports them idle, whether for reading,
+ * writing or both.
+ * <p/>
+ * HTTP connections are only closed between requests, so a slow handler never has its connection reaped
+ * from under it. When a connection is upgraded the idle timeouts are swapped for the WebSocket or EventSource
+ * ones, and it is no longer between requests that it may be closed.
+ */
+public class StaleConnectionHandler extends ChannelHandlerAdapter {
+    public static final String IDLE = "idle";
+
+    private final IdleTimeouts webSocketIdleTimeouts;
+    private final IdleTimeouts eventSourceIdleTimeouts;
+    private final AtomicLong reapedConnections;
+    private int requestsInFlight;
+
+    public StaleConnectionHandler(IdleTimeouts webSocketIdleTimeouts,
+                                  IdleTimeouts eventSourceIdleTimeouts,
+                                  AtomicLong reapedConnections)
+    {
+        this.webSocketIdleTimeouts = webSocketIdleTimeouts;
+        this.eventSourceIdleTimeouts = eventSourceIdleTimeouts;
+        this.reapedConnections = reapedConnections;
+    }
+
+    public void upgradedToWebSocket(ChannelPipeline pipeline) {
+        upgraded(pipeline, webSocketIdleTimeouts);
+    }
+
+    public void upgradedToEventSource(ChannelPipeline pipeline) {
+        upgraded(pipeline, eventSourceIdleTimeouts);
+    }
+
+    private void upgraded(ChannelPipeline pipeline, IdleTimeouts idleTimeouts) {
+        // The upgraded response is never ended, so the request would otherwise stay in flight forever.
+        pipeline.channel().eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                requestsInFlight = 0;
+            }
+        });
+        IdleStateHandler idle = idleTimeouts.newIdleStateHandler();
+        boolean present = pipeline.get(IDLE) != null;
+        if (idle == null) {
+            if (present) {
+                pipeline.remove(IDLE);
+            }
+        } else if (present) {
+            pipeline.replace(IDLE, IDLE, idle);
+        } else {
+            pipeline.addFirst(IDLE, idle);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            requestsInFlight++;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof LastHttpContent && requestsInFlight > 0) {
+            requestsInFlight--;
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            if (requestsInFlight == 0) {
+                reapedConnections.incrementAndGet();
+                ctx.close();
+            }
+        } else {
+            ctx.fireUserEventTriggered(evt);
+        }
+    }
+}
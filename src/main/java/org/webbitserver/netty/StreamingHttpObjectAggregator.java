@@ -0,0 +1,68 @@
+package org.webbitserver.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.URI;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Aggregates requests like {@link HttpObjectAggregator}, except for requests on paths matching one of the streaming
+ * patterns. Those are passed on as an {@link HttpRequest} followed by its {@link io.netty.handler.codec.http.HttpContent}
+ * pieces, so the body never has to fit in memory (or under the max content length).
+ */
+public class StreamingHttpObjectAggregator extends HttpObjectAggregator {
+    private final List<Pattern> streamingPaths;
+    private boolean streaming;
+
+    public StreamingHttpObjectAggregator(int maxContentLength, List<Pattern> streamingPaths) {
+        super(maxContentLength);
+        this.streamingPaths = streamingPaths;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+        if (msg instanceof HttpRequest && isStreamingPath(((HttpRequest) msg).getUri())) {
+            streaming = true;
+            if (HttpHeaders.is100ContinueExpected((HttpRequest) msg)) {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, CONTINUE));
+            }
+        }
+        if (streaming) {
+            if (msg instanceof LastHttpContent) {
+                streaming = false;
+            }
+            out.add(ReferenceCountUtil.retain(msg));
+        } else {
+            super.decode(ctx, msg, out);
+        }
+    }
+
+    private boolean isStreamingPath(String uri) {
+        if (streamingPaths.isEmpty()) {
+            return false;
+        }
+        String path;
+        try {
+            path = URI.create(uri).getPath();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        for (Pattern streamingPath : streamingPaths) {
+            if (streamingPath.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,116 @@
+package org.webbitserver.netty;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The Netty transport a {@link NettyWebServer} accepts and serves connections with.
+ *
+ * @see NettyWebServer#transport(Transport)
+ * @see NettyWebServer#activeTransport()
+ */
+public enum Transport {
+
+    /**
+     * Portable JDK NIO transport. Always available.
+     */
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+    },
+
+    /**
+     * Linux-only native transport using edge-triggered epoll, which makes fewer syscalls than NIO and supports
+     * socket options such as TCP_FASTOPEN, TCP_DEFER_ACCEPT and SO_REUSEPORT.
+     * <p/>
+     * Requires Netty's {@code netty-transport-native-epoll} artifact (and its native library) on the classpath.
+     * It is looked up reflectively, so webbit does not depend on it.
+     */
+    EPOLL {
+        private static final String PACKAGE = "io.netty.channel.epoll.";
+
+        @Override
+        public boolean isAvailable() {
+            try {
+                Class<?> epoll = Class.forName(PACKAGE + "Epoll");
+                return (Boolean) epoll.getMethod("isAvailable").invoke(null);
+            } catch (Throwable e) {
+                // Not on the classpath, not Linux, or the native library failed to load.
+                return false;
+            }
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            try {
+                return (EventLoopGroup) Class.forName(PACKAGE + "EpollEventLoopGroup")
+                        .getConstructor(int.class, ThreadFactory.class)
+                        .newInstance(threads, threadFactory);
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not create epoll event loop group", e);
+            }
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannelClass() {
+            try {
+                return Class.forName(PACKAGE + "EpollServerSocketChannel").asSubclass(ServerChannel.class);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Could not load epoll server channel", e);
+            }
+        }
+
+        @Override
+        <T> ChannelOption<T> option(String name) {
+            try {
+                @SuppressWarnings("unchecked")
+                ChannelOption<T> option = (ChannelOption<T>) Class.forName(PACKAGE + "EpollChannelOption")
+                        .getField(name)
+                        .get(null);
+                return option;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    };
+
+    /**
+     * Whether this transport can be used in the running JVM.
+     */
+    public abstract boolean isAvailable();
+
+    abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    abstract Class<? extends ServerChannel> serverChannelClass();
+
+    /**
+     * A transport specific {@link ChannelOption}, or null if this transport does not support it.
+     */
+    <T> ChannelOption<T> option(String name) {
+        return null;
+    }
+
+    /**
+     * This transport if it is available, otherwise {@link #NIO}.
+     */
+    Transport orFallback() {
+        return isAvailable() ? this : NIO;
+    }
+}
@@ -0,0 +1,122 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.wrapper.WebSocketConnectionWrapper;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A set of WebSocket connections that messages can be broadcast to, such as the subscribers of a chat room
+ * or a market data feed.
+ * <p/>
+ * A broadcast message is encoded once, into one buffer, and each member is sent a frame around a retained
+ * duplicate of it rather than a copy. Members whose outbound buffer is above its high water mark, such as slow
+ * clients, get the message through their {@link OverflowPolicy}, or are skipped rather than buffering ever more
+ * if they have none. Connections leave the group when they close.
+ * <p/>
+ * Members that negotiated {@link PerMessageDeflate} compress the shared payload each on their own, as every
+ * connection keeps its own compression window.
+ * <p/>
+ * Groups are thread safe, and connections may belong to several groups.
+ */
+public class WebSocketConnectionGroup {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Set<WebSocketConnection> members =
+            Collections.newSetFromMap(new ConcurrentHashMap<WebSocketConnection, Boolean>());
+    private final AtomicLong skipped = new AtomicLong();
+
+    public WebSocketConnectionGroup join(final WebSocketConnection connection) {
+        if (members.add(connection)) {
+            NettyWebSocketConnection nettyConnection = nettyConnection(connection);
+            if (nettyConnection != null) {
+                nettyConnection.closeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        members.remove(connection);
+                    }
+                });
+            }
+        }
+        return this;
+    }
+
+    public WebSocketConnectionGroup leave(WebSocketConnection connection) {
+        members.remove(connection);
+        return this;
+    }
+
+    public boolean contains(WebSocketConnection connection) {
+        return members.contains(connection);
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Number of messages not sent to a member because it was not writable and had no overflow policy.
+     */
+    public long skipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Sends a text frame to every member.
+     *
+     * @return the number of members it was sent or handed to the overflow policy of
+     */
+    public int broadcast(String message) {
+        return broadcast(message.getBytes(UTF8), true);
+    }
+
+    /**
+     * Sends a binary frame to every member.
+     *
+     * @return the number of members it was sent or handed to the overflow policy of
+     */
+    public int broadcast(byte[] message) {
+        return broadcast(message, false);
+    }
+
+    private int broadcast(byte[] message, boolean text) {
+        // Direct, so the transport does not copy it again for each member.
+        ByteBuf payload = Unpooled.directBuffer(message.length).writeBytes(message);
+        try {
+            int sent = 0;
+            for (WebSocketConnection member : members) {
+                NettyWebSocketConnection nettyConnection = nettyConnection(member);
+                if (nettyConnection == null) {
+                    if (text) {
+                        member.send(new String(message, UTF8));
+                    } else {
+                        member.send(message);
+                    }
+                    sent++;
+                } else if (nettyConnection.sendShared(payload, text)) {
+                    sent++;
+                } else {
+                    skipped.incrementAndGet();
+                }
+            }
+            return sent;
+        } finally {
+            payload.release();
+        }
+    }
+
+    private static NettyWebSocketConnection nettyConnection(WebSocketConnection connection) {
+        if (connection instanceof WebSocketConnectionWrapper) {
+            connection = ((WebSocketConnectionWrapper) connection).originalControl();
+        }
+        return connection instanceof NettyWebSocketConnection ? (NettyWebSocketConnection) connection : null;
+    }
+}
@@ -9,8 +9,10 @@ import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import org.webbitserver.WebSocketFragmentHandler;
 import org.webbitserver.WebSocketHandler;
 import org.webbitserver.WebbitException;
+import org.webbitserver.WritabilityHandler;
 
 import java.nio.channels.ClosedChannelException;
 
@@ -19,23 +21,48 @@ public class WebSocketConnectionHandler extends SimpleChannelInboundHandler<WebS
     private final NettyWebSocketConnection webSocketConnection;
     private final WebSocketHandler webSocketHandler;
     private final WebSocketServerHandshaker handshaker;
+    private final WebSocketFragmentSplitter splitter;
 
     public WebSocketConnectionHandler(Thread.UncaughtExceptionHandler ioExceptionHandler,
                                       NettyWebSocketConnection webSocketConnection,
                                       WebSocketHandler webSocketHandler,
                                       WebSocketServerHandshaker handshaker)
+    {
+        this(ioExceptionHandler, webSocketConnection, webSocketHandler, handshaker, null);
+    }
+
+    /**
+     * @param splitter the splitter in front of the frame decoder when the handler is a
+     *                 {@link WebSocketFragmentHandler}, told as each fragment has been handled
+     */
+    WebSocketConnectionHandler(Thread.UncaughtExceptionHandler ioExceptionHandler,
+                               NettyWebSocketConnection webSocketConnection,
+                               WebSocketHandler webSocketHandler,
+                               WebSocketServerHandshaker handshaker,
+                               WebSocketFragmentSplitter splitter)
     {
         this.ioExceptionHandler = ioExceptionHandler;
         this.webSocketConnection = webSocketConnection;
         this.webSocketHandler = webSocketHandler;
         this.handshaker = handshaker;
+        this.splitter = splitter;
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        webSocketConnection.closed();
         webSocketHandler.onClose(webSocketConnection);
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        webSocketConnection.writabilityChanged();
+        if (webSocketHandler instanceof WritabilityHandler) {
+            ((WritabilityHandler) webSocketHandler).onWritabilityChanged(webSocketConnection,
+                                                                         webSocketConnection.isWritable());
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         if (cause.getCause() instanceof ClosedChannelException) {
@@ -53,7 +80,14 @@ public class WebSocketConnectionHandler extends SimpleChannelInboundHandler<WebS
         } else if (frame instanceof PingWebSocketFrame) {
             webSocketHandler.onPing(webSocketConnection, (PingWebSocketFrame) frame);
         } else if (frame instanceof PongWebSocketFrame) {
+            webSocketConnection.pongReceived((PongWebSocketFrame) frame);
             webSocketHandler.onPong(webSocketConnection, (PongWebSocketFrame) frame);
+        } else if (splitter != null) {
+            try {
+                ((WebSocketFragmentHandler) webSocketHandler).onFragment(webSocketConnection, frame);
+            } finally {
+                splitter.delivered();
+            }
         } else if (frame instanceof TextWebSocketFrame) {
             webSocketHandler.onMessage(webSocketConnection, (TextWebSocketFrame) frame);
         } else if (frame instanceof BinaryWebSocketFrame) {
@@ -0,0 +1,172 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the frames in the bytes from a WebSocket client into fragments of at most a given size, so that a
+ * {@link org.webbitserver.WebSocketFragmentHandler} is handed large messages piece by piece as they arrive.
+ * It sits before the frame decoder, which would otherwise buffer each frame whole.
+ * <p/>
+ * A frame is split at multiples of four bytes, so that its masking key still applies to each fragment from the
+ * fragment's first byte. The first fragment keeps the opcode and RSV bits of the frame, the others are
+ * continuations, and only the last keeps its FIN bit.
+ * <p/>
+ * Frames with a negative length, and control frames longer than the 125 bytes they are allowed, are passed on
+ * along with everything after them rather than waited for, so that the frame decoder rejects them from their
+ * header.
+ * <p/>
+ * Reading from the connection is suspended while {@link #MAX_PENDING} data fragments have been passed on but
+ * not yet {@link #delivered() delivered} to the handler, and resumed once half of them have.
+ */
+class WebSocketFragmentSplitter extends ByteToMessageDecoder {
+    static final int MAX_PENDING = 8;
+
+    private static final int CONTROL_OPCODE = 0x8;
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+
+    private final Channel channel;
+    private final int fragmentSize;
+    private final AtomicInteger pending = new AtomicInteger();
+    private boolean invalid;
+
+    // The frame being split.
+    private boolean splitting;
+    private boolean first;
+    private int finalBit;
+    private int rsvAndOpcode;
+    private byte[] maskingKey;
+    private long remaining;
+
+    /**
+     * @param fragmentSize largest fragment payload, rounded down to a multiple of four
+     */
+    WebSocketFragmentSplitter(Channel channel, int fragmentSize) {
+        this.channel = channel;
+        this.fragmentSize = fragmentSize & ~3;
+        if (this.fragmentSize < 4) {
+            throw new IllegalArgumentException("fragmentSize must be at least 4, was " + fragmentSize);
+        }
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (invalid) {
+            out.add(in.readSlice(in.readableBytes()).retain());
+            return;
+        }
+        if (!splitting && !startFrame(in, out)) {
+            return;
+        }
+        while (splitting) {
+            int size = (int) Math.min(remaining, fragmentSize);
+            if (in.readableBytes() < size) {
+                return;
+            }
+            remaining -= size;
+            boolean last = remaining == 0;
+            ByteBuf header = ctx.alloc().buffer(14);
+            header.writeByte((last ? finalBit : 0) | (first ? rsvAndOpcode : 0));
+            writeLength(header, maskingKey == null ? 0 : 0x80, size);
+            if (maskingKey != null) {
+                header.writeBytes(maskingKey);
+            }
+            out.add(Unpooled.wrappedBuffer(header, in.readSlice(size).retain()));
+            queued();
+            first = false;
+            splitting = !last;
+        }
+    }
+
+    /**
+     * Passes on a frame that needs no splitting once it has arrived in full, or reads the header of one that
+     * does.
+     *
+     * @return whether a frame is now being split
+     */
+    private boolean startFrame(ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < 2) {
+            return false;
+        }
+        int start = in.readerIndex();
+        int firstByte = in.getUnsignedByte(start);
+        int secondByte = in.getUnsignedByte(start + 1);
+        boolean masked = (secondByte & 0x80) != 0;
+        int lengthField = secondByte & 0x7f;
+        int extendedLength = lengthField == 126 ? 2 : lengthField == 127 ? 8 : 0;
+        int headerLength = 2 + extendedLength + (masked ? 4 : 0);
+        if (in.readableBytes() < headerLength) {
+            return false;
+        }
+        long length = lengthField == 126 ? in.getUnsignedShort(start + 2)
+                : lengthField == 127 ? in.getLong(start + 2) : lengthField;
+        boolean data = (firstByte & CONTROL_OPCODE) == 0;
+
+        if (length < 0 || !data && length > MAX_CONTROL_PAYLOAD) {
+            invalid = true;
+            out.add(in.readSlice(in.readableBytes()).retain());
+            return false;
+        }
+        if (!data || length <= fragmentSize) {
+            if (in.readableBytes() - headerLength < length) {
+                return false;
+            }
+            out.add(in.readSlice(headerLength + (int) length).retain());
+            if (data) {
+                queued();
+            }
+            return false;
+        }
+
+        finalBit = firstByte & 0x80;
+        rsvAndOpcode = firstByte & 0x7f;
+        if (masked) {
+            maskingKey = new byte[4];
+            in.getBytes(start + headerLength - 4, maskingKey);
+        } else {
+            maskingKey = null;
+        }
+        remaining = length;
+        first = true;
+        splitting = true;
+        in.skipBytes(headerLength);
+        return true;
+    }
+
+    private static void writeLength(ByteBuf header, int maskBit, int length) {
+        if (length < 126) {
+            header.writeByte(maskBit | length);
+        } else if (length <= 0xffff) {
+            header.writeByte(maskBit | 126);
+            header.writeShort(length);
+        } else {
+            header.writeByte(maskBit | 127);
+            header.writeLong(length);
+        }
+    }
+
+    private void queued() {
+        if (pending.incrementAndGet() >= MAX_PENDING) {
+            channel.config().setAutoRead(false);
+            // The handler may have caught up in the meantime, and would not have seen reading suspended.
+            if (pending.get() <= MAX_PENDING / 2) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    /**
+     * Called on the handler thread once a data fragment has been handled.
+     */
+    void delivered() {
+        if (pending.decrementAndGet() == MAX_PENDING / 2) {
+            channel.config().setAutoRead(true);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pings WebSocket clients at a regular interval and closes connections that miss too many pongs in a row, so
+ * that half-open connections, whose client has gone without closing them, are noticed long before TCP would.
+ * Each pong answering the latest ping gives a round trip time.
+ * <p/>
+ * The pings of every connection are scheduled on a single timer wheel shared by the whole JVM, so keeping a
+ * connection alive costs one entry in the wheel rather than a task on its event loop. The wheel ticks every
+ * 100 milliseconds, which bounds the precision of the interval.
+ * <p/>
+ * Handlers still get the pongs in {@link org.webbitserver.WebSocketHandler#onPong}. A changed interval or
+ * {@code maxMissedPongs} applies to each connection from its next ping.
+ *
+ * @see NettyWebServer#webSocketKeepAlive(WebSocketKeepAlive)
+ * @see NettyWebServer#add(String, org.webbitserver.WebSocketHandler, WebSocketKeepAlive)
+ */
+public class WebSocketKeepAlive {
+    private static final long NO_PING = -1;
+
+    private volatile long intervalMillis = 30000;
+    private volatile int maxMissedPongs = 2;
+
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLong pongsReceived = new AtomicLong();
+    private final AtomicLong deadConnections = new AtomicLong();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong totalRoundTripNanos = new AtomicLong();
+    private final AtomicLong maxRoundTripNanos = new AtomicLong();
+
+    /**
+     * Time between pings. Defaults to 30 seconds.
+     */
+    public WebSocketKeepAlive interval(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive, was " + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+        return this;
+    }
+
+    public long interval() {
+        return intervalMillis;
+    }
+
+    /**
+     * Number of pings in a row a client may leave unanswered before its connection is closed. Defaults to 2.
+     */
+    public WebSocketKeepAlive maxMissedPongs(int maxMissedPongs) {
+        if (maxMissedPongs < 1) {
+            throw new IllegalArgumentException("maxMissedPongs must be at least 1, was " + maxMissedPongs);
+        }
+        this.maxMissedPongs = maxMissedPongs;
+        return this;
+    }
+
+    public int maxMissedPongs() {
+        return maxMissedPongs;
+    }
+
+    public long pingsSent() {
+        return pingsSent.get();
+    }
+
+    public long pongsReceived() {
+        return pongsReceived.get();
+    }
+
+    /**
+     * Number of connections closed for missing {@link #maxMissedPongs()} pongs.
+     */
+    public long deadConnections() {
+        return deadConnections.get();
+    }
+
+    /**
+     * Number of pongs that answered the latest ping on their connection, and so gave a round trip time.
+     */
+    public long roundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * Mean round trip time in microseconds, or 0 before the first round trip.
+     */
+    public long meanRoundTripMicros() {
+        long roundTrips = this.roundTrips.get();
+        return roundTrips == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalRoundTripNanos.get() / roundTrips);
+    }
+
+    public long maxRoundTripMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxRoundTripNanos.get());
+    }
+
+    Pinger start(NettyWebSocketConnection connection) {
+        Pinger pinger = new Pinger(connection);
+        pinger.schedule();
+        return pinger;
+    }
+
+    private void roundTrip(long nanos) {
+        roundTrips.incrementAndGet();
+        totalRoundTripNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxRoundTripNanos.get()) && !maxRoundTripNanos.compareAndSet(max, nanos)) {
+            // Another connection raised the maximum in the meantime.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WebSocketKeepAlive{interval=" + intervalMillis + "ms, maxMissedPongs=" + maxMissedPongs + "}";
+    }
+
+    private static final class SharedTimer {
+        static final Timer TIMER = new HashedWheelTimer(
+                new DefaultThreadFactory("webbit-websocket-keepalive", true), 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keeps one connection alive. Each ping carries the time it was sent, which the client echoes in its pong.
+     */
+    class Pinger implements TimerTask {
+        private final NettyWebSocketConnection connection;
+        private Timeout timeout;
+        private long pingSentAt = NO_PING;
+        private int missedPongs;
+        private long roundTripNanos = NO_PING;
+        private boolean stopped;
+
+        Pinger(NettyWebSocketConnection connection) {
+            this.connection = connection;
+        }
+
+        private synchronized void schedule() {
+            if (!stopped) {
+                timeout = SharedTimer.TIMER.newTimeout(this, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            long now;
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                if (pingSentAt != NO_PING && ++missedPongs >= maxMissedPongs) {
+                    stopped = true;
+                    deadConnections.incrementAndGet();
+                    connection.ctx.channel().close();
+                    return;
+                }
+                now = System.nanoTime();
+                pingSentAt = now;
+                schedule();
+            }
+            pingsSent.incrementAndGet();
+            connection.ping(new PingWebSocketFrame(Unpooled.buffer(8).writeLong(now)));
+        }
+
+        /**
+         * Called on the handler thread for each pong from the client. Any pong shows that the client is still
+         * there, but only one echoing the latest ping gives a round trip time.
+         */
+        synchronized void pong(ByteBuf payload) {
+            pongsReceived.incrementAndGet();
+            missedPongs = 0;
+            if (pingSentAt != NO_PING && payload.readableBytes() == 8
+                    && payload.getLong(payload.readerIndex()) == pingSentAt) {
+                roundTripNanos = System.nanoTime() - pingSentAt;
+                roundTrip(roundTripNanos);
+            }
+            pingSentAt = NO_PING;
+        }
+
+        synchronized long roundTripNanos() {
+            return roundTripNanos;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+}
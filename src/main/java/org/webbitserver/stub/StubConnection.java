@@ -4,6 +4,7 @@ import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.webbitserver.EncodedEventSourceMessage;
 import org.webbitserver.EventSourceConnection;
 import org.webbitserver.EventSourceMessage;
 import org.webbitserver.HttpRequest;
@@ -24,6 +25,7 @@ public class StubConnection extends StubDataHolder implements EventSourceConnect
     private final List<byte[]> sentPings = new LinkedList<>();
     private final List<byte[]> sentPongs = new LinkedList<>();
     private boolean closed = false;
+    private boolean writable = true;
     private HttpRequest httpRequest;
     private String version = null;
 
@@ -45,6 +47,11 @@ public class StubConnection extends StubDataHolder implements EventSourceConnect
         return send(message.build());
     }
 
+    @Override
+    public StubConnection send(EncodedEventSourceMessage message) {
+        return send(message.build());
+    }
+
     public StubConnection httpRequest(HttpRequest httpRequest) {
         this.httpRequest = httpRequest;
         return this;
@@ -143,6 +150,16 @@ public class StubConnection extends StubDataHolder implements EventSourceConnect
         return this;
     }
 
+    @Override
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public StubConnection writable(boolean writable) {
+        this.writable = writable;
+        return this;
+    }
+
     @Override
     public String version() {
         return version;
@@ -2,12 +2,14 @@ package org.webbitserver.stub;
 
 import org.webbitserver.EventSourceConnection;
 import org.webbitserver.EventSourceHandler;
+import org.webbitserver.HttpBodyHandler;
 import org.webbitserver.HttpControl;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
 import org.webbitserver.WebSocketConnection;
 import org.webbitserver.WebSocketHandler;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.Executor;
 
 public class StubHttpControl implements HttpControl {
@@ -16,6 +18,7 @@ public class StubHttpControl implements HttpControl {
     private HttpResponse response;
     private WebSocketHandler webSocketHandler;
     private WebSocketConnection webSocketConnection;
+    private boolean bodyPaused;
 
     public StubHttpControl() {
     }
@@ -106,6 +109,33 @@ public class StubHttpControl implements HttpControl {
         return this;
     }
 
+    @Override
+    public void readBody(HttpBodyHandler handler) {
+        try {
+            byte[] body = request.body() == null ? null : request.bodyAsBytes();
+            if (body != null && body.length > 0) {
+                handler.onContent(ByteBuffer.wrap(body).asReadOnlyBuffer());
+            }
+            handler.onEnd();
+        } catch (Exception e) {
+            response.error(e);
+        }
+    }
+
+    @Override
+    public void pauseBody() {
+        bodyPaused = true;
+    }
+
+    @Override
+    public void resumeBody() {
+        bodyPaused = false;
+    }
+
+    public boolean bodyPaused() {
+        return bodyPaused;
+    }
+
     @Override
     public void execute(Runnable command) {
         command.run();
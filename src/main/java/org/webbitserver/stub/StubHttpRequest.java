@@ -6,8 +6,11 @@ import io.netty.handler.codec.http.HttpHeaders;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.helpers.QueryParameters;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
@@ -148,6 +151,16 @@ public class StubHttpRequest extends StubDataHolder implements HttpRequest {
         return body.getBytes();
     }
 
+    @Override
+    public ByteBuffer bodyAsByteBuffer() {
+        return ByteBuffer.wrap(bodyAsBytes()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public InputStream bodyAsStream() {
+        return new ByteArrayInputStream(bodyAsBytes());
+    }
+
     public StubHttpRequest body(String body) {
         this.body = body;
         return this;
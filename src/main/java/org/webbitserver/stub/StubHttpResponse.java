@@ -9,7 +9,9 @@ import io.netty.handler.codec.http.HttpHeaders.Values;
 import org.webbitserver.HttpResponse;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -48,6 +50,32 @@ public class StubHttpResponse implements HttpResponse {
         return this;
     }
 
+    @Override
+    public StubHttpResponse write(CharSequence content) {
+        return chunked().content(content);
+    }
+
+    @Override
+    public StubHttpResponse write(byte[] content) {
+        return chunked().content(content);
+    }
+
+    @Override
+    public StubHttpResponse write(ByteBuffer buffer) {
+        return chunked().content(buffer);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public StubHttpResponse onWritable(Runnable callback) {
+        callback.run();
+        return this;
+    }
+
     @Override
     public StubHttpResponse status(int status) {
         this.status = status;
@@ -123,6 +151,24 @@ public class StubHttpResponse implements HttpResponse {
         return this;
     }
 
+    @Override
+    public StubHttpResponse sendFile(File file, long position, long count) {
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                byte[] region = new byte[(int) count];
+                in.seek(position);
+                in.readFully(region);
+                content(region);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return error(e);
+        }
+        return end();
+    }
+
     public byte[] contents() {
         return contents.toByteArray();
     }
@@ -44,6 +44,12 @@ public class EventSourceConnectionWrapper implements EventSourceConnection {
         return this;
     }
 
+    @Override
+    public EventSourceConnectionWrapper send(org.webbitserver.EncodedEventSourceMessage message) {
+        connection.send(message);
+        return this;
+    }
+
     @Override
     public EventSourceConnectionWrapper close() {
         connection.close();
@@ -76,6 +82,11 @@ public class EventSourceConnectionWrapper implements EventSourceConnection {
         return connection.handlerExecutor();
     }
 
+    @Override
+    public boolean isWritable() {
+        return connection.isWritable();
+    }
+
     @Override
     public void execute(Runnable command) {
         connection.execute(command);
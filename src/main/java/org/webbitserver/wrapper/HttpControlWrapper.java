@@ -2,6 +2,7 @@ package org.webbitserver.wrapper;
 
 import org.webbitserver.EventSourceConnection;
 import org.webbitserver.EventSourceHandler;
+import org.webbitserver.HttpBodyHandler;
 import org.webbitserver.HttpControl;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
@@ -76,6 +77,21 @@ public class HttpControlWrapper implements HttpControl {
         return control.handlerExecutor();
     }
 
+    @Override
+    public void readBody(HttpBodyHandler handler) {
+        control.readBody(handler);
+    }
+
+    @Override
+    public void pauseBody() {
+        control.pauseBody();
+    }
+
+    @Override
+    public void resumeBody() {
+        control.resumeBody();
+    }
+
     @Override
     public void execute(Runnable command) {
         control.execute(command);
@@ -3,7 +3,9 @@ package org.webbitserver.wrapper;
 import io.netty.handler.codec.http.Cookie;
 import org.webbitserver.HttpRequest;
 
+import java.io.InputStream;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -125,6 +127,16 @@ public class HttpRequestWrapper implements HttpRequest {
         return request.bodyAsBytes();
     }
 
+    @Override
+    public ByteBuffer bodyAsByteBuffer() {
+        return request.bodyAsByteBuffer();
+    }
+
+    @Override
+    public InputStream bodyAsStream() {
+        return request.bodyAsStream();
+    }
+
     @Override
     public Map<String, Object> data() {
         return request.data();
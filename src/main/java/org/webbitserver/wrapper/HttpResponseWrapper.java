@@ -3,6 +3,7 @@ package org.webbitserver.wrapper;
 import io.netty.handler.codec.http.Cookie;
 import org.webbitserver.HttpResponse;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Date;
@@ -50,6 +51,35 @@ public class HttpResponseWrapper implements HttpResponse {
         return this;
     }
 
+    @Override
+    public HttpResponseWrapper write(CharSequence content) {
+        response.write(content);
+        return this;
+    }
+
+    @Override
+    public HttpResponseWrapper write(byte[] content) {
+        response.write(content);
+        return this;
+    }
+
+    @Override
+    public HttpResponseWrapper write(ByteBuffer buffer) {
+        response.write(buffer);
+        return this;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return response.isWritable();
+    }
+
+    @Override
+    public HttpResponseWrapper onWritable(Runnable callback) {
+        response.onWritable(callback);
+        return this;
+    }
+
     @Override
     public HttpResponseWrapper status(int status) {
         response.status(status);
@@ -97,6 +127,12 @@ public class HttpResponseWrapper implements HttpResponse {
         return this;
     }
 
+    @Override
+    public HttpResponseWrapper sendFile(File file, long position, long count) {
+        response.sendFile(file, position, count);
+        return this;
+    }
+
     @Override
     public HttpResponseWrapper error(Throwable error) {
         response.error(error);
@@ -134,6 +134,11 @@ public class WebSocketConnectionWrapper implements WebSocketConnection {
         return connection.handlerExecutor();
     }
 
+    @Override
+    public boolean isWritable() {
+        return connection.isWritable();
+    }
+
     @Override
     public String version() {
         return connection.version();
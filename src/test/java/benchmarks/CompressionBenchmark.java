@@ -0,0 +1,123 @@
+package benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.webbitserver.netty.CompressionPolicy;
+import org.webbitserver.netty.ContentCodecs;
+import org.webbitserver.netty.HttpChunkContentCompressor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compression ratio and throughput of each response encoding HttpChunkContentCompressor can
+ * negotiate, on a JSON body typical of an API response.
+ * <p/>
+ * Brotli and zstd are only measured when their libraries are on the classpath.
+ * <pre>
+ * java -cp ... benchmarks.CompressionBenchmark [body bytes] [seconds]
+ * </pre>
+ */
+public class CompressionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 64 * 1024;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        byte[] body = json(size);
+
+        for (String encoding : new String[]{"gzip", "deflate", "br", "zstd"}) {
+            if (!isAvailable(encoding)) {
+                System.out.println(String.format("%-8s unavailable", encoding));
+                continue;
+            }
+            run(encoding, body, seconds);
+        }
+    }
+
+    private static boolean isAvailable(String encoding) {
+        for (ContentCodecs codec : ContentCodecs.values()) {
+            if (codec.encoding().equals(encoding)) {
+                return codec.isAvailable();
+            }
+        }
+        return true;
+    }
+
+    private static void run(String encoding, byte[] body, int seconds) throws Exception {
+        // warm up, then measure
+        compress(encoding, body, TimeUnit.SECONDS.toNanos(Math.max(1, seconds / 3)));
+        long start = System.nanoTime();
+        long[] result = compress(encoding, body, TimeUnit.SECONDS.toNanos(seconds));
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long responses = result[0];
+        long compressed = result[1];
+        System.out.println(String.format("%-8s ratio %.3f  %8.1f MB/s  %8.0f responses/s",
+                                         encoding,
+                                         compressed / (double) (responses * body.length),
+                                         responses * body.length / elapsed / 1e6,
+                                         responses / elapsed));
+    }
+
+    /**
+     * Compresses responses through the compressor for the given time, returning how many and their total
+     * compressed size.
+     */
+    private static long[] compress(String encoding, byte[] body, long nanos) {
+        CompressionPolicy policy = new CompressionPolicy();
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpChunkContentCompressor(policy));
+        long deadline = System.nanoTime() + nanos;
+        long responses = 0;
+        long compressed = 0;
+        while (System.nanoTime() < deadline) {
+            DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+            request.headers().set(HttpHeaders.Names.ACCEPT_ENCODING, encoding);
+            channel.writeInbound(request);
+            channel.readInbound();
+
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            response.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+            HttpHeaders.setContentLength(response, body.length);
+            channel.writeOutbound(response,
+                                  new DefaultHttpContent(Unpooled.wrappedBuffer(body)),
+                                  LastHttpContent.EMPTY_LAST_CONTENT);
+            for (Object msg = channel.readOutbound(); msg != null; msg = channel.readOutbound()) {
+                if (msg instanceof HttpContent) {
+                    ByteBuf content = ((HttpContent) msg).content();
+                    compressed += content.readableBytes();
+                    content.release();
+                }
+            }
+            responses++;
+        }
+        if (policy.compressedResponses() != responses) {
+            throw new IllegalStateException(encoding + " was not negotiated");
+        }
+        return new long[]{responses, compressed};
+    }
+
+    private static byte[] json(int size) {
+        Random random = new Random(1);
+        String[] words = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel"};
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; json.length() < size; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"id\":").append(i)
+                .append(",\"name\":\"").append(words[random.nextInt(words.length)]).append(random.nextInt(1000))
+                .append("\",\"active\":").append(random.nextBoolean())
+                .append(",\"score\":").append(random.nextInt(100000) / 100.0)
+                .append(",\"tags\":[\"").append(words[random.nextInt(words.length)]).append("\"]}");
+        }
+        return json.append("]").toString().getBytes();
+    }
+}
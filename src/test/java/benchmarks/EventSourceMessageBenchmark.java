@@ -0,0 +1,140 @@
+package benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.webbitserver.EncodedEventSourceMessage;
+import org.webbitserver.EventSourceMessage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the time and garbage it takes to turn an EventSourceMessage into the bytes sent to a client:
+ * <ul>
+ * <li>the way NettyEventSourceConnection used to, with a regex per field, {@code build()} and a copy into
+ * a UTF-8 buffer,</li>
+ * <li>with {@code build()} and the same copy,</li>
+ * <li>with {@code encode()} straight into a pooled buffer,</li>
+ * <li>and with an {@link EncodedEventSourceMessage} built once and sent to many connections.</li>
+ * </ul>
+ * Allocation is measured with the HotSpot per-thread allocation counter, where available.
+ * <pre>
+ * java -cp ... benchmarks.EventSourceMessageBenchmark [data lines] [seconds]
+ * </pre>
+ */
+public class EventSourceMessageBenchmark {
+
+    private static final Pattern START = Pattern.compile("^", Pattern.MULTILINE);
+    private static final ByteBufAllocator POOLED = PooledByteBufAllocator.DEFAULT;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            data.append(i == 0 ? "" : "\n")
+                .append("{\"symbol\":\"ACME\",\"bid\":")
+                .append(101.25 + i)
+                .append(",\"ask\":")
+                .append(101.5 + i)
+                .append(",\"venue\":\"Z\u00fcrich\"}");
+        }
+        final String payload = data.toString();
+        final EncodedEventSourceMessage encoded = message(payload, 42).encoded();
+        sanityCheck(payload, encoded);
+
+        System.out.println(encoded.size() + " byte messages");
+        run("regex build() + copy", new Encoder() {
+            @Override
+            public ByteBuf encode(long id) {
+                return Unpooled.copiedBuffer(regexBuild(payload, id), CharsetUtil.UTF_8);
+            }
+        }, seconds);
+        run("build() + copy", new Encoder() {
+            @Override
+            public ByteBuf encode(long id) {
+                return Unpooled.copiedBuffer(message(payload, id).build(), CharsetUtil.UTF_8);
+            }
+        }, seconds);
+        run("encode() pooled", new Encoder() {
+            @Override
+            public ByteBuf encode(long id) {
+                return message(payload, id).encode(POOLED);
+            }
+        }, seconds);
+        run("encoded() per send", new Encoder() {
+            @Override
+            public ByteBuf encode(long id) {
+                return encoded.content();
+            }
+        }, seconds);
+    }
+
+    private interface Encoder {
+        ByteBuf encode(long id);
+    }
+
+    private static EventSourceMessage message(String payload, long id) {
+        return new EventSourceMessage().event("quote").data(payload).id(id);
+    }
+
+    /**
+     * EventSourceMessage as it was, prefixing each line with a multiline regex.
+     */
+    private static String regexBuild(String payload, long id) {
+        StringBuilder message = new StringBuilder();
+        message.append("event: quote\n");
+        message.append(START.matcher(payload).replaceAll("data: ")).append("\n");
+        message.append("id: ").append(id).append("\n");
+        return message.toString() + "\n";
+    }
+
+    private static void run(String name, Encoder encoder, int seconds) {
+        // warm up, then measure
+        loop(encoder, Math.max(1, seconds / 3));
+        long allocatedBefore = allocatedBytes();
+        long messages = loop(encoder, seconds);
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.println(String.format("%-22s %8.0f ns/message %8s bytes allocated/message",
+                                         name,
+                                         seconds * 1e9 / messages,
+                                         allocatedBefore < 0 ? "n/a" : String.valueOf(allocated / messages)));
+    }
+
+    private static long loop(Encoder encoder, int seconds) {
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        long messages = 0;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 1024; i++) {
+                ByteBuf buffer = encoder.encode(messages + i);
+                sink += buffer.readableBytes();
+                buffer.release();
+            }
+            messages += 1024;
+        }
+        return messages;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void sanityCheck(String payload, EncodedEventSourceMessage encoded) {
+        String expected = regexBuild(payload, 42);
+        ByteBuf bytes = encoded.content();
+        if (!expected.equals(encoded.build()) || !expected.equals(bytes.toString(CharsetUtil.UTF_8))) {
+            throw new IllegalStateException("Encoders disagree");
+        }
+    }
+}
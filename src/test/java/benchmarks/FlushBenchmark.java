@@ -0,0 +1,152 @@
+package benchmarks;
+
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.handler.HttpToEventSourceHandler;
+import org.webbitserver.netty.FlushStrategy;
+import org.webbitserver.netty.NettyWebServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many small EventSource messages per second reach clients under each {@link FlushStrategy}.
+ * <p/>
+ * Each connection is sent a fixed number of messages, a burst of them per handler task, as a feed pushing
+ * updates would. Flushing each message costs a system call per message; the other strategies let a burst go out
+ * in one write.
+ * <pre>
+ * java -cp ... benchmarks.FlushBenchmark [clients] [messages per client] [burst]
+ * </pre>
+ */
+public class FlushBenchmark {
+
+    private static final int PORT = 9083;
+    private static final byte[] REQUEST =
+            "GET /events HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n".getBytes();
+    private static final String MESSAGE = new EventSourceMessage("tick 0123456789abcdef0123456789").build();
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+        int burst = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        FlushStrategy[] strategies = {
+                FlushStrategy.IMMEDIATE,
+                FlushStrategy.END_OF_TICK,
+                FlushStrategy.batch(32, 100, TimeUnit.MICROSECONDS),
+                FlushStrategy.batch(256, 1, TimeUnit.MILLISECONDS)
+        };
+        for (FlushStrategy strategy : strategies) {
+            // warm up, then measure
+            run(strategy, clients, messages / 4, burst);
+            double elapsed = run(strategy, clients, messages, burst);
+            System.out.println(String.format("%-28s %12.0f messages/s",
+                                             strategy, clients * (double) messages / elapsed));
+        }
+    }
+
+    /**
+     * @return seconds until every client had received all its messages
+     */
+    private static double run(FlushStrategy strategy, final int clients, final int messages, int burst)
+            throws Exception {
+        NettyWebServer server = new NettyWebServer(new InetSocketAddress(PORT), URI.create("http://localhost:" + PORT))
+                .flushStrategy(strategy);
+        server.add("/events", new HttpToEventSourceHandler(new Producer(messages, burst)));
+        server.start();
+        try {
+            final CountDownLatch done = new CountDownLatch(clients);
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            receive((long) messages * MESSAGE.length());
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+                thread.start();
+            }
+            done.await();
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void receive(long bytes) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), PORT);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(REQUEST);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            int matched = 0;
+            while (matched < 4) {
+                int b = in.read();
+                if (b == -1) {
+                    throw new IllegalStateException("connection closed");
+                }
+                matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+            }
+            byte[] buffer = new byte[64 * 1024];
+            for (long received = 0; received < bytes; ) {
+                int read = in.read(buffer);
+                if (read == -1) {
+                    throw new IllegalStateException("connection closed after " + received + " bytes");
+                }
+                received += read;
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Sends each connection its messages, a burst per task on the handler thread.
+     */
+    private static class Producer implements EventSourceHandler {
+        private final int messages;
+        private final int burst;
+
+        Producer(int messages, int burst) {
+            this.messages = messages;
+            this.burst = burst;
+        }
+
+        @Override
+        public void onOpen(final EventSourceConnection connection) throws Exception {
+            final EventSourceMessage message = new EventSourceMessage("tick 0123456789abcdef0123456789");
+            connection.execute(new Runnable() {
+                private int sent;
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < burst && sent < messages; i++, sent++) {
+                        connection.send(message);
+                    }
+                    if (sent < messages) {
+                        connection.handlerExecutor().execute(this);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onClose(EventSourceConnection connection) throws Exception {
+        }
+    }
+}
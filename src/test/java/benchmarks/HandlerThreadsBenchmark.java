@@ -0,0 +1,130 @@
+package benchmarks;
+
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.netty.NettyWebServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures requests per second through the NettyHttpChannelHandler path with a single I/O and handler
+ * thread versus one per available processor.
+ * <p/>
+ * Every request does a little CPU work in the handler, so the single threaded configuration saturates one core.
+ * <pre>
+ * java -cp ... benchmarks.HandlerThreadsBenchmark [clients] [seconds]
+ * </pre>
+ */
+public class HandlerThreadsBenchmark {
+
+    private static final int PORT = 9082;
+    private static final byte[] REQUEST =
+            "GET /bench HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        run("1 thread", 1, clients, seconds);
+        run(cores + " threads", cores, clients, seconds);
+    }
+
+    private static void run(String name, int threads, int clients, int seconds) throws Exception {
+        NettyWebServer server = new NettyWebServer(new InetSocketAddress(PORT), URI.create("http://localhost:" + PORT))
+                .ioWorkerThreads(threads)
+                .handlerThreads(threads);
+        server.add(new HashingHandler());
+        server.start();
+        try {
+            // warm up, then measure
+            load(clients, Math.max(1, seconds / 3));
+            long requests = load(clients, seconds);
+            System.out.println(String.format("%-12s %10.0f req/s", name, requests / (double) seconds));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long load(int clients, int seconds) throws Exception {
+        final AtomicLong completed = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Socket socket = new Socket(InetAddress.getLoopbackAddress(), PORT);
+                        socket.setTcpNoDelay(true);
+                        try {
+                            OutputStream out = socket.getOutputStream();
+                            InputStream in = socket.getInputStream();
+                            while (System.nanoTime() < deadline) {
+                                out.write(REQUEST);
+                                out.flush();
+                                readResponse(in);
+                                completed.incrementAndGet();
+                            }
+                        } finally {
+                            socket.close();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.start();
+        }
+        done.await();
+        return completed.get();
+    }
+
+    /**
+     * Reads one response, relying on the Content-Length header that NettyHttpResponse always sets.
+     */
+    private static void readResponse(InputStream in) throws Exception {
+        StringBuilder headers = new StringBuilder();
+        while (!(headers.length() >= 4 && headers.substring(headers.length() - 4).equals("\r\n\r\n"))) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IllegalStateException("connection closed");
+            }
+            headers.append((char) b);
+        }
+        String lower = headers.toString().toLowerCase();
+        int start = lower.indexOf("content-length:") + "content-length:".length();
+        int end = lower.indexOf("\r\n", start);
+        int length = Integer.parseInt(lower.substring(start, end).trim());
+        for (int i = 0; i < length; i++) {
+            in.read();
+        }
+    }
+
+    private static class HashingHandler implements HttpHandler {
+        @Override
+        public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                throws Exception
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = request.uri().getBytes();
+            for (int i = 0; i < 200; i++) {
+                hash = digest.digest(hash);
+            }
+            response.content(hash).end();
+        }
+    }
+}
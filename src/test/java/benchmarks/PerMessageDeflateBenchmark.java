@@ -0,0 +1,171 @@
+package benchmarks;
+
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.netty.NettyWebServer;
+import org.webbitserver.netty.PerMessageDeflate;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Random;
+
+/**
+ * Measures the bytes on the wire and the CPU time per WebSocket message with and without permessage-deflate,
+ * for a feed of small JSON updates.
+ * <p/>
+ * The CPU time is that of the whole process, client included, so only the differences between the rows are
+ * meaningful.
+ * <pre>
+ * java -cp ... benchmarks.PerMessageDeflateBenchmark [messages]
+ * </pre>
+ */
+public class PerMessageDeflateBenchmark {
+
+    private static final int PORT = 9084;
+    private static final int BURST = 16;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String[] updates = updates(1024);
+
+        Object[][] configurations = {
+                {"off", null},
+                {"context takeover", new PerMessageDeflate()},
+                {"no context takeover", new PerMessageDeflate().serverNoContextTakeover(true)},
+                {"context takeover, level 1", new PerMessageDeflate().compressionLevel(1)},
+        };
+        long plainBytes = 0;
+        for (String update : updates) {
+            plainBytes += update.length();
+        }
+        System.out.println(String.format("average message %d bytes", plainBytes / updates.length));
+        for (Object[] configuration : configurations) {
+            PerMessageDeflate policy = (PerMessageDeflate) configuration[1];
+            // warm up, then measure
+            run(policy, updates, messages / 4);
+            long cpuBefore = processCpuTime();
+            long bytes = run(policy, updates, messages);
+            long cpu = processCpuTime() - cpuBefore;
+            System.out.println(String.format("%-26s %8.1f bytes/message %8.2f us CPU/message",
+                                             configuration[0], bytes / (double) messages, cpu / 1e3 / messages));
+        }
+    }
+
+    /**
+     * @return bytes of WebSocket frames received
+     */
+    private static long run(PerMessageDeflate policy, String[] updates, int messages) throws Exception {
+        NettyWebServer server = new NettyWebServer(new InetSocketAddress(PORT), URI.create("http://localhost:" + PORT))
+                .perMessageDeflate(policy);
+        server.add("/feed", new Feed(updates, messages));
+        server.start();
+        try {
+            return receive(messages);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long receive(int messages) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), PORT);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /feed HTTP/1.1\r\n"
+                       + "Host: localhost:" + PORT + "\r\n"
+                       + "Origin: http://localhost:" + PORT + "\r\n"
+                       + "Upgrade: websocket\r\n"
+                       + "Connection: Upgrade\r\n"
+                       + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                       + "Sec-WebSocket-Version: 13\r\n"
+                       + "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"
+                       + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int matched = 0;
+            while (matched < 4) {
+                int b = in.read();
+                if (b == -1) {
+                    throw new IllegalStateException("connection closed");
+                }
+                matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+            }
+            long bytes = 0;
+            for (int i = 0; i < messages; i++) {
+                in.readUnsignedByte();
+                long length = in.readUnsignedByte();
+                bytes += 2;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                    bytes += 2;
+                } else if (length == 127) {
+                    length = in.readLong();
+                    bytes += 8;
+                }
+                in.skipBytes((int) length);
+                bytes += length;
+            }
+            return bytes;
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    private static String[] updates(int count) {
+        String[] symbols = {"ACME", "GLOBEX", "INITECH", "UMBRELLA", "HOOLI", "STARK"};
+        Random random = new Random(42);
+        String[] updates = new String[count];
+        for (int i = 0; i < count; i++) {
+            double bid = 50 + random.nextInt(10000) / 100.0;
+            updates[i] = "{\"seq\":" + i
+                    + ",\"symbol\":\"" + symbols[random.nextInt(symbols.length)] + "\""
+                    + ",\"bid\":" + bid
+                    + ",\"ask\":" + (bid + 0.25)
+                    + ",\"volume\":" + random.nextInt(1000000)
+                    + ",\"bidSize\":" + random.nextInt(5000)
+                    + ",\"askSize\":" + random.nextInt(5000)
+                    + ",\"exchange\":\"NYSE\",\"currency\":\"USD\",\"status\":\"open\""
+                    + ",\"timestamp\":\"2013-12-22T22:41:" + (10 + i % 50) + "." + random.nextInt(1000) + "Z\"}";
+        }
+        return updates;
+    }
+
+    /**
+     * Sends each connection its updates, a burst per task on the handler thread.
+     */
+    private static class Feed extends BaseWebSocketHandler {
+        private final String[] updates;
+        private final int messages;
+
+        Feed(String[] updates, int messages) {
+            this.updates = updates;
+            this.messages = messages;
+        }
+
+        @Override
+        public void onOpen(final WebSocketConnection connection) {
+            connection.execute(new Runnable() {
+                private int sent;
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < BURST && sent < messages; i++, sent++) {
+                        connection.send(updates[sent % updates.length]);
+                    }
+                    if (sent < messages) {
+                        connection.handlerExecutor().execute(this);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package benchmarks;
+
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.handler.PathMatchHandler;
+import org.webbitserver.handler.Router;
+import org.webbitserver.stub.StubHttpControl;
+import org.webbitserver.stub.StubHttpRequest;
+import org.webbitserver.stub.StubHttpResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how long it takes to find the handler for a request among a few hundred routes, with a chain of
+ * {@link PathMatchHandler}s (as NettyWebServer used to build) versus a {@link Router}.
+ * <pre>
+ * java -cp ... benchmarks.RouterBenchmark [routes] [seconds]
+ * </pre>
+ */
+public class RouterBenchmark {
+
+    private static final String[] RESOURCES = {"users", "posts", "comments", "tags", "photos", "albums"};
+
+    public static void main(String[] args) throws Exception {
+        int routes = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<String> paths = new ArrayList<>();
+        List<PathMatchHandler> chain = new ArrayList<>();
+        Router router = new Router();
+        for (int i = 0; paths.size() < routes; i++) {
+            String resource = RESOURCES[i % RESOURCES.length] + i;
+            paths.add("/api/" + resource);
+            paths.add("/api/" + resource + "/([^/]+)");
+            chain.add(new PathMatchHandler("/api/" + resource, new Found()));
+            chain.add(new PathMatchHandler("/api/" + resource + "/([^/]+)", new Found()));
+            router.add("/api/" + resource, new Found());
+            router.add("/api/" + resource + "/{id}", new Found());
+        }
+
+        Random random = new Random(1);
+        String[] uris = new String[1024];
+        for (int i = 0; i < uris.length; i++) {
+            String path = paths.get(random.nextInt(paths.size()));
+            uris[i] = path.replace("([^/]+)", String.valueOf(random.nextInt(1000))) + "?q=" + i;
+        }
+
+        final List<PathMatchHandler> handlers = chain;
+        run("PathMatchHandler chain", new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                new ChainControl(handlers, request, response).nextHandler();
+            }
+        }, uris, seconds);
+        run("Router", router, uris, seconds);
+        sanityCheck(router);
+    }
+
+    private static void run(String name, HttpHandler handler, String[] uris, int seconds) throws Exception {
+        // warm up, then measure
+        loop(handler, uris, Math.max(1, seconds / 3));
+        long lookups = loop(handler, uris, seconds);
+        System.out.println(String.format("%-24s %10.0f ns/lookup", name, seconds * 1e9 / lookups));
+    }
+
+    private static long loop(HttpHandler handler, String[] uris, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        long lookups = 0;
+        while (System.nanoTime() < deadline) {
+            for (String uri : uris) {
+                StubHttpRequest request = new StubHttpRequest(uri);
+                StubHttpResponse response = new StubHttpResponse();
+                handler.handleHttpRequest(request, response, new StubHttpControl(request, response));
+                if (response.status() != 204) {
+                    throw new IllegalStateException("No route for " + uri);
+                }
+            }
+            lookups += uris.length;
+        }
+        return lookups;
+    }
+
+    private static void sanityCheck(Router router) throws Exception {
+        StubHttpRequest request = new StubHttpRequest("/api/users0/42");
+        StubHttpResponse response = new StubHttpResponse();
+        router.handleHttpRequest(request, response, new StubHttpControl(request, response));
+        if (!"42".equals(Router.pathParam(request, "id"))) {
+            throw new IllegalStateException("Router did not extract the path parameter");
+        }
+    }
+
+    private static class Found implements HttpHandler {
+        @Override
+        public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+            response.status(204);
+        }
+    }
+
+    /**
+     * Walks the handler list the way NettyHttpControl does.
+     */
+    private static class ChainControl extends StubHttpControl {
+        private final List<PathMatchHandler> handlers;
+        private int next;
+
+        ChainControl(List<PathMatchHandler> handlers, HttpRequest request, HttpResponse response) {
+            super(request, response);
+            this.handlers = handlers;
+        }
+
+        @Override
+        public void nextHandler(HttpRequest request, HttpResponse response, HttpControl control) {
+            if (next < handlers.size()) {
+                try {
+                    handlers.get(next++).handleHttpRequest(request, response, this);
+                } catch (Exception e) {
+                    response.error(e);
+                }
+            } else {
+                response.status(404).end();
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.io.InputStream;
 import java.net.URLConnection;
 import java.util.Scanner;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.webbitserver.WebServers.createWebServer;
 import static org.webbitserver.testutil.HttpClient.httpGet;
@@ -30,11 +31,9 @@ public class ChunkedResponseTest {
                         try {
                             res.chunked();
                             nap();
-                            // TODO
-//                        res.write("chunk1");
+                            res.write("chunk1");
                             nap();
-                            // TODO
-//                        res.write("chunk2");
+                            res.write("chunk2");
                             nap();
                             res.end();
                         } catch (InterruptedException e) {
@@ -58,6 +57,21 @@ public class ChunkedResponseTest {
                    "chunked".equals(conn.getHeaderFields().get("Transfer-Encoding").get(0)));
     }
 
+    @Test
+    public void contentBeforeChunkingIsSentAsFirstChunk() throws Exception {
+        webServer.add("/chunked", new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest req, HttpResponse res, HttpControl control) {
+                res.content("first").write("second").content("third").end();
+            }
+        }).start();
+
+        URLConnection conn = httpGet(webServer, "/chunked");
+
+        assertEquals("firstsecondthird", stringify(conn.getInputStream()));
+        assertEquals("chunked", conn.getHeaderFields().get("Transfer-Encoding").get(0));
+    }
+
     private static String stringify(InputStream is) {
         Scanner s = new Scanner(is).useDelimiter("\\A");
         return s.hasNext() ? s.next() : "";
@@ -2,6 +2,9 @@ package org.webbitserver;
 
 import static org.junit.Assert.assertEquals;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
 import org.junit.Test;
 
 public class EventSourceMessageTest {
@@ -71,4 +74,52 @@ public class EventSourceMessageTest {
     public void buildsMessageWithNullId() throws Exception {
         assertEquals("id\n\n", new EventSourceMessage().id(null).build());
     }
+
+    @Test
+    public void splitsDataAtEveryKindOfLineBreak() throws Exception {
+        assertEquals("data: a\r\ndata: b\rdata: c\ndata: d\n\n",
+            new EventSourceMessage().data("a\r\nb\rc\nd").build());
+    }
+
+    @Test
+    public void startsNoLineAfterATrailingLineBreak() throws Exception {
+        assertEquals("data: a\n\n\n", new EventSourceMessage().data("a\n").build());
+        assertEquals("data: \n\n\n", new EventSourceMessage().data("\n").build());
+    }
+
+    @Test
+    public void encodesTheBuiltMessageAsUtf8() throws Exception {
+        EventSourceMessage message = new EventSourceMessage()
+            .event("pr\u00e9vu").data("\u20ac 5\n\ud83d\ude00 lone \ud83d").id(7);
+
+        ByteBuf encoded = message.encode(UnpooledByteBufAllocator.DEFAULT);
+        try {
+            assertEquals(CharsetUtil.UTF_8.encode(message.build()), encoded.nioBuffer());
+        } finally {
+            encoded.release();
+        }
+    }
+
+    @Test
+    public void encodedMessagesShareTheirBytes() throws Exception {
+        EncodedEventSourceMessage encoded = new EventSourceMessage("shared").encoded();
+
+        ByteBuf first = encoded.content();
+        first.release();
+        ByteBuf second = encoded.content();
+
+        assertEquals("data: shared\n\n", encoded.build());
+        assertEquals("data: shared\n\n", second.toString(CharsetUtil.UTF_8));
+        assertEquals(encoded.size(), second.readableBytes());
+    }
+
+    @Test
+    public void encodedMessagesDoNotChangeWithTheirSource() throws Exception {
+        EventSourceMessage message = new EventSourceMessage("done");
+        EncodedEventSourceMessage encoded = message.encoded();
+        message.data("more");
+
+        assertEquals("data: done\n\n", encoded.build());
+        assertEquals("data: done\n\n", encoded.content().toString(CharsetUtil.UTF_8));
+    }
 }
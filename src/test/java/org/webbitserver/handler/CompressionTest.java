@@ -6,11 +6,18 @@ import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
-import org.webbitserver.WebServer;
+import org.webbitserver.netty.CompressionPolicy;
+import org.webbitserver.netty.NettyWebServer;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.webbitserver.WebServers.createWebServer;
 import static org.webbitserver.testutil.HttpClient.contents;
 import static org.webbitserver.testutil.HttpClient.decompressContents;
@@ -19,11 +26,13 @@ import static org.webbitserver.testutil.HttpClient.httpPostCompressed;
 
 public class CompressionTest {
 
-    private final WebServer webServer = createWebServer(59504);
+    private final NettyWebServer webServer = (NettyWebServer) createWebServer(59504);
 
     private final String content =
             "Very short string for which there is no real point in compressing, but we're going to do it anyway.";
 
+    private final String longContent = repeat(content, 20);
+
     @After
     public void die() throws Exception {
         webServer.stop();
@@ -50,13 +59,85 @@ public class CompressionTest {
             public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
                     throws Exception
             {
-                response.content(content).end();
+                response.content(longContent).end();
             }
         }).start();
         HttpURLConnection urlConnection = (HttpURLConnection) httpGetAcceptCompressed(webServer, "/");
         String result = decompressContents(urlConnection);
-        assertEquals(content, result);
+        assertEquals(longContent, result);
         assertEquals("gzip", urlConnection.getContentEncoding());
+
+        CompressionPolicy policy = webServer.compressionPolicy();
+        assertEquals(1, policy.compressedResponses());
+        assertEquals(longContent.length(), policy.bytesBeforeCompression());
+        assertTrue(policy.bytesAfterCompression() > 0);
+        assertTrue(policy.compressionRatio() < 0.2);
+    }
+
+    @Test
+    public void shortResponseIsSentUncompressed() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                response.content(content).end();
+            }
+        }).start();
+        URLConnection urlConnection = httpGetAcceptCompressed(webServer, "/");
+        assertEquals(content, contents(urlConnection));
+        assertNull(urlConnection.getContentEncoding());
+        assertEquals(1, webServer.compressionPolicy().skippedResponses());
+        assertEquals(content.length(), webServer.compressionPolicy().skippedBytes());
+    }
+
+    @Test
+    public void onlyAllowedContentTypesAreCompressed() throws Exception {
+        webServer.compressionPolicy(new CompressionPolicy().minimumSize(0).mimeTypes("application/json", "text/*"))
+                .add(new HttpHandler() {
+                    @Override
+                    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                            throws Exception
+                    {
+                        response.header("Content-Type", request.queryParam("type")).content(content).end();
+                    }
+                }).start();
+        assertEquals("gzip", httpGetAcceptCompressed(webServer, "/?type=application/json").getContentEncoding());
+        assertEquals("gzip", httpGetAcceptCompressed(webServer, "/?type=text/css;charset=UTF-8").getContentEncoding());
+        URLConnection png = httpGetAcceptCompressed(webServer, "/?type=image/png");
+        assertEquals(content, contents(png));
+        assertNull(png.getContentEncoding());
+    }
+
+    @Test
+    public void responseAlreadyEncodedIsNotCompressedAgain() throws Exception {
+        final byte[] gzipped = gzip(longContent);
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                response.header("Content-Encoding", "gzip").content(gzipped).end();
+            }
+        }).start();
+        HttpURLConnection urlConnection = (HttpURLConnection) httpGetAcceptCompressed(webServer, "/");
+        assertEquals(longContent, decompressContents(urlConnection));
+        assertEquals(1, webServer.compressionPolicy().skippedResponses());
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            result.append(s);
+        }
+        return result.toString();
     }
 
+    private static byte[] gzip(String s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(s.getBytes("UTF-8"));
+        gzip.close();
+        return bytes.toByteArray();
+    }
 }
@@ -19,6 +19,7 @@ import java.util.concurrent.Executor;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -56,6 +57,25 @@ public class EmbeddedResourceHandlerTest {
         assertReturnedWithStatus(404, handle(request("/foo/bar")));
     }
 
+    @Test
+    public void answersConditionalRequestsForCachedResourcesWith304() throws Exception {
+        handler.cache(new MemoryResourceCache(1024 * 1024));
+
+        StubHttpResponse first = handle(request("/index.html"));
+        String etag = first.header("ETag");
+        String lastModified = first.header("Last-Modified");
+        assertReturnedWithStatus(200, first);
+        assertNotNull(etag);
+        assertNotNull(lastModified);
+
+        StubHttpResponse sameEtag = handle(request("/index.html").header("If-None-Match", etag));
+        assertReturnedWithStatus(304, sameEtag);
+        assertEquals(0, sameEtag.contents().length);
+        StubHttpResponse notModifiedSince = handle(request("/index.html").header("If-Modified-Since", lastModified));
+        assertReturnedWithStatus(304, notModifiedSince);
+        assertEquals(etag, handle(request("/")).header("ETag"));
+    }
+
     @Test
     public void listsDirectory() throws Exception {
         handler.enableDirectoryListing(true).welcomeFile("doesnotexist");
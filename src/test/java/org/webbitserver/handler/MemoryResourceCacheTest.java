@@ -0,0 +1,105 @@
+package org.webbitserver.handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MemoryResourceCacheTest {
+
+    @Test
+    public void returnsWhatWasPut() throws Exception {
+        MemoryResourceCache cache = new MemoryResourceCache(10000);
+        Resource resource = resource(100);
+        cache.put("/a", resource);
+        assertSame(resource, cache.get("/a"));
+        assertNull(cache.get("/b"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOnceFull() throws Exception {
+        MemoryResourceCache cache = new MemoryResourceCache(3000, 1000, MemoryResourceCache.Eviction.LRU);
+        cache.put("/a", resource(700));
+        cache.put("/b", resource(700));
+        cache.put("/c", resource(700));
+        cache.get("/a");
+        cache.put("/d", resource(700));
+
+        assertNotNull(cache.get("/a"));
+        assertNull(cache.get("/b"));
+        assertNotNull(cache.get("/c"));
+        assertNotNull(cache.get("/d"));
+    }
+
+    @Test
+    public void evictsLeastFrequentlyUsedOnceFull() throws Exception {
+        MemoryResourceCache cache = new MemoryResourceCache(3000, 1000, MemoryResourceCache.Eviction.LFU);
+        cache.put("/a", resource(700));
+        cache.put("/b", resource(700));
+        cache.put("/c", resource(700));
+        cache.get("/a");
+        cache.get("/a");
+        cache.get("/b");
+        cache.put("/d", resource(700));
+
+        assertNotNull(cache.get("/a"));
+        assertNotNull(cache.get("/b"));
+        assertNull(cache.get("/c"));
+        assertNotNull(cache.get("/d"));
+    }
+
+    @Test
+    public void agesHitCountsSoOncePopularResourcesCanBeEvicted() throws Exception {
+        MemoryResourceCache cache = new MemoryResourceCache(3000, 1000, MemoryResourceCache.Eviction.LFU);
+        cache.put("/a", resource(700));
+        cache.put("/b", resource(700));
+        cache.put("/c", resource(700));
+        get(cache, "/a", 40);
+        get(cache, "/b", 4);
+        // 48 hits across 3 resources halve the counts: a=20, b=2, c=2
+        get(cache, "/c", 4);
+        get(cache, "/b", 24);
+        get(cache, "/c", 20);
+        cache.put("/d", resource(700));
+
+        assertNull(cache.get("/a"));
+        assertNotNull(cache.get("/b"));
+        assertNotNull(cache.get("/c"));
+        assertNotNull(cache.get("/d"));
+    }
+
+    @Test
+    public void tracksSizeAcrossReplacementAndInvalidation() throws Exception {
+        MemoryResourceCache cache = new MemoryResourceCache(10000);
+        cache.put("/a", resource(100));
+        cache.put("/a", resource(200));
+        long one = cache.size();
+        cache.put("/b", resource(100));
+        cache.invalidate("/b");
+        assertEquals(one, cache.size());
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("/a"));
+    }
+
+    @Test
+    public void ignoresResourcesLargerThanTheWholeCache() throws Exception {
+        MemoryResourceCache cache = new MemoryResourceCache(1000, 1000, MemoryResourceCache.Eviction.LRU);
+        cache.put("/a", resource(100));
+        cache.put("/huge", resource(5000));
+        assertNull(cache.get("/huge"));
+        assertNotNull(cache.get("/a"));
+    }
+
+    private static void get(MemoryResourceCache cache, String path, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.get(path);
+        }
+    }
+
+    private static Resource resource(int size) {
+        return new Resource(new byte[size], "text/plain", null, 0);
+    }
+}
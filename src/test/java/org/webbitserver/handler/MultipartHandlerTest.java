@@ -0,0 +1,165 @@
+package org.webbitserver.handler;
+
+import io.netty.handler.codec.http.multipart.DiskFileUpload;
+import io.netty.handler.codec.http.multipart.FileUpload;
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.netty.NettyWebServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.webbitserver.testutil.HttpClient.contents;
+import static org.webbitserver.testutil.HttpClient.httpPost;
+
+public class MultipartHandlerTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String BOUNDARY = "----webbit-boundary";
+
+    private final NettyWebServer webServer = new NettyWebServer(59504);
+
+    @After
+    public void die() throws Exception {
+        webServer.stop();
+    }
+
+    @Test
+    public void keepsSmallFieldsInMemoryAndSpillsLargeFilesToDisk() throws Exception {
+        final File[] uploaded = new File[1];
+        webServer.streamRequestBodies("/upload")
+                .add("/upload", new MultipartHandler(new HttpHandler() {
+                    @Override
+                    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                            throws Exception {
+                        FileUpload photo = MultipartHandler.file(request, "photo");
+                        uploaded[0] = photo.getFile();
+                        response.content(MultipartHandler.field(request, "title")
+                                + " " + photo.getFilename()
+                                + " " + photo.length()
+                                + " " + (photo.isInMemory() ? "memory" : "disk")).end();
+                    }
+                }).spillThreshold(16 * 1024)).start();
+
+        byte[] photo = new byte[1024 * 1024];
+        for (int i = 0; i < photo.length; i++) {
+            photo[i] = (byte) i;
+        }
+        HttpURLConnection connection = multipartPost("/upload", "title", "Holiday", photo);
+
+        assertEquals("Holiday photo.jpg 1048576 disk", contents(connection));
+        for (int i = 0; i < 100 && uploaded[0].exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse("temporary file deleted once response ended", uploaded[0].exists());
+    }
+
+    @Test
+    public void passesOtherRequestsThroughWithoutParts() throws Exception {
+        webServer.add(new MultipartHandler(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception {
+                response.content(MultipartHandler.parts(request).size() + " " + request.postParam("a")).end();
+            }
+        })).start();
+        assertEquals("0 b", contents(httpPost(webServer, "/", "a=b")));
+    }
+
+    @Test
+    public void rejectsMalformedBodies() throws Exception {
+        webServer.add(new MultipartHandler(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception {
+                response.content("unexpected").end();
+            }
+        })).start();
+        URL url = new URL(webServer.getUri().toURL(), "/");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "multipart/form-data");
+        connection.setDoOutput(true);
+        connection.getOutputStream().write(("--" + BOUNDARY + "--\r\n").getBytes(UTF8));
+        assertEquals(400, connection.getResponseCode());
+    }
+
+    @Test
+    public void deletesTemporaryFilesOfUploadsCutShort() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), getClass().getName() + "-" + Math.random());
+        assertTrue(dir.mkdirs());
+        String baseDirectory = DiskFileUpload.baseDirectory;
+        DiskFileUpload.baseDirectory = dir.getPath();
+        try {
+            webServer.streamRequestBodies("/upload")
+                    .add("/upload", new MultipartHandler(new HttpHandler() {
+                        @Override
+                        public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                                throws Exception {
+                            response.content("unexpected").end();
+                        }
+                    }).spillThreshold(1024)).start();
+
+            Socket client = new Socket(InetAddress.getLocalHost(), webServer.getUri().getPort());
+            OutputStream out = client.getOutputStream();
+            out.write(("POST /upload HTTP/1.1\r\n"
+                    + "Host: localhost\r\n"
+                    + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                    + "Content-Length: 1000000\r\n\r\n"
+                    + "--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"photo\"; filename=\"photo.jpg\"\r\n"
+                    + "Content-Type: image/jpeg\r\n\r\n").getBytes(UTF8));
+            out.write(new byte[64 * 1024]);
+            out.flush();
+            for (int i = 0; i < 500 && dir.list().length == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("upload spilled to disk", 1, dir.list().length);
+
+            client.close();
+            for (int i = 0; i < 500 && dir.list().length > 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("temporary file deleted once the connection closed", 0, dir.list().length);
+        } finally {
+            DiskFileUpload.baseDirectory = baseDirectory;
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private HttpURLConnection multipartPost(String path, String field, String value, byte[] file) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + field + "\"\r\n\r\n"
+                + value + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"photo\"; filename=\"photo.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(UTF8));
+        body.write(file);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(UTF8));
+
+        URL url = new URL(webServer.getUri().toURL(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.size());
+        connection.getOutputStream().write(body.toByteArray());
+        return connection;
+    }
+}
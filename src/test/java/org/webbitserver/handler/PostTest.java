@@ -2,6 +2,7 @@ package org.webbitserver.handler;
 
 import org.junit.After;
 import org.junit.Test;
+import org.webbitserver.HttpBodyHandler;
 import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
@@ -10,6 +11,8 @@ import org.webbitserver.netty.NettyWebServer;
 
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -137,4 +140,87 @@ public class PostTest {
         assertEquals(200, httpURLConnection.getResponseCode());
         assertEquals("length:65537", result);
     }
+
+    @Test
+    public void streams_bodies_longer_than_max_content_length_on_streaming_paths() throws Exception {
+        webServer.streamRequestBodies("/upload/.*");
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, final HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                control.readBody(new HttpBodyHandler() {
+                    private int length;
+
+                    @Override
+                    public void onContent(ByteBuffer content) {
+                        length += content.remaining();
+                    }
+
+                    @Override
+                    public void onEnd() {
+                        response.content("length:" + length).end();
+                    }
+
+                    @Override
+                    public void onAbort() {
+                    }
+                });
+            }
+        }).start();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1000000; i++) {
+            body.append(".");
+        }
+        URLConnection urlConnection = httpPost(webServer, "/upload/big", body.toString());
+        assertEquals("length:1000000", contents(urlConnection));
+    }
+
+    @Test
+    public void read_body_delivers_aggregated_body_in_one_go() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, final HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                final StringBuilder body = new StringBuilder();
+                control.readBody(new HttpBodyHandler() {
+                    @Override
+                    public void onContent(ByteBuffer content) {
+                        body.append(Charset.forName("UTF8").decode(content));
+                    }
+
+                    @Override
+                    public void onEnd() {
+                        response.content("Body = {" + body + "}").end();
+                    }
+
+                    @Override
+                    public void onAbort() {
+                    }
+                });
+            }
+        }).start();
+        String result = contents(httpPost(webServer, "/", "hello world"));
+        assertEquals("Body = {hello world}", result);
+    }
+
+    @Test
+    public void unread_streaming_body_is_discarded_once_response_ends() throws Exception {
+        webServer.streamRequestBodies("/upload/.*");
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                response.content("ignored " + request.uri()).end();
+            }
+        }).start();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            body.append(".");
+        }
+        assertEquals("ignored /upload/1", contents(httpPost(webServer, "/upload/1", body.toString())));
+        assertEquals("ignored /upload/2", contents(httpPost(webServer, "/upload/2", body.toString())));
+    }
 }
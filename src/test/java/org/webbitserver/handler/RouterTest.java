@@ -0,0 +1,231 @@
+package org.webbitserver.handler;
+
+import org.junit.Test;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.stub.StubHttpControl;
+import org.webbitserver.stub.StubHttpRequest;
+import org.webbitserver.stub.StubHttpResponse;
+import org.webbitserver.wrapper.HttpControlWrapper;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class RouterTest {
+    @Test
+    public void matchesLiteralPaths() throws Exception {
+        Router router = new Router()
+                .add("/hello", new Respond("hello"))
+                .add("/hello/world", new Respond("world"));
+
+        assertEquals("hello", handle(router, "/hello"));
+        assertEquals("world", handle(router, "/hello/world?x=1"));
+        assertEquals("world", handle(router, "http://host.com:8080/hello/world"));
+        assertEquals("404", handle(router, "/hello/there"));
+    }
+
+    @Test
+    public void extractsPathParameters() throws Exception {
+        Router router = new Router()
+                .add("/users/me", new Respond("me"))
+                .add("/users/{id}/posts/{post}", new RespondWithParams("id", "post"));
+
+        assertEquals("me", handle(router, "/users/me"));
+        assertEquals("42,7", handle(router, "/users/42/posts/7"));
+        assertEquals("me,7", handle(router, "/users/me/posts/7"));
+        assertEquals("404", handle(router, "/users//posts/7"));
+    }
+
+    @Test
+    public void matchesTheRestOfThePathWithWildcard() throws Exception {
+        Router router = new Router().add("/static/*", new RespondWithParams("*"));
+
+        assertEquals("css/site.css", handle(router, "/static/css/site.css"));
+        assertEquals("", handle(router, "/static/"));
+        assertEquals("404", handle(router, "/stat"));
+    }
+
+    @Test
+    public void fallsBackToRegularExpressions() throws Exception {
+        Router router = new Router()
+                .add(Pattern.compile("/hello/.*"), new Respond("regex"))
+                .add("/files/{name}.txt", new RespondWithParams("name"));
+
+        assertEquals("regex", handle(router, "/hello/world"));
+        assertEquals("notes", handle(router, "/files/notes.txt"));
+        assertEquals("404", handle(router, "/files/notes.html"));
+    }
+
+    @Test
+    public void matchesDecodedPath() throws Exception {
+        Router router = new Router().add("/a b/{name}", new RespondWithParams("name"));
+
+        assertEquals("c d", handle(router, "/a%20b/c%20d"));
+    }
+
+    @Test
+    public void triesMatchingRoutesInTheOrderTheyWereAdded() throws Exception {
+        Router router = new Router()
+                .add(Pattern.compile("/a/.*"), new Respond("regex"))
+                .add("/a/b", new Respond("literal"))
+                .add("/x/{y}", new Respond("param"))
+                .add("/x/y", new Respond("literal"));
+
+        assertEquals("regex", handle(router, "/a/b"));
+        assertEquals("param", handle(router, "/x/y"));
+    }
+
+    @Test
+    public void passesToNextMatchingRouteAndThenToNextHandler() throws Exception {
+        Router router = new Router()
+                .add("/a", new Pass())
+                .add("/b", new Respond("b"))
+                .add("/{any}", new Pass())
+                .add("/a", new Respond("a"));
+
+        assertEquals("a", handle(router, "/a"));
+        assertEquals("b", handle(router, "/b"));
+        assertEquals("404", handle(router, "/c"));
+    }
+
+    @Test
+    public void rematchesPathChangedByEarlierRoute() throws Exception {
+        Router router = new Router()
+                .add("/tomato", new Respond("before"))
+                .add("/tomayto", new AliasHandler("/tomato"))
+                .add("/tomato", new Respond("after"));
+
+        assertEquals("after", handle(router, "/tomayto"));
+    }
+
+    @Test
+    public void dispatchesOnMethodAndPath() throws Exception {
+        Router router = new Router()
+                .add("GET", "/users/{id}", new Respond("get"))
+                .add("delete", "/users/{id}", new Respond("delete"))
+                .add("/users/{id}", new Respond("any"));
+
+        assertEquals("get", handle(router, "GET", "/users/1").contentsString());
+        assertEquals("delete", handle(router, "DELETE", "/users/1").contentsString());
+        assertEquals("any", handle(router, "PUT", "/users/1").contentsString());
+    }
+
+    @Test
+    public void answersOtherMethodsWithMethodNotAllowed() throws Exception {
+        Router router = new Router()
+                .add("POST", "/users", new Respond("post"))
+                .add("GET", "/users", new Respond("get"))
+                .add("GET", "/users/{id}", new Respond("get"));
+
+        StubHttpResponse response = handle(router, "PUT", "/users");
+        assertEquals(405, response.status());
+        assertEquals("GET, HEAD, OPTIONS, POST", response.header("Allow"));
+        assertEquals("", response.contentsString());
+
+        response = handle(router, "DELETE", "/nobody");
+        assertEquals(404, response.status());
+    }
+
+    @Test
+    public void routesHeadRequestsToGetRoutes() throws Exception {
+        Router router = new Router()
+                .add("GET", "/page", new Respond("get"))
+                .add("POST", "/form", new Respond("post"));
+
+        assertEquals("get", handle(router, "HEAD", "/page").contentsString());
+        StubHttpResponse response = handle(router, "HEAD", "/form");
+        assertEquals(405, response.status());
+        assertEquals("OPTIONS, POST", response.header("Allow"));
+    }
+
+    @Test
+    public void answersOptionsWithAllowedMethods() throws Exception {
+        Router router = new Router()
+                .add("GET", "/a/{b}", new Respond("get"))
+                .add("PUT", "/a/c", new Respond("put"))
+                .add("OPTIONS", "/x", new Respond("options"));
+
+        StubHttpResponse response = handle(router, "OPTIONS", "/a/c");
+        assertEquals(200, response.status());
+        assertEquals("GET, HEAD, OPTIONS, PUT", response.header("Allow"));
+        assertEquals("options", handle(router, "OPTIONS", "/x").contentsString());
+    }
+
+    @Test
+    public void passesTheControlAHandlerGivesOnToLaterRoutes() throws Exception {
+        Router router = new Router()
+                .add("/x", new HttpHandler() {
+                    @Override
+                    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+                        control.nextHandler(request, response, new MarkedControl(control));
+                    }
+                })
+                .add("/x", new Pass())
+                .add("/x", new HttpHandler() {
+                    @Override
+                    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+                        response.content(control instanceof MarkedControl ? "marked" : "unmarked").end();
+                    }
+                });
+
+        assertEquals("marked", handle(router, "/x"));
+    }
+
+    private static String handle(Router router, String uri) throws Exception {
+        StubHttpResponse response = handle(router, "GET", uri);
+        return response.status() == 404 ? "404" : response.contentsString();
+    }
+
+    private static StubHttpResponse handle(Router router, String method, String uri) throws Exception {
+        StubHttpRequest request = new StubHttpRequest(uri).method(method);
+        StubHttpResponse response = new StubHttpResponse();
+        router.handleHttpRequest(request, response, new StubHttpControl(request, response));
+        return response;
+    }
+
+    private static class Respond implements HttpHandler {
+        private final String body;
+
+        Respond(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+            response.content(body).end();
+        }
+    }
+
+    private static class RespondWithParams implements HttpHandler {
+        private final String[] names;
+
+        RespondWithParams(String... names) {
+            this.names = names;
+        }
+
+        @Override
+        public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+            StringBuilder body = new StringBuilder();
+            for (String name : names) {
+                body.append(body.length() == 0 ? "" : ",").append(Router.pathParam(request, name));
+            }
+            response.content(body.toString()).end();
+        }
+    }
+
+    private static class MarkedControl extends HttpControlWrapper {
+        MarkedControl(HttpControl control) {
+            super(control);
+        }
+    }
+
+    private static class Pass implements HttpHandler {
+        @Override
+        public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+            control.nextHandler();
+        }
+    }
+}
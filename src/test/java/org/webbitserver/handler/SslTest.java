@@ -8,6 +8,8 @@ import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.InputStream;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
@@ -15,6 +17,7 @@ import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.webbitserver.WebServers.createWebServer;
 import static org.webbitserver.testutil.HttpClient.contents;
 import static org.webbitserver.testutil.HttpClient.httpsGet;
@@ -41,6 +44,36 @@ public class SslTest {
         }
     }
 
+    @Test
+    public void sendsStaticFilesOverSsl() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), getClass().getName() + "-" + Math.random());
+        assertTrue(dir.mkdirs());
+        File file = new File(dir, "big.txt");
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            big.append(i % 10);
+        }
+        FileWriter writer = new FileWriter(file);
+        writer.write(big.toString());
+        writer.close();
+
+        InputStream keystore = getClass().getResourceAsStream("/ssl/keystore");
+        WebServer webServer = createWebServer(10443)
+                .setupSsl(keystore, "webbit")
+                .add(new StaticFileHandler(dir));
+
+        keystore.close();
+        webServer.start();
+
+        try {
+            assertEquals(big.toString(), contents(httpsGet(webServer, "/big.txt")));
+        } finally {
+            webServer.stop();
+            file.delete();
+            dir.delete();
+        }
+    }
+
     @BeforeClass
     public static void disableCertValidationSetUp() throws NoSuchAlgorithmException, KeyManagementException {
         // Create a trust manager that does not validate certificate chains
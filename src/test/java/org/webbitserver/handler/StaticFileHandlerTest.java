@@ -4,18 +4,25 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.webbitserver.WebServer;
+import org.webbitserver.netty.CompressedResponseCache;
+import org.webbitserver.netty.CompressionPolicy;
+import org.webbitserver.netty.NettyWebServer;
 import org.webbitserver.stub.StubHttpControl;
 import org.webbitserver.stub.StubHttpRequest;
 import org.webbitserver.stub.StubHttpResponse;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.net.URLConnection;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.Assert.assertEquals;
@@ -24,7 +31,9 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.webbitserver.WebServers.createWebServer;
 import static org.webbitserver.testutil.HttpClient.contents;
+import static org.webbitserver.testutil.HttpClient.decompressContents;
 import static org.webbitserver.testutil.HttpClient.httpGet;
+import static org.webbitserver.testutil.HttpClient.httpGetAcceptCompressed;
 
 public class StaticFileHandlerTest {
 
@@ -113,6 +122,29 @@ public class StaticFileHandlerTest {
         assertEquals("bytes *" + "/" + contents.length(), response.header("Content-Range"));
     }
 
+    @Test
+    public void shouldReturnInvalidRangeIfStartingAtEndOfContent() throws Exception {
+        String contents = "the yellow fox jumped over the blue log";
+        writeFile("some_file", contents);
+        StubHttpRequest request = request("/some_file");
+        request.header("Range", "bytes=" + contents.length() + "-");
+        StubHttpResponse response = handle(request);
+        assertReturnedWithStatus(416, response);
+        assertEquals("bytes *" + "/" + contents.length(), response.header("Content-Range"));
+    }
+
+    @Test
+    public void shouldServeWholeContentForSuffixRangeLongerThanContent() throws Exception {
+        String contents = "the yellow fox jumped over the blue log";
+        writeFile("some_file", contents);
+        StubHttpRequest request = request("/some_file");
+        request.header("Range", "bytes=-1000");
+        StubHttpResponse response = handle(request);
+        assertReturnedWithStatus(206, response);
+        assertEquals("bytes 0-" + (contents.length() - 1) + "/" + contents.length(), response.header("Content-Range"));
+        assertEquals(contents, response.contentsString());
+    }
+
     @Test
     public void shouldServesWelcomePagesForDirectories() throws Exception {
         assertReturnedWithStatus(404, handle(request("/")));
@@ -257,6 +289,101 @@ public class StaticFileHandlerTest {
         assertEquals(null, handle(request("x.")).header("Content-Type"));
     }
 
+    @Test
+    public void shouldServeCachedResourcesWithoutGoingBackToDisk() throws Exception {
+        final AtomicInteger ioTasks = new AtomicInteger();
+        handler = new StaticFileHandler(dir, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                ioTasks.incrementAndGet();
+                command.run();
+            }
+        });
+        handler.cache(new MemoryResourceCache(1024 * 1024));
+        writeFile("index.html", "Hello world");
+
+        assertReturnedWithStatusAndContainsContent(200, "Hello world", handle(request("/index.html")));
+        new File(dir, "index.html").delete();
+        assertReturnedWithStatusAndContainsContent(200, "Hello world", handle(request("/index.html?x=y")));
+        assertEquals(1, ioTasks.get());
+
+        StubHttpResponse notModified = handleWithHeader(request("/index.html"), "If-None-Match",
+                                                        handle(request("/index.html")).header("ETag"));
+        assertEquals(304, notModified.status());
+        assertEquals(0, notModified.contents().length);
+    }
+
+    @Test
+    public void shouldPickUpChangedFilesWhenWatchingForChanges() throws Exception {
+        handler.cache(new MemoryResourceCache(1024 * 1024));
+        mkdir("a");
+        writeFile("a/index.html", "before");
+        writeFile("a/other.txt", "unchanged");
+        handler.watchForChanges();
+        try {
+            assertReturnedWithStatusAndContainsContent(200, "before", handle(request("/a/")));
+            assertReturnedWithStatusAndContainsContent(200, "before", handle(request("/a/index.html")));
+            assertReturnedWithStatusAndContainsContent(200, "unchanged", handle(request("/a/other.txt")));
+
+            writeFile("a/index.html", "after");
+            long deadline = System.currentTimeMillis() + 30000;
+            while (!handle(request("/a/index.html")).contentsString().equals("after")
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertReturnedWithStatusAndContainsContent(200, "after", handle(request("/a/index.html")));
+            assertReturnedWithStatusAndContainsContent(200, "after", handle(request("/a/")));
+        } finally {
+            handler.stopWatchingForChanges();
+        }
+    }
+
+    @Test
+    public void shouldServePrecompressedVariantsTheRequestAccepts() throws Exception {
+        writeFile("app.js", "plain");
+        writeFile("app.js.gz", "gzipped");
+        writeFile("app.js.br", "brotli");
+
+        StubHttpResponse plain = handle(request("/app.js"));
+        assertEquals("plain", plain.contentsString());
+        assertNull(plain.header("Content-Encoding"));
+        assertEquals("Accept-Encoding", plain.header("Vary"));
+
+        StubHttpResponse gzipped = handleWithHeader(request("/app.js"), "Accept-Encoding", "gzip, deflate");
+        assertEquals("gzipped", gzipped.contentsString());
+        assertEquals("gzip", gzipped.header("Content-Encoding"));
+        assertEquals("Accept-Encoding", gzipped.header("Vary"));
+
+        StubHttpResponse brotli = handleWithHeader(request("/app.js"), "Accept-Encoding", "gzip;q=0.5, br");
+        assertEquals("brotli", brotli.contentsString());
+        assertEquals("br", brotli.header("Content-Encoding"));
+
+        assertEquals("gzipped",
+                     handleWithHeader(request("/app.js"), "Accept-Encoding", "br;q=0, *").contentsString());
+        assertTrue(!plain.header("ETag").equals(gzipped.header("ETag")));
+        assertTrue(!gzipped.header("ETag").equals(brotli.header("ETag")));
+    }
+
+    @Test
+    public void shouldSendPrecompressedVariantsPastTheDynamicCompressor() throws Exception {
+        writeFile("app.css", "body { color: red }");
+        GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(new File(dir, "app.css.gz")));
+        gzip.write("body { color: blue }".getBytes("UTF-8"));
+        gzip.close();
+
+        WebServer webServer = createWebServer(59504)
+                .add(handler);
+        webServer
+                .start();
+        try {
+            URLConnection connection = httpGetAcceptCompressed(webServer, "/app.css");
+            assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+            assertEquals("body { color: blue }", decompressContents(connection));
+        } finally {
+            webServer.stop();
+        }
+    }
+
     @Test
     public void shouldNotAllowAccessToFilesOutsideTheRoot() throws Exception {
         assertReturnedWithStatus(404, handle(request("../../etc/passwd")));
@@ -286,6 +413,106 @@ public class StaticFileHandlerTest {
         }
     }
 
+    @Test
+    public void shouldSendLargeFilesAndRangesInRealServer() throws Exception {
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            big.append(i % 10);
+        }
+        writeFile("big.txt", big.toString());
+
+        WebServer webServer = createWebServer(59504)
+                .add(handler);
+        webServer
+                .start();
+        try {
+            URLConnection whole = httpGet(webServer, "/big.txt");
+            assertEquals(null, whole.getHeaderField("Content-Encoding"));
+            assertEquals(big.toString(), contents(whole));
+
+            URLConnection range = httpGetAcceptCompressed(webServer, "/big.txt");
+            range.setRequestProperty("Range", "bytes=12345-12354");
+            assertEquals(null, range.getHeaderField("Content-Encoding"));
+            assertEquals("bytes 12345-12354/100000", range.getHeaderField("Content-Range"));
+            assertEquals("5678901234", contents(range));
+        } finally {
+            webServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldCompressTextFilesInRealServer() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        writeFile("log.txt", text.toString());
+
+        WebServer webServer = createWebServer(59504)
+                .add(handler);
+        webServer
+                .start();
+        try {
+            URLConnection connection = httpGetAcceptCompressed(webServer, "/log.txt");
+            assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+            assertEquals(text.toString(), decompressContents(connection));
+        } finally {
+            webServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldSendIncompressibleFilesUncompressedInRealServer() throws Exception {
+        StringBuilder bytes = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            bytes.append(i % 10);
+        }
+        writeFile("archive.zip", bytes.toString());
+
+        WebServer webServer = createWebServer(59504)
+                .add(handler);
+        webServer
+                .start();
+        try {
+            URLConnection connection = httpGetAcceptCompressed(webServer, "/archive.zip");
+            assertEquals(null, connection.getHeaderField("Content-Encoding"));
+            assertEquals(bytes.toString(), contents(connection));
+        } finally {
+            webServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldNotMixUpCachedCompressedFilesWithTheSameETagInRealServer() throws Exception {
+        StringBuilder a = new StringBuilder();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            a.append("aaaa ").append(i % 10).append('\n');
+            b.append("bbbb ").append(i % 10).append('\n');
+        }
+        writeFile("a.txt", a.toString());
+        writeFile("b.txt", b.toString());
+        // Same length and modification time, so StaticFileHandler gives both the same ETag.
+        long lastModified = System.currentTimeMillis() / 1000 * 1000 - 60000;
+        assertTrue(new File(dir, "a.txt").setLastModified(lastModified));
+        assertTrue(new File(dir, "b.txt").setLastModified(lastModified));
+
+        NettyWebServer webServer = (NettyWebServer) createWebServer(59504)
+                .add(handler);
+        webServer.compressionPolicy(new CompressionPolicy().cache(new CompressedResponseCache(1024 * 1024)));
+        webServer
+                .start();
+        try {
+            URLConnection first = httpGetAcceptCompressed(webServer, "/a.txt");
+            URLConnection second = httpGetAcceptCompressed(webServer, "/b.txt");
+            assertEquals(first.getHeaderField("ETag"), second.getHeaderField("ETag"));
+            assertEquals(a.toString(), decompressContents(first));
+            assertEquals(b.toString(), decompressContents(second));
+        } finally {
+            webServer.stop();
+        }
+    }
+
     // --- Test helpers
 
     /**
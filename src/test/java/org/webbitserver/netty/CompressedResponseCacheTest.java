@@ -0,0 +1,43 @@
+package org.webbitserver.netty;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CompressedResponseCacheTest {
+    @Test
+    public void evictsLeastRecentlyUsedEntriesOnceFull() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(3 * (128 + 100));
+        cache.put("a gzip", new byte[100]);
+        cache.put("b gzip", new byte[100]);
+        cache.put("c gzip", new byte[100]);
+        cache.get("a gzip");
+        cache.put("d gzip", new byte[100]);
+
+        assertNull(cache.get("b gzip"));
+        assertArrayEquals(new byte[100], cache.get("a gzip"));
+        assertEquals(3 * (128 + 100), cache.size());
+    }
+
+    @Test
+    public void replacesEntriesWithTheSameKey() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(1024);
+        cache.put("a gzip", new byte[100]);
+        cache.put("a gzip", new byte[10]);
+
+        assertEquals(10, cache.get("a gzip").length);
+        assertEquals(128 + 10, cache.size());
+    }
+
+    @Test
+    public void ignoresEntriesLargerThanTheCache() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(1024);
+        cache.put("a gzip", new byte[1024]);
+
+        assertNull(cache.get("a gzip"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.misses());
+    }
+}
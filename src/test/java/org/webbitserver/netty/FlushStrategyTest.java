@@ -0,0 +1,82 @@
+package org.webbitserver.netty;
+
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.webbitserver.testutil.EmbeddedWebSocket.webSocketConnection;
+
+public class FlushStrategyTest {
+
+    @Test
+    public void immediateFlushesEveryMessage() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelHandlerAdapter());
+        NettyWebSocketConnection connection = webSocketConnection(channel, FlushStrategy.IMMEDIATE);
+
+        connection.send("one");
+        assertEquals(1, channel.outboundMessages().size());
+        connection.send("two");
+        assertEquals(2, channel.outboundMessages().size());
+    }
+
+    @Test
+    public void endOfTickFlushesOnceTheCurrentTaskIsDone() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelHandlerAdapter());
+        NettyWebSocketConnection connection = webSocketConnection(channel, FlushStrategy.END_OF_TICK);
+
+        connection.send("one").send("two").send("three");
+        assertEquals(0, channel.outboundMessages().size());
+        channel.runPendingTasks();
+        assertEquals(3, channel.outboundMessages().size());
+    }
+
+    @Test
+    public void batchFlushesEveryNMessagesOrAfterTheDelay() throws Exception {
+        EventExecutorGroup handlerThread = new DefaultEventExecutorGroup(1);
+        try {
+            EmbeddedChannel channel = new EmbeddedChannel();
+            channel.pipeline().addFirst(handlerThread, "handler", new ChannelHandlerAdapter());
+            final NettyWebSocketConnection connection =
+                    webSocketConnection(channel, FlushStrategy.batch(2, 500, TimeUnit.MILLISECONDS));
+
+            connection.execute(new Runnable() {
+                @Override
+                public void run() {
+                    connection.send("one").send("two").send("three");
+                }
+            });
+            awaitOutbound(channel, 2);
+            assertEquals(2, channel.outboundMessages().size());
+            awaitOutbound(channel, 3);
+            assertEquals(3, channel.outboundMessages().size());
+        } finally {
+            handlerThread.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void changingStrategyFlushesWaitingMessages() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelHandlerAdapter());
+        NettyWebSocketConnection connection = webSocketConnection(channel, FlushStrategy.END_OF_TICK);
+
+        connection.send("one");
+        connection.flushStrategy(FlushStrategy.IMMEDIATE);
+        assertEquals(1, channel.outboundMessages().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchNeedsABoundOnTheDelay() throws Exception {
+        FlushStrategy.batch(10, 0, TimeUnit.MICROSECONDS);
+    }
+
+    private static void awaitOutbound(EmbeddedChannel channel, int count) throws InterruptedException {
+        for (int i = 0; i < 200 && channel.outboundMessages().size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HttpChunkContentCompressorTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final CompressionPolicy policy = new CompressionPolicy().minimumSize(0);
+
+    @Test
+    public void negotiatesEncodingWithHighestQuality() throws Exception {
+        assertEquals("gzip", policy.negotiate("gzip, deflate"));
+        assertEquals("deflate", policy.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("deflate", policy.negotiate("gzip;q=0, *;q=0.2"));
+        assertEquals("gzip", policy.negotiate("x-gzip"));
+        assertNull(policy.negotiate("identity"));
+        assertNull(policy.negotiate("gzip;q=0"));
+        assertNull(policy.negotiate(null));
+    }
+
+    @Test
+    public void prefersCodecsOnTiesAndIgnoresUnavailableOnes() throws Exception {
+        policy.codecs(new FakeCodec("br", false), new XDeflate());
+        assertEquals("x-deflate", policy.negotiate("br, gzip, x-deflate"));
+        assertEquals("gzip", policy.negotiate("br, gzip, x-deflate;q=0.9"));
+        assertEquals("gzip", policy.negotiate("br;q=1, gzip;q=0.8"));
+    }
+
+    @Test
+    public void encodesResponseWithNegotiatedCodec() throws Exception {
+        policy.codecs(new XDeflate());
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpChunkContentCompressor(policy));
+        request(channel, "x-deflate, gzip");
+
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        channel.writeOutbound(response,
+                              new DefaultHttpContent(Unpooled.copiedBuffer("Hello ", UTF8)),
+                              new DefaultHttpContent(Unpooled.copiedBuffer("world", UTF8)),
+                              LastHttpContent.EMPTY_LAST_CONTENT);
+
+        HttpResponse sent = (HttpResponse) channel.readOutbound();
+        assertEquals("x-deflate", sent.headers().get(HttpHeaders.Names.CONTENT_ENCODING));
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        OutputStream inflater = new InflaterOutputStream(inflated);
+        for (Object content = channel.readOutbound(); content != null; content = channel.readOutbound()) {
+            ByteBuf buf = ((HttpContent) content).content();
+            buf.readBytes(inflater, buf.readableBytes());
+            buf.release();
+        }
+        inflater.close();
+        assertEquals("Hello world", inflated.toString("UTF-8"));
+        assertEquals(1, policy.compressedResponses());
+        assertEquals(11, policy.bytesBeforeCompression());
+    }
+
+    @Test
+    public void leavesResponseAloneWhenNoEncodingIsAccepted() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpChunkContentCompressor(policy));
+        request(channel, "br;q=1, identity");
+
+        channel.writeOutbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK),
+                              LastHttpContent.EMPTY_LAST_CONTENT);
+        HttpResponse sent = (HttpResponse) channel.readOutbound();
+        assertNull(sent.headers().get(HttpHeaders.Names.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void sendsCachedCompressedBodyForRepeatedResponses() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(1024 * 1024);
+        policy.cache(cache);
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpChunkContentCompressor(policy));
+
+        assertEquals("Hello world", gunzip(respond(channel, "Hello world")));
+        assertEquals("Hello world", gunzip(respond(channel, "Hello world")));
+        assertEquals("Goodbye", gunzip(respond(channel, "Goodbye")));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, policy.compressedResponses());
+        assertEquals(1, policy.cachedResponses());
+        assertEquals("Hello world".length() + "Goodbye".length(), policy.bytesBeforeCompression());
+    }
+
+    @Test
+    public void looksUpResponsesWithStrongETagsByTheirETag() throws Exception {
+        CompressedResponseCache cache = new CompressedResponseCache(1024 * 1024);
+        policy.cache(cache);
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpChunkContentCompressor(policy));
+
+        assertEquals("Hello world", gunzip(respond(channel, "Hello world", "\"v1\"")));
+        // The same ETag and length stand for the same body, so it is not even looked at.
+        assertEquals("Hello world", gunzip(respond(channel, "Hello-world", "\"v1\"")));
+        assertEquals("Hello-world", gunzip(respond(channel, "Hello-world", "W/\"v1\"")));
+        assertEquals(1, cache.hits());
+        assertEquals(2, policy.compressedResponses());
+        assertEquals(1, policy.cachedResponses());
+    }
+
+    private static ByteArrayOutputStream respond(EmbeddedChannel channel, String body) {
+        return respond(channel, body, null);
+    }
+
+    private static ByteArrayOutputStream respond(EmbeddedChannel channel, String body, String etag) {
+        request(channel, "gzip");
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        HttpHeaders.setContentLength(response, body.length());
+        if (etag != null) {
+            response.headers().set(HttpHeaders.Names.ETAG, etag);
+        }
+        channel.writeOutbound(response,
+                              new DefaultHttpContent(Unpooled.copiedBuffer(body, UTF8)),
+                              LastHttpContent.EMPTY_LAST_CONTENT);
+
+        HttpResponse sent = (HttpResponse) channel.readOutbound();
+        assertEquals("gzip", sent.headers().get(HttpHeaders.Names.CONTENT_ENCODING));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (Object content = channel.readOutbound(); content != null; content = channel.readOutbound()) {
+            ByteBuf buf = ((HttpContent) content).content();
+            compressed.write(buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes());
+            buf.release();
+        }
+        return compressed;
+    }
+
+    private static String gunzip(ByteArrayOutputStream compressed) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static void request(EmbeddedChannel channel, String acceptEncoding) {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.headers().set(HttpHeaders.Names.ACCEPT_ENCODING, acceptEncoding);
+        channel.writeInbound(request);
+        channel.readInbound();
+    }
+
+    /**
+     * Zlib deflate under a name no client uses, to exercise the codec path without native libraries.
+     */
+    private static class XDeflate extends FakeCodec {
+        XDeflate() {
+            super("x-deflate", true);
+        }
+
+        @Override
+        public OutputStream encoder(OutputStream out) throws IOException {
+            return new DeflaterOutputStream(out, new Deflater(), true);
+        }
+    }
+
+    private static class FakeCodec implements ContentCodec {
+        private final String encoding;
+        private final boolean available;
+
+        FakeCodec(String encoding, boolean available) {
+            this.encoding = encoding;
+            this.available = available;
+        }
+
+        @Override
+        public String encoding() {
+            return encoding;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public OutputStream encoder(OutputStream out) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
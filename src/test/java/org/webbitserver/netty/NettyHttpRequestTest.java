@@ -1,12 +1,24 @@
 package org.webbitserver.netty;
 
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.Cookie;
+import io.netty.handler.codec.http.CookieDecoder;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpVersion;
 import org.junit.Test;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Set;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class NettyHttpRequestTest {
 
@@ -25,4 +37,99 @@ public class NettyHttpRequestTest {
         NettyHttpRequest nhr = new NettyHttpRequest(httpRequest, null, null, 0L);
         assertEquals(nhr.queryParam("foo"), "a+b=c");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findsCookiesWithoutDecodingAllOfThem() {
+        NettyHttpRequest nhr = requestWithCookies("a=1; session=abc; long=x=y", "b=2");
+        assertEquals("abc", nhr.cookieValue("session"));
+        assertEquals("x=y", nhr.cookieValue("long"));
+        assertEquals("2", nhr.cookie("b").getValue());
+        assertNull(nhr.cookieValue("sess"));
+        assertNull(nhr.cookie("c"));
+        assertEquals(4, nhr.cookies().size());
+        assertEquals("abc", nhr.cookieValue("session"));
+    }
+
+    @Test
+    public void findsTheSameCookiesAsTheFullDecoder() {
+        String[] headers = {
+                "a=1; b=2",
+                "a=1;b=2;a=3",
+                "$Version=1; a=\"quoted\"; $Path=/",
+                "a=1, b=2",
+                "a; b=2",
+                " a = 1 ;"
+        };
+        for (String header : headers) {
+            Set<Cookie> decoded = CookieDecoder.decode(header);
+            for (String name : new String[]{"a", "b", "c"}) {
+                String expected = null;
+                for (Cookie cookie : decoded) {
+                    if (cookie.getName().equals(name)) {
+                        expected = cookie.getValue();
+                        break;
+                    }
+                }
+                assertEquals(header + " " + name, expected, requestWithCookies(header).cookieValue(name));
+            }
+        }
+    }
+
+    @Test
+    public void decodesCookiesOnce() {
+        NettyHttpRequest nhr = requestWithCookies("a=1");
+        assertEquals("1", nhr.cookieValue("a"));
+        assertSame(nhr.cookies(), nhr.cookies());
+        assertSame(nhr.cookie("a"), nhr.cookie("a"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cookiesCannotBeChanged() {
+        NettyHttpRequest nhr = requestWithCookies("a=1");
+        nhr.cookies().clear();
+    }
+
+    @Test
+    public void decodesBodyWithContentTypeCharsetOnce() throws Exception {
+        NettyHttpRequest nhr = requestWithBody("caf\u00e9", "text/plain; charset=ISO-8859-1");
+        assertEquals("caf\u00e9", nhr.body());
+        assertSame(nhr.body(), nhr.body());
+        assertEquals("caf\u00e9", requestWithBody("caf\u00e9", "text/plain;charset=\"utf-8\"").body());
+        assertEquals("caf\u00e9", requestWithBody("caf\u00e9", null).body());
+        assertEquals("UTF-8", NettyHttpRequest.charset("text/plain; charset=no-such-charset").name());
+    }
+
+    @Test
+    public void exposesBodyWithoutCopying() throws Exception {
+        NettyHttpRequest nhr = requestWithBody("{\"a\":1}", "application/json");
+
+        ByteBuffer buffer = nhr.bodyAsByteBuffer();
+        assertTrue(buffer.isReadOnly());
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals("{\"a\":1}", new String(bytes, "UTF-8"));
+
+        InputStream in = nhr.bodyAsStream();
+        assertEquals('{', in.read());
+        assertEquals("{\"a\":1}", nhr.body());
+        assertEquals(7, nhr.bodyAsBytes().length);
+    }
+
+    private static NettyHttpRequest requestWithBody(String body, String contentType) {
+        Charset charset = NettyHttpRequest.charset(contentType);
+        FullHttpRequest httpRequest = new DefaultFullHttpRequest(
+                HttpVersion.HTTP_1_1, HttpMethod.POST, "/", Unpooled.copiedBuffer(body, charset));
+        if (contentType != null) {
+            httpRequest.headers().set(HttpHeaders.Names.CONTENT_TYPE, contentType);
+        }
+        return new NettyHttpRequest(httpRequest, null, null, 0L);
+    }
+
+    private static NettyHttpRequest requestWithCookies(String... cookieHeaders) {
+        FullHttpRequest httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        for (String cookieHeader : cookieHeaders) {
+            httpRequest.headers().add(HttpHeaders.Names.COOKIE, cookieHeader);
+        }
+        return new NettyHttpRequest(httpRequest, null, null, 0L);
+    }
+}
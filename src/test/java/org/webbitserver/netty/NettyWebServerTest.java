@@ -3,22 +3,29 @@ package org.webbitserver.netty;
 import io.netty.util.internal.PlatformDependent;
 import org.junit.After;
 import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
 import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
+import org.webbitserver.WebSocketConnection;
 
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class NettyWebServerTest {
@@ -85,6 +92,249 @@ public class NettyWebServerTest {
         assertTrue("Server should not be running", !server.isRunning());
     }
 
+    @Test
+    public void fallsBackToNioWhenEpollIsUnavailable() throws Exception {
+        server = new NettyWebServer(9080).transport(Transport.EPOLL);
+        server.start();
+        assertTrue("Server should be running", server.isRunning());
+        assertEquals(Transport.EPOLL.isAvailable() ? Transport.EPOLL : Transport.NIO, server.activeTransport());
+    }
+
+    @Test
+    public void bindsOneListenerPerEventLoopOnlyWhenReusePortIsSupported() throws Exception {
+        server = new NettyWebServer(9080).listeners(4);
+        server.start();
+        assertTrue("Server should be running", server.isRunning());
+        boolean reusePort = server.activeTransport().option("SO_REUSEPORT") != null;
+        assertEquals(reusePort ? 4 : 1, server.boundListeners());
+
+        server.stop();
+        assertTrue("Server should not be running", !server.isRunning());
+        assertEquals(0, server.boundListeners());
+    }
+
+    @Test
+    public void reapsStaleKeepAliveConnections() throws Exception {
+        server = new NettyWebServer(9080).staleConnectionTimeout(200);
+        server.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                response.content("ok").end();
+            }
+        });
+        server.start();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 9080);
+        try {
+            client.setSoTimeout(5000);
+            client.getOutputStream().write("GET / HTTP/1.1\r\nHost: www.example.com\r\n\r\n".getBytes("UTF-8"));
+            InputStream in = client.getInputStream();
+            readUntil(in, "ok");
+            assertEquals("Server should have closed the idle connection", -1, in.read());
+        } finally {
+            client.close();
+        }
+        assertEquals(1, server.reapedConnections());
+    }
+
+    @Test
+    public void reapsIdleWebSocketConnections() throws Exception {
+        server = new NettyWebServer(9080).webSocketIdleTimeout(200);
+        server.add("/ws", new BaseWebSocketHandler());
+        server.start();
+
+        assertReaped(upgradeToWebSocket("/ws"));
+    }
+
+    @Test
+    public void reapsWebSocketConnectionsWhoseClientSendsNothing() throws Exception {
+        server = new NettyWebServer(9080).webSocketIdleTimeouts(new IdleTimeouts(300, 0, 0));
+        server.add("/ws", new BaseWebSocketHandler() {
+            @Override
+            public void onOpen(final WebSocketConnection connection) {
+                // Keeps writing, so only the read timeout can reap the connection.
+                for (int i = 1; i <= 60; i++) {
+                    ((NettyWebSocketConnection) connection).ctx.executor().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            connection.send("tick");
+                        }
+                    }, i * 50, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+        server.start();
+
+        long start = System.nanoTime();
+        assertReaped(upgradeToWebSocket("/ws"));
+        assertTrue("Should be reaped while the server is still writing",
+                   System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void reapsIdleEventSourceConnections() throws Exception {
+        server = new NettyWebServer(9080).eventSourceIdleTimeout(200);
+        server.add("/es", new EventSourceHandler() {
+            @Override
+            public void onOpen(EventSourceConnection connection) {
+            }
+
+            @Override
+            public void onClose(EventSourceConnection connection) {
+            }
+        });
+        server.start();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 9080);
+        client.setSoTimeout(5000);
+        client.getOutputStream().write(("GET /es HTTP/1.1\r\n"
+                                        + "Host: localhost:9080\r\n"
+                                        + "Accept: text/event-stream\r\n"
+                                        + "\r\n").getBytes("US-ASCII"));
+        assertReaped(client);
+    }
+
+    @Test
+    public void doesNotReapConnectionsWhileHandlerIsBusy() throws Exception {
+        server = new NettyWebServer(9080).staleConnectionTimeout(100);
+        server.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, final HttpResponse response, final HttpControl control)
+                    throws Exception
+            {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(500);
+                        } catch (InterruptedException ignore) {
+                            // respond anyway
+                        }
+                        control.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                response.content("slow").end();
+                            }
+                        });
+                    }
+                }).start();
+            }
+        });
+        server.start();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 9080);
+        try {
+            client.setSoTimeout(5000);
+            client.getOutputStream().write("GET / HTTP/1.1\r\nHost: www.example.com\r\n\r\n".getBytes("UTF-8"));
+            assertTrue("Should get response", readUntil(client.getInputStream(), "slow").endsWith("slow"));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void keepsRequestsOnOneConnectionInOrderOnOneHandlerThread() throws Exception {
+        final List<String> uris = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        server = new NettyWebServer(9080).ioWorkerThreads(4).handlerThreads(4);
+        server.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception
+            {
+                uris.add(request.uri());
+                threads.add(Thread.currentThread());
+                response.content(request.uri()).end();
+            }
+        });
+        server.start();
+
+        int requests = 20;
+        StringBuilder pipelined = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            pipelined.append("GET /").append(i).append(" HTTP/1.1\r\nHost: www.example.com\r\n\r\n");
+            expected.add("/" + i);
+        }
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 9080);
+        try {
+            OutputStream http = client.getOutputStream();
+            http.write(pipelined.toString().getBytes("UTF-8"));
+            http.flush();
+            readUntil(client.getInputStream(), "/" + (requests - 1));
+        } finally {
+            client.close();
+        }
+
+        assertEquals(expected, uris);
+        assertEquals(1, new HashSet<>(threads).size());
+    }
+
+    @Test
+    public void runsWorkSubmittedToTheExecutorOnOneThread() throws Exception {
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch done = new CountDownLatch(100);
+        server = new NettyWebServer(9080).handlerThreads(4);
+        server.start();
+
+        for (int i = 0; i < 100; i++) {
+            server.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    threads.add(Thread.currentThread());
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, new HashSet<>(threads).size());
+    }
+
+    private static Socket upgradeToWebSocket(String path) throws Exception {
+        Socket client = new Socket(InetAddress.getLocalHost(), 9080);
+        client.setSoTimeout(5000);
+        client.getOutputStream().write(("GET " + path + " HTTP/1.1\r\n"
+                                        + "Host: localhost:9080\r\n"
+                                        + "Origin: http://localhost:9080\r\n"
+                                        + "Upgrade: websocket\r\n"
+                                        + "Connection: Upgrade\r\n"
+                                        + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                                        + "Sec-WebSocket-Version: 13\r\n"
+                                        + "\r\n").getBytes("US-ASCII"));
+        readUntil(client.getInputStream(), "\r\n\r\n");
+        return client;
+    }
+
+    private void assertReaped(Socket client) throws Exception {
+        try {
+            InputStream in = client.getInputStream();
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // Skip whatever the server sends until it closes the connection.
+            }
+        } finally {
+            client.close();
+        }
+        assertEquals(1, server.reapedConnections());
+    }
+
+    private static String readUntil(InputStream in, String suffix) throws Exception {
+        StringBuilder received = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        while (!received.toString().endsWith(suffix)) {
+            int read = in.read(buffer);
+            if (read == -1) {
+                break;
+            }
+            received.append(new String(buffer, 0, read, "UTF-8"));
+        }
+        return received.toString();
+    }
+
     @Test
     public void stopsServerCleanlyNotLeavingResourcesHanging() throws Exception {
         PlatformDependent.javaVersion();
@@ -0,0 +1,156 @@
+package org.webbitserver.netty;
+
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.HttpConnection;
+import org.webbitserver.WritabilityHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.webbitserver.testutil.EmbeddedWebSocket.webSocketConnection;
+
+public class OverflowPolicyTest {
+
+    // Larger than the high water mark on its own.
+    private static final String LARGE = "a message larger than the high water mark";
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new ChannelHandlerAdapter());
+
+    @Test
+    public void unboundedBuffersEverything() throws Exception {
+        NettyWebSocketConnection connection = connection(OverflowPolicy.UNBOUNDED);
+
+        connection.send(LARGE).send("one").send("two");
+
+        assertFalse(connection.isWritable());
+        assertEquals(Arrays.asList(LARGE, "one", "two"), sent());
+    }
+
+    @Test
+    public void dropNewestDropsMessagesSentWhileNotWritable() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.dropNewest();
+        NettyWebSocketConnection connection = connection(policy);
+
+        connection.send(LARGE).send("one").send("two");
+        channel.runPendingTasks();
+        connection.send("three");
+
+        assertEquals(Arrays.asList(LARGE, "three"), sent());
+        assertEquals(2, connection.droppedMessages());
+        assertEquals(2, policy.droppedMessages());
+    }
+
+    @Test
+    public void dropOldestHoldsTheNewestMessagesUntilWritable() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.dropOldest(2);
+        NettyWebSocketConnection connection = connection(policy);
+
+        connection.send(LARGE).send("one").send("two").send("three");
+        channel.runPendingTasks();
+        connection.writabilityChanged();
+
+        assertEquals(Arrays.asList(LARGE, "two", "three"), sent());
+        assertEquals(1, connection.droppedMessages());
+    }
+
+    @Test
+    public void coalesceLatestHoldsOnlyTheLatestMessage() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.coalesceLatest();
+        NettyWebSocketConnection connection = connection(policy);
+
+        connection.send(LARGE).send("one").send("two").send("three");
+        channel.runPendingTasks();
+        connection.writabilityChanged();
+
+        assertEquals(Arrays.asList(LARGE, "three"), sent());
+        assertEquals(2, policy.droppedMessages());
+    }
+
+    @Test
+    public void disconnectClosesConnectionsThatFallBehind() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.disconnect();
+        NettyWebSocketConnection connection = connection(policy);
+
+        connection.send(LARGE).send("one").send("two");
+
+        assertFalse(channel.isOpen());
+        assertEquals(1, policy.disconnections());
+        assertEquals(2, policy.droppedMessages());
+    }
+
+    @Test
+    public void broadcastsGoThroughTheOverflowPolicy() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.coalesceLatest();
+        NettyWebSocketConnection connection = connection(policy);
+        WebSocketConnectionGroup group = new WebSocketConnectionGroup().join(connection);
+
+        connection.send(LARGE);
+        assertEquals(1, group.broadcast("one"));
+        assertEquals(1, group.broadcast("two"));
+        channel.runPendingTasks();
+        connection.writabilityChanged();
+
+        assertEquals(Arrays.asList(LARGE, "two"), sent());
+        assertEquals(1, connection.droppedMessages());
+        assertEquals(0, group.skipped());
+    }
+
+    @Test
+    public void broadcastsDisconnectMembersThatFallBehind() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.disconnect();
+        NettyWebSocketConnection connection = connection(policy);
+        WebSocketConnectionGroup group = new WebSocketConnectionGroup().join(connection);
+
+        connection.send(LARGE);
+        group.broadcast("one");
+
+        assertFalse(channel.isOpen());
+        assertEquals(1, policy.disconnections());
+        assertEquals(0, group.size());
+    }
+
+    @Test
+    public void tellsWritabilityHandlersWhenTheClientCatchesUp() throws Exception {
+        final List<Boolean> changes = new ArrayList<>();
+        class Feed extends BaseWebSocketHandler implements WritabilityHandler {
+            @Override
+            public void onWritabilityChanged(HttpConnection connection, boolean writable) {
+                changes.add(writable);
+            }
+        }
+        NettyWebSocketConnection connection = connection(OverflowPolicy.coalesceLatest());
+        channel.pipeline().addFirst(new WebSocketConnectionHandler(null, connection, new Feed(), null));
+
+        connection.send(LARGE).send("one");
+        channel.runPendingTasks();
+
+        assertEquals(Arrays.asList(false, true), changes);
+        assertEquals(Arrays.asList(LARGE, "one"), sent());
+    }
+
+    private NettyWebSocketConnection connection(OverflowPolicy policy) {
+        NettyWebSocketConnection connection = webSocketConnection(channel, FlushStrategy.END_OF_TICK);
+        connection.overflowPolicy(policy);
+        connection.writeBufferWaterMarks(8, 16);
+        return connection;
+    }
+
+    private List<String> sent() {
+        channel.runPendingTasks();
+        List<String> sent = new ArrayList<>();
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            TextWebSocketFrame frame = (TextWebSocketFrame) message;
+            sent.add(frame.text());
+            frame.release();
+        }
+        return sent;
+    }
+}
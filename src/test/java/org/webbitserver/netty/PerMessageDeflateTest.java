@@ -0,0 +1,255 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket08FrameDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.WebSocketConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PerMessageDeflateTest {
+
+    private static final String JSON = "{\"symbol\":\"ACME\",\"bid\":101.25,\"ask\":101.5,\"volume\":120000,"
+            + "\"exchange\":\"NYSE\",\"currency\":\"USD\",\"timestamp\":\"2013-12-22T22:41:00Z\"}";
+
+    private final PerMessageDeflate policy = new PerMessageDeflate();
+    private NettyWebServer server;
+
+    @After
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void acceptsTheFirstOfferItCanHonour() throws Exception {
+        assertNull(policy.negotiate(null));
+        assertNull(policy.negotiate("x-webkit-deflate-frame"));
+        assertEquals("permessage-deflate", policy.negotiate("permessage-deflate").responseHeader());
+        assertEquals("permessage-deflate; server_no_context_takeover",
+                     policy.negotiate("permessage-deflate; server_max_window_bits=10, "
+                                      + "permessage-deflate; server_no_context_takeover").responseHeader());
+        assertNull(policy.negotiate("permessage-deflate; unknown"));
+        assertNull(policy.negotiate("permessage-deflate; client_max_window_bits=7"));
+    }
+
+    @Test
+    public void limitsTheClientWindowWhenTheClientAllowsIt() throws Exception {
+        policy.clientMaxWindowBits(10).serverNoContextTakeover(true);
+
+        assertEquals("permessage-deflate; server_no_context_takeover",
+                     policy.negotiate("permessage-deflate").responseHeader());
+        assertEquals("permessage-deflate; server_no_context_takeover; client_max_window_bits=10",
+                     policy.negotiate("permessage-deflate; client_max_window_bits").responseHeader());
+        assertEquals("permessage-deflate; server_no_context_takeover; client_max_window_bits=10",
+                     policy.negotiate("permessage-deflate; client_max_window_bits=12").responseHeader());
+        assertEquals("permessage-deflate; server_no_context_takeover; client_max_window_bits=9",
+                     policy.negotiate("permessage-deflate; client_max_window_bits=9").responseHeader());
+    }
+
+    @Test
+    public void defaultsToLevelSixAndRejectsNegativeMinimumSizes() throws Exception {
+        assertEquals(6, policy.compressionLevel());
+        try {
+            policy.minimumSize(-1);
+            fail("negative minimum size accepted");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(128, policy.minimumSize());
+        }
+    }
+
+    @Test
+    public void compressesMessagesWithoutTheTrailingEmptyBlock() throws Exception {
+        EmbeddedChannel channel = channel("permessage-deflate");
+
+        channel.writeOutbound(new TextWebSocketFrame(JSON));
+
+        WebSocketFrame frame = (WebSocketFrame) channel.readOutbound();
+        assertTrue(frame instanceof TextWebSocketFrame);
+        assertEquals(4, frame.rsv());
+        byte[] compressed = bytes(frame.content());
+        assertTrue(compressed.length < JSON.length());
+        assertEquals(JSON, new String(inflate(new Inflater(true), compressed), "UTF-8"));
+        assertEquals(1, policy.compressedMessages());
+        assertEquals(JSON.length(), policy.bytesBeforeCompression());
+        assertEquals(compressed.length, policy.bytesAfterCompression());
+        frame.release();
+    }
+
+    @Test
+    public void sendsShortMessagesUncompressed() throws Exception {
+        EmbeddedChannel channel = channel("permessage-deflate");
+
+        channel.writeOutbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[]{1, 2, 3})));
+
+        WebSocketFrame frame = (WebSocketFrame) channel.readOutbound();
+        assertEquals(0, frame.rsv());
+        assertArrayEquals(new byte[]{1, 2, 3}, bytes(frame.content()));
+        assertEquals(1, policy.uncompressedMessages());
+        frame.release();
+    }
+
+    @Test
+    public void contextTakeoverShrinksRepeatedMessages() throws Exception {
+        int[] withTakeover = sizesOfTwoIdenticalMessages(channel("permessage-deflate"));
+        int[] withoutTakeover = sizesOfTwoIdenticalMessages(channel("permessage-deflate; server_no_context_takeover"));
+
+        assertTrue(withTakeover[1] < withTakeover[0] / 2);
+        assertEquals(withoutTakeover[0], withoutTakeover[1]);
+    }
+
+    @Test
+    public void decompressesTextMessagesFromTheClient() throws Exception {
+        PerMessageDeflateCodec codec = new PerMessageDeflateCodec(policy, policy.negotiate("permessage-deflate"), 65536);
+        EmbeddedChannel channel = new EmbeddedChannel(codec.opcodeRewriter(),
+                                                      new WebSocket08FrameDecoder(true, true, 65536),
+                                                      codec);
+
+        // Compressed text is not valid UTF-8, so the frame decoder would reject it without the rewriter.
+        channel.writeInbound(Unpooled.wrappedBuffer(maskedFrame(0xc1, deflate(JSON))));
+        channel.writeInbound(Unpooled.wrappedBuffer(maskedFrame(0xc1, deflate(JSON))));
+
+        for (int i = 0; i < 2; i++) {
+            TextWebSocketFrame frame = (TextWebSocketFrame) channel.readInbound();
+            assertEquals(0, frame.rsv());
+            assertEquals(JSON, frame.text());
+            frame.release();
+        }
+    }
+
+    @Test
+    public void negotiatesCompressionDuringTheHandshake() throws Exception {
+        server = new NettyWebServer(59505).perMessageDeflate(policy);
+        server.add("/echo", new BaseWebSocketHandler() {
+            @Override
+            public void onMessage(WebSocketConnection connection, TextWebSocketFrame msg) throws Exception {
+                connection.send(msg.text());
+            }
+        });
+        server.start();
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), 59505);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /echo HTTP/1.1\r\n"
+                       + "Host: localhost:59505\r\n"
+                       + "Origin: http://localhost:59505\r\n"
+                       + "Upgrade: websocket\r\n"
+                       + "Connection: Upgrade\r\n"
+                       + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                       + "Sec-WebSocket-Version: 13\r\n"
+                       + "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"
+                       + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            String head = readHead(in);
+            assertTrue(head, head.contains("Sec-WebSocket-Extensions: permessage-deflate\r\n"));
+
+            out.write(maskedFrame(0xc1, deflate(JSON)));
+            out.flush();
+
+            assertEquals(0xc1, in.read());
+            int length = in.read();
+            if (length == 126) {
+                length = (in.read() << 8) | in.read();
+            }
+            byte[] payload = new byte[length];
+            for (int read = 0; read < length; ) {
+                read += in.read(payload, read, length - read);
+            }
+            assertEquals(JSON, new String(inflate(new Inflater(true), payload), "UTF-8"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    private EmbeddedChannel channel(String offer) {
+        return new EmbeddedChannel(new PerMessageDeflateCodec(policy, policy.negotiate(offer), 65536));
+    }
+
+    private static int[] sizesOfTwoIdenticalMessages(EmbeddedChannel channel) {
+        int[] sizes = new int[2];
+        for (int i = 0; i < 2; i++) {
+            channel.writeOutbound(new TextWebSocketFrame(JSON));
+            WebSocketFrame frame = (WebSocketFrame) channel.readOutbound();
+            sizes[i] = frame.content().readableBytes();
+            frame.release();
+        }
+        return sizes;
+    }
+
+    private static byte[] deflate(String message) throws Exception {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(message.getBytes("UTF-8"));
+        byte[] buffer = new byte[1024];
+        int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        return Arrays.copyOf(buffer, length - 4);
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] compressed) throws Exception {
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inflater.inflate(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        inflater.setInput(new byte[]{0, 0, (byte) 0xff, (byte) 0xff});
+        while ((read = inflater.inflate(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] maskedFrame(int firstByte, byte[] payload) {
+        byte[] mask = {0x37, (byte) 0xfa, 0x21, 0x3d};
+        byte[] frame = new byte[6 + payload.length];
+        frame[0] = (byte) firstByte;
+        frame[1] = (byte) (0x80 | payload.length);
+        System.arraycopy(mask, 0, frame, 2, 4);
+        for (int i = 0; i < payload.length; i++) {
+            frame[6 + i] = (byte) (payload[i] ^ mask[i % 4]);
+        }
+        return frame;
+    }
+
+    private static String readHead(InputStream in) throws Exception {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IllegalStateException("connection closed after " + head);
+            }
+            head.append((char) b);
+        }
+        return head.toString();
+    }
+
+    private static byte[] bytes(ByteBuf content) {
+        byte[] bytes = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,88 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.Test;
+import org.webbitserver.stub.StubConnection;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.webbitserver.testutil.EmbeddedWebSocket.webSocketConnection;
+
+public class WebSocketConnectionGroupTest {
+
+    private final WebSocketConnectionGroup group = new WebSocketConnectionGroup();
+
+    @Test
+    public void sendsEveryMemberAFrameSharingOneEncodedPayload() throws Exception {
+        EmbeddedChannel alice = new EmbeddedChannel(new ChannelHandlerAdapter());
+        EmbeddedChannel bob = new EmbeddedChannel(new ChannelHandlerAdapter());
+        StubConnection stub = new StubConnection();
+        group.join(webSocketConnection(alice)).join(webSocketConnection(bob)).join(stub);
+
+        assertEquals(3, group.broadcast("héllo"));
+
+        TextWebSocketFrame toAlice = (TextWebSocketFrame) alice.readOutbound();
+        TextWebSocketFrame toBob = (TextWebSocketFrame) bob.readOutbound();
+        assertEquals("héllo", toAlice.text());
+        assertEquals("héllo", toBob.text());
+        assertSame(toAlice.content().unwrap(), toBob.content().unwrap());
+        assertEquals(Arrays.asList("héllo"), stub.sentMessages());
+
+        ByteBuf payload = toAlice.content().unwrap();
+        toAlice.release();
+        toBob.release();
+        assertEquals(0, payload.refCnt());
+    }
+
+    @Test
+    public void broadcastsBinaryFrames() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelHandlerAdapter());
+        group.join(webSocketConnection(channel));
+
+        group.broadcast(new byte[]{1, 2, 3});
+
+        BinaryWebSocketFrame frame = (BinaryWebSocketFrame) channel.readOutbound();
+        byte[] content = new byte[frame.content().readableBytes()];
+        frame.content().readBytes(content);
+        assertArrayEquals(new byte[]{1, 2, 3}, content);
+        frame.release();
+    }
+
+    @Test
+    public void skipsMembersThatAreNotWritable() throws Exception {
+        EmbeddedChannel fast = new EmbeddedChannel(new ChannelHandlerAdapter());
+        EmbeddedChannel slow = new EmbeddedChannel(new ChannelHandlerAdapter());
+        slow.config().setWriteBufferLowWaterMark(32);
+        slow.config().setWriteBufferHighWaterMark(64);
+        slow.write(new TextWebSocketFrame("still waiting to go out to a client that reads slowly"
+                                          + ", with more than the high water mark in its buffer"));
+        group.join(webSocketConnection(fast)).join(webSocketConnection(slow));
+
+        assertEquals(1, group.broadcast("tick"));
+        assertEquals(1, group.skipped());
+        assertEquals("tick", ((TextWebSocketFrame) fast.readOutbound()).text());
+    }
+
+    @Test
+    public void membersLeaveWhenTheyCloseOrAsk() throws Exception {
+        EmbeddedChannel closing = new EmbeddedChannel(new ChannelHandlerAdapter());
+        StubConnection leaving = new StubConnection();
+        group.join(webSocketConnection(closing)).join(leaving);
+        assertEquals(2, group.size());
+
+        closing.close();
+        group.leave(leaving);
+
+        assertEquals(0, group.size());
+        assertEquals(0, group.broadcast("anyone?"));
+        assertNull(closing.readOutbound());
+    }
+}
@@ -0,0 +1,245 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket08FrameDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.WebSocketFragmentHandler;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WebSocketFragmentSplitterTest {
+
+    private NettyWebServer server;
+
+    @After
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void splitsLargeFramesIntoFragmentsOfTheMessage() throws Exception {
+        EmbeddedChannel channel = channel(16384);
+        byte[] payload = payload(40000);
+
+        channel.writeInbound(Unpooled.wrappedBuffer(frame(0x82, payload)));
+
+        WebSocketFrame first = (WebSocketFrame) channel.readInbound();
+        WebSocketFrame second = (WebSocketFrame) channel.readInbound();
+        WebSocketFrame third = (WebSocketFrame) channel.readInbound();
+        assertNull(channel.readInbound());
+        assertTrue(first instanceof BinaryWebSocketFrame);
+        assertTrue(second instanceof ContinuationWebSocketFrame);
+        assertTrue(third instanceof ContinuationWebSocketFrame);
+        assertFalse(first.isFinalFragment());
+        assertFalse(second.isFinalFragment());
+        assertTrue(third.isFinalFragment());
+        assertArrayEquals(Arrays.copyOfRange(payload, 0, 16384), bytes(first));
+        assertArrayEquals(Arrays.copyOfRange(payload, 16384, 32768), bytes(second));
+        assertArrayEquals(Arrays.copyOfRange(payload, 32768, 40000), bytes(third));
+    }
+
+    @Test
+    public void passesSmallAndControlFramesOnWhole() throws Exception {
+        EmbeddedChannel channel = channel(16);
+
+        channel.writeInbound(Unpooled.wrappedBuffer(frame(0x81, "short".getBytes("UTF-8"))));
+        channel.writeInbound(Unpooled.wrappedBuffer(frame(0x89, payload(100))));
+
+        TextWebSocketFrame text = (TextWebSocketFrame) channel.readInbound();
+        assertTrue(text.isFinalFragment());
+        assertEquals("short", text.text());
+        PingWebSocketFrame ping = (PingWebSocketFrame) channel.readInbound();
+        assertArrayEquals(payload(100), bytes(ping));
+    }
+
+    @Test
+    public void passesOnControlFramesClaimingMoreThan125BytesForTheDecoderToReject() throws Exception {
+        EmbeddedChannel channel = channel(16);
+
+        assertRejected(channel, header(0x89, 1L << 40), payload(100));
+    }
+
+    @Test
+    public void passesOnFramesClaimingANegativeLengthForTheDecoderToReject() throws Exception {
+        EmbeddedChannel channel = channel(16);
+
+        assertRejected(channel, header(0x82, Long.MIN_VALUE), payload(100));
+    }
+
+    @Test
+    public void suspendsReadingWhileTheHandlerIsBehind() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        WebSocketFragmentSplitter splitter = new WebSocketFragmentSplitter(channel, 16);
+        channel.pipeline().addFirst(splitter);
+
+        channel.writeInbound(Unpooled.wrappedBuffer(frame(0x82, payload(16 * WebSocketFragmentSplitter.MAX_PENDING))));
+        assertFalse(channel.config().isAutoRead());
+
+        for (int i = 0; i < WebSocketFragmentSplitter.MAX_PENDING / 2 - 1; i++) {
+            splitter.delivered();
+        }
+        assertFalse(channel.config().isAutoRead());
+        splitter.delivered();
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void handsFragmentHandlersMessagesLargerThanTheMaximumFrameSize() throws Exception {
+        final AtomicLong received = new AtomicLong();
+        final AtomicInteger fragments = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        server = new NettyWebServer(59506).webSocketFragmentSize(8192);
+        server.add("/upload", new Upload(received, fragments, done));
+        server.start();
+
+        byte[] payload = payload(1024 * 1024);
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), 59506);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /upload HTTP/1.1\r\n"
+                       + "Host: localhost:59506\r\n"
+                       + "Origin: http://localhost:59506\r\n"
+                       + "Upgrade: websocket\r\n"
+                       + "Connection: Upgrade\r\n"
+                       + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                       + "Sec-WebSocket-Version: 13\r\n"
+                       + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+            readHead(socket.getInputStream());
+            out.write(frame(0x82, payload));
+            out.flush();
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(payload.length, received.get());
+            assertEquals(128, fragments.get());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static class Upload extends BaseWebSocketHandler implements WebSocketFragmentHandler {
+        private final AtomicLong received;
+        private final AtomicInteger fragments;
+        private final CountDownLatch done;
+
+        Upload(AtomicLong received, AtomicInteger fragments, CountDownLatch done) {
+            this.received = received;
+            this.fragments = fragments;
+            this.done = done;
+        }
+
+        @Override
+        public void onFragment(WebSocketConnection connection, WebSocketFrame fragment) throws Exception {
+            fragments.incrementAndGet();
+            received.addAndGet(fragment.content().readableBytes());
+            if (fragment.isFinalFragment()) {
+                done.countDown();
+            }
+        }
+    }
+
+    private static EmbeddedChannel channel(int fragmentSize) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addFirst(new WebSocketFragmentSplitter(channel, fragmentSize),
+                                    new WebSocket08FrameDecoder(true, false, 65536));
+        return channel;
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * A masked frame, as clients send.
+     */
+    private static byte[] frame(int firstByte, byte[] payload) {
+        byte[] mask = {0x37, (byte) 0xfa, 0x21, 0x3d};
+        int lengthBytes = payload.length < 126 ? 0 : payload.length <= 0xffff ? 2 : 8;
+        int headerLength = 2 + lengthBytes + 4;
+        byte[] frame = new byte[headerLength + payload.length];
+        frame[0] = (byte) firstByte;
+        if (lengthBytes == 0) {
+            frame[1] = (byte) (0x80 | payload.length);
+        } else {
+            frame[1] = (byte) (0x80 | (lengthBytes == 2 ? 126 : 127));
+            for (int i = 0; i < lengthBytes; i++) {
+                frame[2 + i] = (byte) ((long) payload.length >>> (8 * (lengthBytes - 1 - i)));
+            }
+        }
+        System.arraycopy(mask, 0, frame, 2 + lengthBytes, 4);
+        for (int i = 0; i < payload.length; i++) {
+            frame[headerLength + i] = (byte) (payload[i] ^ mask[i % 4]);
+        }
+        return frame;
+    }
+
+    private static void assertRejected(EmbeddedChannel channel, byte[] header, byte[] payload) {
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(header, payload));
+            fail("the frame decoder should have rejected the frame");
+        } catch (CorruptedFrameException expected) {
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    /**
+     * A masked frame header with a 64-bit length.
+     */
+    private static byte[] header(int firstByte, long length) {
+        byte[] header = new byte[14];
+        header[0] = (byte) firstByte;
+        header[1] = (byte) (0x80 | 127);
+        for (int i = 0; i < 8; i++) {
+            header[2 + i] = (byte) (length >>> (8 * (7 - i)));
+        }
+        return header;
+    }
+
+    private static void readHead(InputStream in) throws Exception {
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IllegalStateException("connection closed");
+            }
+            matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+    }
+
+    private static byte[] bytes(WebSocketFrame frame) {
+        byte[] bytes = new byte[frame.content().readableBytes()];
+        frame.content().getBytes(frame.content().readerIndex(), bytes);
+        frame.release();
+        return bytes;
+    }
+}
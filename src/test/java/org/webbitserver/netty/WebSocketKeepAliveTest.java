@@ -0,0 +1,131 @@
+package org.webbitserver.netty;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.webbitserver.testutil.EmbeddedWebSocket.webSocketConnection;
+
+public class WebSocketKeepAliveTest {
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new ChannelHandlerAdapter());
+    private final WebSocketKeepAlive keepAlive = new WebSocketKeepAlive().interval(60000).maxMissedPongs(2);
+    private WebSocketKeepAlive.Pinger pinger;
+    private NettyWebServer server;
+
+    @After
+    public void stop() throws Exception {
+        if (pinger != null) {
+            pinger.stop();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void measuresTheRoundTripOfPongsEchoingTheLatestPing() throws Exception {
+        pinger = keepAlive.start(webSocketConnection(channel));
+
+        pinger.run(null);
+        PingWebSocketFrame ping = (PingWebSocketFrame) channel.readOutbound();
+        pinger.pong(ping.content());
+        ping.release();
+
+        assertEquals(1, keepAlive.pingsSent());
+        assertEquals(1, keepAlive.pongsReceived());
+        assertEquals(1, keepAlive.roundTrips());
+        assertTrue(pinger.roundTripNanos() >= 0);
+    }
+
+    @Test
+    public void closesConnectionsThatMissTooManyPongs() throws Exception {
+        pinger = keepAlive.start(webSocketConnection(channel));
+
+        pinger.run(null);
+        pinger.run(null);
+        assertTrue(channel.isOpen());
+        pinger.run(null);
+
+        assertFalse(channel.isOpen());
+        assertEquals(2, keepAlive.pingsSent());
+        assertEquals(1, keepAlive.deadConnections());
+    }
+
+    @Test
+    public void anyPongKeepsTheConnectionAliveButOnlyMatchingOnesAreTimed() throws Exception {
+        pinger = keepAlive.start(webSocketConnection(channel));
+
+        for (int i = 0; i < 5; i++) {
+            pinger.run(null);
+            pinger.pong(Unpooled.wrappedBuffer("unsolicited".getBytes("UTF-8")));
+        }
+
+        assertTrue(channel.isOpen());
+        assertEquals(5, keepAlive.pongsReceived());
+        assertEquals(0, keepAlive.roundTrips());
+        assertEquals(-1, pinger.roundTripNanos());
+    }
+
+    @Test
+    public void closesWebSocketsWhoseClientHasGoneQuiet() throws Exception {
+        WebSocketKeepAlive routeKeepAlive = new WebSocketKeepAlive().interval(100).maxMissedPongs(2);
+        server = new NettyWebServer(59507);
+        server.add("/quiet", new BaseWebSocketHandler(), routeKeepAlive);
+        server.start();
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), 59507);
+        try {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /quiet HTTP/1.1\r\n"
+                       + "Host: localhost:59507\r\n"
+                       + "Origin: http://localhost:59507\r\n"
+                       + "Upgrade: websocket\r\n"
+                       + "Connection: Upgrade\r\n"
+                       + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                       + "Sec-WebSocket-Version: 13\r\n"
+                       + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            readHead(in);
+
+            int pings = 0;
+            int opcode;
+            while ((opcode = in.read()) != -1) {
+                assertEquals(0x89, opcode);
+                assertEquals(8, in.read());
+                for (int i = 0; i < 8; i++) {
+                    in.read();
+                }
+                pings++;
+            }
+
+            assertEquals(2, pings);
+            assertEquals(1, routeKeepAlive.deadConnections());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void readHead(InputStream in) throws Exception {
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            assertFalse("connection closed", b == -1);
+            matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.webbitserver.stub;
 
 import org.junit.Test;
+import org.webbitserver.EncodedEventSourceMessage;
 import org.webbitserver.EventSourceMessage;
 
 import java.util.ArrayList;
@@ -52,6 +53,20 @@ public class StubConnectionTest {
         assertEquals(expected, target.sentMessages());
     }
 
+    @Test
+    public void testSendEncodedEventSourceMessages() throws Exception {
+        StubConnection target = new StubConnection(new StubHttpRequest());
+
+        EncodedEventSourceMessage message = new EventSourceMessage("dummy").encoded();
+        target.send(message);
+        target.send(message);
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("data: dummy\n\n");
+        expected.add("data: dummy\n\n");
+        assertEquals(expected, target.sentMessages());
+    }
+
     @Test
     public void testPing() throws Exception {
         StubConnection target = new StubConnection(null);
@@ -0,0 +1,26 @@
+package org.webbitserver.testutil;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.webbitserver.netty.FlushStrategy;
+import org.webbitserver.netty.NettyHttpRequest;
+import org.webbitserver.netty.NettyWebSocketConnection;
+
+/**
+ * WebSocket connections on an {@link EmbeddedChannel}, as if upgraded from a GET of {@code /}, writing their
+ * frames to the channel's outbound messages.
+ */
+public class EmbeddedWebSocket {
+
+    public static NettyWebSocketConnection webSocketConnection(EmbeddedChannel channel) {
+        return webSocketConnection(channel, FlushStrategy.IMMEDIATE);
+    }
+
+    public static NettyWebSocketConnection webSocketConnection(EmbeddedChannel channel, FlushStrategy flushStrategy) {
+        NettyHttpRequest request = new NettyHttpRequest(
+                new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/"), null, null, 0L);
+        return new NettyWebSocketConnection(request, channel.pipeline().firstContext(), "13", flushStrategy);
+    }
+}